@@ -33,14 +33,16 @@ echo "JDK found"
 echo ""
 
 # Step 2: Verify JAR exists
+# The jar archived by the release build, byte for byte: delta patches of the
+# next release are made from it, and only apply to the jar they were made from
 echo "[2/4] Verifying JAR file..."
-JAR_PATH="$BUILD_DIR/$APP_NAME-standalone.jar"
+JAR_PATH="$BUILD_DIR/$APP_NAME-$APP_VERSION.jar"
 if [ ! -f "$JAR_PATH" ]; then
     echo "ERROR: JAR not found at $JAR_PATH"
     echo ""
-    echo "Please copy the JAR from Windows to macOS VM:"
-    echo "  1. Build on Windows: mvn clean package -DskipTests"
-    echo "  2. Copy target/LegendasBUDA-standalone.jar to $JAR_PATH"
+    echo "Please copy the release JAR from Windows to macOS VM:"
+    echo "  1. Build on Windows: build-windows-exe.bat (or mvn -P release package -Dpatch.previous=releases)"
+    echo "  2. Copy target/patches/$APP_NAME-$APP_VERSION.jar to $JAR_PATH"
     exit 1
 fi
 
@@ -77,7 +79,7 @@ fi
 
 echo "Creating custom JRE at $RUNTIME_DIR..."
 jlink --module-path "$JDK_JMODS" \
-      --add-modules java.base,java.desktop,java.logging,java.xml \
+      --add-modules java.base,java.desktop,java.logging,java.management,java.net.http,java.xml,jdk.jfr \
       --bind-services \
       --output "$RUNTIME_DIR" \
       --strip-debug \
@@ -86,6 +88,24 @@ jlink --module-path "$JDK_JMODS" \
       --no-man-pages
 
 echo "Custom JRE created successfully."
+
+# Class-data sharing: record the JDK classes a training run loads (the
+# window plus a sample document, then it exits) and dump them into the
+# runtime's default archive, lib/server/classes.jsa, which every launch
+# maps without extra options. Only JDK classes are archived: JDK 17 ties
+# archived application classes to the jar's path at dump time.
+TRAINING_DOC="$BUILD_DIR/training.docx"
+if [ -f "$TRAINING_DOC" ]; then
+    echo "Training class-data-sharing archive with $TRAINING_DOC..."
+    "$RUNTIME_DIR/bin/java" -XX:DumpLoadedClassList="$BUILD_DIR/classes.lst" \
+        -Dlegendas.training="$TRAINING_DOC" \
+        -cp "$INPUT_DIR/$APP_NAME.jar" com.budaassociacao.legendas.LegendasApp
+    "$RUNTIME_DIR/bin/java" -Xshare:dump -XX:SharedClassListFile="$BUILD_DIR/classes.lst" > /dev/null
+    echo "CDS archive created at $RUNTIME_DIR/lib/server/classes.jsa"
+else
+    echo "Warning: $TRAINING_DOC not found, the runtime will have no CDS archive"
+    echo "  (copy a sample document, e.g. Vídeo_2.docx, there)"
+fi
 echo ""
 
 # Step 5: Create macOS PKG with jpackage
@@ -122,6 +142,9 @@ jpackage --type pkg \
     --vendor "$VENDOR" \
     --description "LegendasBUDA - Visualizador de legendas para vídeos do YouTube"
 
+# SHA-256 published next to the installer; the auto-updater checks it
+(cd "$OUTPUT_DIR" && shasum -a 256 "$APP_NAME-$APP_VERSION.pkg" > "$APP_NAME-$APP_VERSION.pkg.sha256")
+
 echo ""
 echo "========================================"
 echo "Build completed successfully!"
@@ -129,6 +152,7 @@ echo "========================================"
 echo ""
 echo "Output location: $OUTPUT_DIR"
 echo "- PKG installer: $OUTPUT_DIR/$APP_NAME-$APP_VERSION.pkg"
+echo "- Checksum:      $OUTPUT_DIR/$APP_NAME-$APP_VERSION.pkg.sha256"
 echo ""
 echo "The installer includes:"
 echo "  - Java runtime (~50MB)"
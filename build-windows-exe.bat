@@ -5,21 +5,34 @@ echo LegendasBUDA Windows Build Script
 echo ======================================
 
 REM Step 1: Clean and build JAR
+REM The release profile also writes the delta patches from the jars in releases\
+REM and archives this build as target\patches\LegendasBUDA-<version>.jar. The
+REM installer packages that very jar, so the next release's patches apply to it.
+set APP_VERSION=1.0.0
+set RELEASE_JAR=target\patches\LegendasBUDA-%APP_VERSION%.jar
 echo.
 echo [1/3] Building JAR with dependencies...
-call mvn clean package -DskipTests
+call mvn clean package -P release -Dpatch.previous=releases -DskipTests
 if %ERRORLEVEL% NEQ 0 (
     echo ERROR: Maven build failed!
     pause
     exit /b 1
 )
-echo JAR created: target\LegendasBUDA-standalone.jar
+if not exist %RELEASE_JAR% (
+    echo ERROR: %RELEASE_JAR% not found!
+    pause
+    exit /b 1
+)
+echo JAR created: %RELEASE_JAR%
+if not exist releases mkdir releases
+copy /y %RELEASE_JAR% releases\ >nul
+echo Archived in releases\ as the base of the next release's patches
 
 REM Step 2: Create custom JRE
 echo.
 echo [2/3] Creating custom Java runtime...
 if exist target\java-runtime rmdir /s /q target\java-runtime
-jlink --add-modules java.base,java.desktop,java.logging,java.xml ^
+jlink --add-modules java.base,java.desktop,java.logging,java.management,java.net.http,java.xml,jdk.jfr ^
       --output target\java-runtime ^
       --strip-debug ^
       --no-header-files ^
@@ -32,13 +45,29 @@ if %ERRORLEVEL% NEQ 0 (
 )
 echo Custom JRE created at target\java-runtime
 
+REM Class-data sharing: record the JDK classes a training run loads (the
+REM window plus a sample document, then it exits) and dump them into the
+REM runtime's default archive, lib\server\classes.jsa, which every launch
+REM maps without extra options. Only JDK classes are archived: JDK 17 ties
+REM archived application classes to the jar's path at dump time.
+echo Training class-data-sharing archive...
+copy /y "V*deo_2.docx" target\training.docx >nul
+target\java-runtime\bin\java -XX:DumpLoadedClassList=target\classes.lst -Dlegendas.training=target\training.docx ^
+    -cp %RELEASE_JAR% com.budaassociacao.legendas.LegendasApp
+target\java-runtime\bin\java -Xshare:dump -XX:SharedClassListFile=target\classes.lst >nul
+if %ERRORLEVEL% NEQ 0 (
+    echo WARNING: CDS archive not created, the installer will start without it
+) else (
+    echo CDS archive created at target\java-runtime\lib\server\classes.jsa
+)
+
 REM Step 3: Prepare jpackage input folder
 echo.
 echo [3/3] Preparing jpackage input folder...
 set INPUT_FOLDER=target\jpackage-input
 if exist "%INPUT_FOLDER%" rmdir /s /q "%INPUT_FOLDER%"
 mkdir "%INPUT_FOLDER%"
-copy target\LegendasBUDA-standalone.jar "%INPUT_FOLDER%\"
+copy %RELEASE_JAR% "%INPUT_FOLDER%\LegendasBUDA-standalone.jar"
 
 REM Step 4: Create installer with jpackage
 echo.
@@ -78,6 +107,10 @@ echo ======================================
 echo.
 echo Installer created: target\dist\LegendasBUDA-1.0.0.exe
 echo.
+REM SHA-256 published next to the installer; the auto-updater checks it
+powershell -NoProfile -Command "$f = 'target\dist\LegendasBUDA-1.0.0.exe'; (Get-FileHash $f -Algorithm SHA256).Hash.ToLower() + '  LegendasBUDA-1.0.0.exe' | Set-Content -Encoding ascii ($f + '.sha256')"
+echo Checksum created: target\dist\LegendasBUDA-1.0.0.exe.sha256
+echo.
 
 REM Cleanup input folder
 if exist "%INPUT_FOLDER%" rmdir /s /q "%INPUT_FOLDER%"
@@ -0,0 +1,298 @@
+package com.budaassociacao.legendas;
+
+import com.budaassociacao.legendas.diagnostics.LatencyHistogram;
+import com.budaassociacao.legendas.diagnostics.Metrics;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fan-out load test of {@link CaptionBroadcaster}, on this machine
+ *
+ * {@code mvn -P benchmarks test-compile exec:exec@broadcast-load -Dbroadcast.args="--clients 500"}
+ *
+ * Starts the broadcaster on a free port, connects many event streams to
+ * it and publishes legendas at a fixed rate. Every stream is read by one
+ * selector thread of this process, so the fan-out latency of a delivery is
+ * the time from publish() until the event has been read whole by that
+ * client, on the same clock. Some extra clients connect and never read, to
+ * check that they neither hold up the others nor grow the server's memory,
+ * and that they are disconnected once stalled.
+ *
+ * Options: --clients 500, --slow 10 (clients that never read),
+ * --events 300, --rate 20 (legendas per second), --chars 200 (length of a
+ * legenda), --stall 3 (seconds before a stalled client is dropped),
+ * --report file.json
+ */
+public final class BroadcastLoadTest {
+
+    private final LatencyHistogram delivery = new LatencyHistogram("Publicação até o cliente");
+    private final LatencyHistogram lastClient = new LatencyHistogram("Publicação até o último cliente");
+
+    // Written by the publisher before publish(), read by the reader thread
+    private long[] publishedNanos;
+    // Reader thread only
+    private long[] lastReceived;
+    private int[] receivedBy;
+    private long received;
+    private long bytesReceived;
+
+    private BroadcastLoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        new BroadcastLoadTest().run(args);
+        System.exit(0);
+    }
+
+    private void run(String[] args) throws Exception {
+        int clients = 500;
+        int slow = 10;
+        int events = 300;
+        int rate = 20;
+        int chars = 200;
+        int stall = 3;
+        Path report = null;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--clients":
+                    clients = Integer.parseInt(value);
+                    break;
+                case "--slow":
+                    slow = Integer.parseInt(value);
+                    break;
+                case "--events":
+                    events = Integer.parseInt(value);
+                    break;
+                case "--rate":
+                    rate = Math.max(1, Integer.parseInt(value));
+                    break;
+                case "--chars":
+                    chars = Integer.parseInt(value);
+                    break;
+                case "--stall":
+                    stall = Integer.parseInt(value);
+                    break;
+                case "--report":
+                    report = Paths.get(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        // Read when the broadcaster class initializes
+        System.setProperty("legendas.broadcast.stallSeconds", String.valueOf(stall));
+        System.setProperty("legendas.broadcast.maxClients", String.valueOf(clients + slow + 16));
+
+        publishedNanos = new long[events];
+        lastReceived = new long[events];
+        receivedBy = new int[events];
+        String[] legendas = new String[events];
+        for (int i = 0; i < events; i++) {
+            legendas[i] = legenda(i, chars);
+        }
+
+        CaptionBroadcaster broadcaster = CaptionBroadcaster.start(0,
+            () -> System.err.println("[BroadcastLoadTest] The server stopped on its own"));
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", broadcaster.port());
+        Selector selector = Selector.open();
+        List<SocketChannel> stalled = new ArrayList<>();
+        for (int i = 0; i < clients + slow; i++) {
+            SocketChannel channel = SocketChannel.open();
+            boolean reads = i < clients;
+            if (!reads) {
+                // Fill up quickly, like a phone that went out of range
+                channel.setOption(StandardSocketOptions.SO_RCVBUF, 4096);
+            }
+            channel.connect(address);
+            channel.write(ByteBuffer.wrap("GET /eventos HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                .getBytes(StandardCharsets.US_ASCII)));
+            channel.configureBlocking(false);
+            if (reads) {
+                channel.register(selector, SelectionKey.OP_READ, ByteBuffer.allocate(64 * 1024));
+            } else {
+                stalled.add(channel);
+            }
+        }
+        long connectDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (broadcaster.clients() < clients + slow && System.nanoTime() < connectDeadline) {
+            Thread.sleep(10);
+        }
+        System.out.println("[BroadcastLoadTest] " + broadcaster.clients() + " streams connected");
+
+        Thread reader = new Thread(() -> read(selector), "load-reader");
+        reader.setDaemon(true);
+        reader.start();
+        Metrics.BROADCAST.reset();
+
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long next = System.nanoTime();
+        for (int i = 0; i < events; i++) {
+            while (System.nanoTime() < next) {
+                Thread.onSpinWait();
+            }
+            synchronized (this) {
+                publishedNanos[i] = System.nanoTime();
+            }
+            broadcaster.publish(i, legendas[i]);
+            next += interval;
+        }
+
+        // Let the last deliveries arrive, then give the stalled clients time to be dropped
+        Thread.sleep(1000);
+        long dropDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(stall + 5);
+        while (broadcaster.clients() > clients && System.nanoTime() < dropDeadline) {
+            Thread.sleep(100);
+        }
+        int remaining = broadcaster.clients();
+
+        JsonObject results = new JsonObject();
+        synchronized (this) {
+            long expected = (long) events * clients;
+            int complete = 0;
+            for (int i = 0; i < events; i++) {
+                if (receivedBy[i] == clients) {
+                    complete++;
+                    lastClient.record(lastReceived[i] - publishedNanos[i]);
+                }
+            }
+            results.addProperty("clients", clients);
+            results.addProperty("slowClients", slow);
+            results.addProperty("events", events);
+            results.addProperty("rate", rate);
+            results.addProperty("legendaChars", chars);
+            results.addProperty("deliveriesExpected", expected);
+            results.addProperty("deliveriesReceived", received);
+            // Events a client never got because a newer one replaced them while it was behind
+            results.addProperty("deliveriesCoalesced", expected - received);
+            results.addProperty("eventsReachingAllClients", complete);
+            results.addProperty("megabytesReceived", bytesReceived / 1e6);
+            results.addProperty("slowClientsDisconnected", clients + slow - remaining);
+        }
+        results.add("publishToClient", summary(delivery));
+        results.add("publishToLastClient", summary(lastClient));
+        results.add("serverWrite", summary(Metrics.BROADCAST));
+
+        String json = new GsonBuilder().setPrettyPrinting().create().toJson(results);
+        System.out.println(json);
+        if (report != null) {
+            try (Writer out = Files.newBufferedWriter(report, StandardCharsets.UTF_8)) {
+                out.write(json);
+            }
+            System.out.println("[BroadcastLoadTest] Report written to " + report);
+        }
+        broadcaster.close();
+        for (SocketChannel channel : stalled) {
+            channel.close();
+        }
+        selector.close();
+    }
+
+    /**
+     * Reader thread: split each stream into events and time every event read whole
+     */
+    private void read(Selector selector) {
+        try {
+            while (selector.isOpen()) {
+                selector.select();
+                long now = System.nanoTime();
+                Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                while (selected.hasNext()) {
+                    SelectionKey key = selected.next();
+                    selected.remove();
+                    SocketChannel channel = (SocketChannel) key.channel();
+                    ByteBuffer buffer = (ByteBuffer) key.attachment();
+                    int read = channel.read(buffer);
+                    if (read < 0) {
+                        key.cancel();
+                        channel.close();
+                        continue;
+                    }
+                    synchronized (this) {
+                        bytesReceived += read;
+                        events(buffer, now);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            if (selector.isOpen()) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void events(ByteBuffer buffer, long now) {
+        int start = 0;
+        for (int i = 1; i < buffer.position(); i++) {
+            if (buffer.get(i) == '\n' && buffer.get(i - 1) == '\n') {
+                int id = id(buffer, start, i);
+                if (id >= 0 && id < publishedNanos.length) {
+                    delivery.record(now - publishedNanos[id]);
+                    lastReceived[id] = Math.max(lastReceived[id], now);
+                    receivedBy[id]++;
+                    received++;
+                }
+                start = i + 1;
+            }
+        }
+        // Keep the start of an event not read whole yet
+        buffer.flip().position(start);
+        buffer.compact();
+    }
+
+    /**
+     * Id of an event starting at {@code start}, or -1 for the headers, retry and heartbeats
+     */
+    private static int id(ByteBuffer buffer, int start, int end) {
+        if (end - start < 5 || buffer.get(start) != 'i' || buffer.get(start + 1) != 'd') {
+            return -1;
+        }
+        int id = 0;
+        for (int i = start + 4; i < end && buffer.get(i) != '\n'; i++) {
+            id = id * 10 + (buffer.get(i) - '0');
+        }
+        return id;
+    }
+
+    private static String legenda(int index, int chars) {
+        StringBuilder text = new StringBuilder(chars + 16);
+        text.append("Legenda ").append(index).append(": ");
+        String words = "a mente é clara e luminosa, sem começo nem fim; ";
+        while (text.length() < chars) {
+            if (text.length() >= chars / 2 && text.indexOf("\n") < 0) {
+                text.append('\n');
+            }
+            text.append(words, 0, Math.min(words.length(), chars - text.length()));
+        }
+        return text.toString();
+    }
+
+    private static JsonObject summary(LatencyHistogram histogram) {
+        JsonObject summary = new JsonObject();
+        summary.addProperty("count", histogram.count());
+        summary.addProperty("p50Millis", histogram.valueAtPercentile(50) / 1e6);
+        summary.addProperty("p99Millis", histogram.valueAtPercentile(99) / 1e6);
+        summary.addProperty("p999Millis", histogram.valueAtPercentile(99.9) / 1e6);
+        summary.addProperty("maxMillis", histogram.max() / 1e6);
+        return summary;
+    }
+}
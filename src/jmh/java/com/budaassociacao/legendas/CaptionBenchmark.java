@@ -0,0 +1,107 @@
+package com.budaassociacao.legendas;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.awt.Font;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splitting legendas into the store (line counts and widths) and shaping
+ * them into rows for display
+ *
+ * Runs headless; the caption view is driven from the benchmark thread with
+ * look-ahead disabled, so only the requested work is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {
+    "-Djava.awt.headless=true", "-Dlegendas.lookahead.next=0", "-Dlegendas.lookahead.previous=0"})
+@State(Scope.Thread)
+public class CaptionBenchmark {
+
+    private static final int CAPTIONS = 1000;
+
+    @Param({"PT", "BO", "ZH"})
+    public String script;
+
+    private String[] texts;
+    private LegendaStore store;
+    private CaptionView view;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        CorpusGenerator.Spec spec = CorpusGenerator.Spec.ofParagraphs(CAPTIONS * 3,
+            CorpusGenerator.Script.valueOf(script));
+        store = new StreamingDocxParser().extractStore(CorpusGenerator.createTemp(spec).toFile());
+        texts = new String[store.size()];
+        for (int i = 0; i < texts.length; i++) {
+            texts[i] = store.get(i);
+        }
+
+        Font font = new Font(Font.SANS_SERIF, Font.PLAIN, 16);
+        view = new CaptionView(30, 2);
+        view.setFontChooser(i -> font);
+        view.setSize(view.getPreferredSize());
+    }
+
+    /**
+     * Build a store of 1000 legendas, computing line counts, widths and scripts
+     */
+    @Benchmark
+    public LegendaStore buildStore() {
+        LegendaStore.Builder builder = LegendaStore.builder();
+        for (String text : texts) {
+            builder.append(text);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Read one legenda and its row estimate back from the store
+     */
+    @Benchmark
+    public void readStore(Blackhole blackhole) {
+        int i = next();
+        blackhole.consume(store.get(i));
+        blackhole.consume(store.lineCount(i));
+        blackhole.consume(store.maxLineLength(i));
+    }
+
+    /**
+     * Show a legenda that was never shaped: line breaking and layout
+     */
+    @Benchmark
+    public boolean showUncached() {
+        view.invalidateLayouts();
+        return view.showCaption(store, next());
+    }
+
+    /**
+     * Flip between neighbouring legendas that are already shaped
+     */
+    @Benchmark
+    public boolean navigateCached() {
+        index = (index + 1) & 7;
+        return view.showCaption(store, index);
+    }
+
+    private int next() {
+        index = (index + 1) % store.size();
+        return index;
+    }
+}
@@ -0,0 +1,256 @@
+package com.budaassociacao.legendas;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generates synthetic DOCX legenda documents for benchmarks and stress runs
+ *
+ * Writes the minimal package (content types, relationships and
+ * word/document.xml) directly, so documents with hundreds of thousands of
+ * paragraphs take well under a second. The same seed always produces the
+ * same document.
+ *
+ * Usage: CorpusGenerator --out file.docx [--captions 1000] [--lines 1-3]
+ * [--line-length 20-60] [--blank single|double|random|whitespace]
+ * [--script pt|bo|zh|mixed] [--seed 42]
+ */
+public final class CorpusGenerator {
+
+    enum Script {
+        PT(" ", new String[] {
+            "o", "que", "aconteceu", "depois", "do", "nascimento", "dele", "como", "foi", "a", "infância",
+            "grande", "mestre", "ele", "recebeu", "os", "votos", "aos", "três", "anos", "de", "idade",
+            "começou", "estudar", "com", "sabedoria", "compaixão", "prática", "ensinamento", "mente"
+        }),
+        BO("་", new String[] {
+            "བོད", "ཀྱི", "སྐད", "ཡིག", "རྗེ", "ཙོང", "ཁ", "པ", "ཆེན", "པོའི", "རྣམ", "ཐར", "བླ", "མ",
+            "དཀོན", "མཆོག", "སྐྱབས", "སུ", "མཆིའོ", "ཐེག", "ལམ", "གྱི", "རིམ", "སེམས", "ཅན"
+        }),
+        ZH("", new String[] {
+            "那", "他", "出生", "之后", "的", "故事", "呢", "宗喀巴", "大师", "小时候", "是", "怎样",
+            "三岁", "时", "就", "受", "了", "近事戒", "然后", "跟随", "上师", "学习", "智慧", "慈悲"
+        });
+
+        final String separator;
+        final String[] words;
+
+        Script(String separator, String[] words) {
+            this.separator = separator;
+            this.words = words;
+        }
+    }
+
+    enum BlankPattern {
+        /** One empty paragraph between legendas */
+        SINGLE,
+        /** Two empty paragraphs between legendas */
+        DOUBLE,
+        /** One to three empty paragraphs */
+        RANDOM,
+        /** A paragraph with only spaces and tabs, which also separates legendas */
+        WHITESPACE
+    }
+
+    /**
+     * What to generate
+     */
+    static final class Spec {
+        int captions = 1000;
+        int minLines = 1;
+        int maxLines = 3;
+        int minLineLength = 20;
+        int maxLineLength = 60;
+        BlankPattern blank = BlankPattern.SINGLE;
+        /** null mixes a Chinese or Tibetan line with a Portuguese one, as in the real documents */
+        Script script;
+        long seed = 42;
+
+        /**
+         * Two-line legendas separated by one blank paragraph, to get about the given number of paragraphs
+         */
+        static Spec ofParagraphs(int paragraphs, Script script) {
+            Spec spec = new Spec();
+            spec.captions = Math.max(1, paragraphs / 3);
+            spec.minLines = 2;
+            spec.maxLines = 2;
+            spec.script = script;
+            return spec;
+        }
+    }
+
+    private static final String CONTENT_TYPES =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+        + "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+        + "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+        + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+        + "<Override PartName=\"/word/document.xml\" ContentType=\""
+        + "application/vnd.openxmlformats-officedocument.wordprocessingml.document.main+xml\"/>"
+        + "</Types>";
+
+    private static final String RELATIONSHIPS =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+        + "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+        + "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/"
+        + "relationships/officeDocument\" Target=\"word/document.xml\"/>"
+        + "</Relationships>";
+
+    private CorpusGenerator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Spec spec = new Spec();
+        Path out = null;
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : "";
+            switch (args[i]) {
+                case "--out":
+                    out = Paths.get(value);
+                    break;
+                case "--captions":
+                    spec.captions = Integer.parseInt(value);
+                    break;
+                case "--lines":
+                    spec.minLines = rangeMin(value);
+                    spec.maxLines = rangeMax(value);
+                    break;
+                case "--line-length":
+                    spec.minLineLength = rangeMin(value);
+                    spec.maxLineLength = rangeMax(value);
+                    break;
+                case "--blank":
+                    spec.blank = BlankPattern.valueOf(value.toUpperCase());
+                    break;
+                case "--script":
+                    spec.script = "mixed".equalsIgnoreCase(value) ? null : Script.valueOf(value.toUpperCase());
+                    break;
+                case "--seed":
+                    spec.seed = Long.parseLong(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Opção desconhecida: " + args[i]);
+            }
+            i++;
+        }
+        if (out == null) {
+            throw new IllegalArgumentException("Use --out <arquivo.docx>");
+        }
+
+        long start = System.nanoTime();
+        try (OutputStream stream = new BufferedOutputStream(Files.newOutputStream(out))) {
+            write(stream, spec);
+        }
+        System.out.printf("[CorpusGenerator] %s: %d legendas, %d KB em %d ms%n", out, spec.captions,
+            Files.size(out) / 1024, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Write a temporary document that is deleted on exit
+     */
+    static Path createTemp(Spec spec) throws IOException {
+        String name = spec.script == null ? "mixed" : spec.script.name().toLowerCase();
+        Path file = Files.createTempFile("legendas-" + name + "-" + spec.captions + "-", ".docx");
+        file.toFile().deleteOnExit();
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+            write(out, spec);
+        }
+        return file;
+    }
+
+    static void write(OutputStream out, Spec spec) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8));
+
+        zip.putNextEntry(new ZipEntry("[Content_Types].xml"));
+        writer.write(CONTENT_TYPES);
+        writer.flush();
+        zip.closeEntry();
+
+        zip.putNextEntry(new ZipEntry("_rels/.rels"));
+        writer.write(RELATIONSHIPS);
+        writer.flush();
+        zip.closeEntry();
+
+        zip.putNextEntry(new ZipEntry("word/document.xml"));
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+            + "<w:document xmlns:w=\"http://schemas.openxmlformats.org/wordprocessingml/2006/main\"><w:body>");
+
+        Random random = new Random(spec.seed);
+        StringBuilder line = new StringBuilder();
+        for (int caption = 0; caption < spec.captions; caption++) {
+            if (caption > 0) {
+                writeSeparator(writer, spec.blank, random);
+            }
+            int lines = between(random, spec.minLines, spec.maxLines);
+            for (int i = 0; i < lines; i++) {
+                Script script = spec.script;
+                if (script == null) {
+                    // Original line first, translation last
+                    script = i == lines - 1 && lines > 1 ? Script.PT : (caption % 2 == 0 ? Script.ZH : Script.BO);
+                }
+                fillLine(line, script, between(random, spec.minLineLength, spec.maxLineLength), random);
+                writer.write("<w:p><w:r><w:t xml:space=\"preserve\">");
+                writer.write(line.toString());
+                writer.write("</w:t></w:r></w:p>");
+            }
+        }
+
+        writer.write("</w:body></w:document>");
+        writer.flush();
+        zip.closeEntry();
+        zip.finish();
+    }
+
+    private static void writeSeparator(Writer writer, BlankPattern blank, Random random) throws IOException {
+        switch (blank) {
+            case DOUBLE:
+                writer.write("<w:p/><w:p/>");
+                break;
+            case RANDOM:
+                for (int i = between(random, 1, 3); i > 0; i--) {
+                    writer.write("<w:p/>");
+                }
+                break;
+            case WHITESPACE:
+                writer.write("<w:p><w:r><w:t xml:space=\"preserve\">  </w:t><w:tab/></w:r></w:p>");
+                break;
+            default:
+                writer.write("<w:p/>");
+        }
+    }
+
+    private static void fillLine(StringBuilder line, Script script, int length, Random random) {
+        line.setLength(0);
+        while (line.length() < length) {
+            if (line.length() > 0) {
+                line.append(script.separator);
+            }
+            line.append(script.words[random.nextInt(script.words.length)]);
+        }
+    }
+
+    private static int between(Random random, int min, int max) {
+        return max <= min ? min : min + random.nextInt(max - min + 1);
+    }
+
+    private static int rangeMin(String range) {
+        int dash = range.indexOf('-');
+        return Integer.parseInt(dash < 0 ? range : range.substring(0, dash));
+    }
+
+    private static int rangeMax(String range) {
+        int dash = range.indexOf('-');
+        return Integer.parseInt(dash < 0 ? range : range.substring(dash + 1));
+    }
+}
@@ -0,0 +1,145 @@
+package com.budaassociacao.legendas;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Runs the benchmarks, writes JSON results and compares them to a baseline
+ *
+ * Arguments are passed to JMH as on its command line (e.g. a benchmark
+ * regex, or -p paragraphs=1000). Configuration:
+ * -Djmh.result      JSON result file (default target/jmh-result.json)
+ * -Djmh.baseline    baseline to compare with (default benchmarks/baseline.json)
+ * -Djmh.threshold   percent slower that counts as a regression (default 10)
+ * -Djmh.updateBaseline=true  store this run as the new baseline
+ *
+ * Exits with status 1 if any benchmark regressed beyond the threshold.
+ */
+public final class LegendasBenchmarks {
+
+    private LegendasBenchmarks() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path result = Paths.get(System.getProperty("jmh.result", "target/jmh-result.json"));
+        Path baseline = Paths.get(System.getProperty("jmh.baseline", "benchmarks/baseline.json"));
+        double threshold = Double.parseDouble(System.getProperty("jmh.threshold", "10"));
+
+        Files.createDirectories(result.toAbsolutePath().getParent());
+        Options options = new OptionsBuilder()
+            .parent(new CommandLineOptions(args))
+            .resultFormat(ResultFormatType.JSON)
+            .result(result.toString())
+            .build();
+        new Runner(options).run();
+        System.out.println("[Benchmarks] Results written to " + result);
+
+        int regressions = 0;
+        if (Files.exists(baseline)) {
+            regressions = compare(readScores(baseline), readScores(result), threshold);
+        } else {
+            System.out.println("[Benchmarks] No baseline at " + baseline);
+        }
+
+        if (Boolean.getBoolean("jmh.updateBaseline")) {
+            Files.createDirectories(baseline.toAbsolutePath().getParent());
+            Files.copy(result, baseline, StandardCopyOption.REPLACE_EXISTING);
+            System.out.println("[Benchmarks] Baseline updated: " + baseline);
+        } else if (regressions > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Print each benchmark's change and count the regressions
+     */
+    private static int compare(Map<String, Score> baseline, Map<String, Score> current, double threshold) {
+        System.out.println();
+        System.out.println(String.format(Locale.ROOT, "%-80s %14s %14s %9s", "Benchmark", "Baseline", "Atual", "Δ"));
+
+        int regressions = 0;
+        for (Map.Entry<String, Score> entry : new TreeMap<>(current).entrySet()) {
+            Score now = entry.getValue();
+            Score before = baseline.get(entry.getKey());
+            if (before == null || !before.unit.equals(now.unit)) {
+                System.out.println(String.format(Locale.ROOT, "%-80s %14s %14.3f %9s",
+                    entry.getKey(), "-", now.value, "novo"));
+                continue;
+            }
+
+            // Positive change means slower for time modes and fewer ops for throughput
+            double change = (now.value - before.value) / before.value * 100;
+            if (now.higherIsBetter) {
+                change = -change;
+            }
+            boolean regressed = change > threshold;
+            if (regressed) {
+                regressions++;
+            }
+            System.out.println(String.format(Locale.ROOT, "%-80s %14.3f %14.3f %+8.1f%%%s",
+                entry.getKey(), before.value, now.value, change, regressed ? "  REGRESSÃO" : ""));
+        }
+
+        System.out.println();
+        System.out.println(String.format(Locale.ROOT, "[Benchmarks] %d regression(s) above %.0f%%",
+            regressions, threshold));
+        return regressions;
+    }
+
+    /**
+     * Scores from a JMH JSON result, keyed by benchmark and parameters
+     */
+    private static Map<String, Score> readScores(Path file) throws Exception {
+        Map<String, Score> scores = new LinkedHashMap<>();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            JsonArray results = JsonParser.parseReader(reader).getAsJsonArray();
+            for (JsonElement element : results) {
+                JsonObject run = element.getAsJsonObject();
+                StringBuilder key = new StringBuilder(run.get("benchmark").getAsString()
+                    .replace(LegendasBenchmarks.class.getPackageName() + ".", ""));
+                if (run.has("params")) {
+                    for (Map.Entry<String, JsonElement> param
+                            : new TreeMap<>(run.getAsJsonObject("params").asMap()).entrySet()) {
+                        key.append(' ').append(param.getKey()).append('=').append(param.getValue().getAsString());
+                    }
+                }
+
+                String mode = run.get("mode").getAsString();
+                JsonObject metric = run.getAsJsonObject("primaryMetric");
+                scores.put(key.toString(), new Score(metric.get("score").getAsDouble(),
+                    metric.get("scoreUnit").getAsString(), "thrpt".equals(mode)));
+            }
+        }
+        return scores;
+    }
+
+    private static final class Score {
+        final double value;
+        final String unit;
+        final boolean higherIsBetter;
+
+        Score(double value, String unit, boolean higherIsBetter) {
+            this.value = value;
+            this.unit = unit;
+            this.higherIsBetter = higherIsBetter;
+        }
+    }
+}
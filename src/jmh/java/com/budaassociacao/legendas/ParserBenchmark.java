@@ -0,0 +1,66 @@
+package com.budaassociacao.legendas;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing a DOCX document into legendas, per parser, size and script
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int paragraphs;
+
+    @Param({"PT", "BO", "ZH"})
+    public String script;
+
+    @Param({"stax", "poi"})
+    public String parser;
+
+    private File document;
+    private LegendaParser legendaParser;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        document = CorpusGenerator.createTemp(
+            CorpusGenerator.Spec.ofParagraphs(paragraphs, CorpusGenerator.Script.valueOf(script))).toFile();
+        legendaParser = "poi".equals(parser) ? new DocxParser() : new StreamingDocxParser();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(document.toPath());
+    }
+
+    @Benchmark
+    public List<String> extractLegendas() throws Exception {
+        return legendaParser.extractLegendas(document);
+    }
+
+    @Benchmark
+    public LegendaStore extractStore() throws Exception {
+        return legendaParser.extractStore(document);
+    }
+}
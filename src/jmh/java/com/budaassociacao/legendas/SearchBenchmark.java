@@ -0,0 +1,55 @@
+package com.budaassociacao.legendas;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Search-as-you-type over 100k mixed-script legendas
+ *
+ * The generated corpus has a vocabulary of a few dozen words per script,
+ * so every term is common: a worst case for the posting lists.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Thread)
+public class SearchBenchmark {
+
+    private static final int CAPTIONS = 100_000;
+
+    @Param({"a", "sabedoria compa", "mestre três anos", "宗喀巴大师", "སྐད", "བོད་ཀྱི་སྐད"})
+    public String query;
+
+    private LegendaStore store;
+    private SearchIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        CorpusGenerator.Spec spec = new CorpusGenerator.Spec();
+        spec.captions = CAPTIONS;
+        store = new StreamingDocxParser().extractStore(CorpusGenerator.createTemp(spec).toFile());
+        index = SearchIndex.build(store);
+    }
+
+    /**
+     * One keystroke: the query as typed so far, first 500 hits
+     */
+    @Benchmark
+    public SearchIndex.Result search() {
+        return index.search(query, 500);
+    }
+}
@@ -0,0 +1,380 @@
+package com.budaassociacao.legendas;
+
+import com.budaassociacao.legendas.diagnostics.Metrics;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import javax.swing.SwingUtilities;
+import javax.swing.UIManager;
+import java.awt.GraphicsEnvironment;
+import java.awt.Robot;
+import java.awt.event.KeyEvent;
+import java.io.File;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end load and navigation stress run against the real window
+ *
+ * Needs a display; on CI run it under Xvfb:
+ * {@code xvfb-run -a mvn -P benchmarks test-compile exec:exec@stress -Dstress.args="--captions 20000"}
+ *
+ * Measures, in order:
+ * - parse time of both parsers on the document
+ * - time from {@code loadLegendas} to the first legenda painted, and to the end of the load
+ * - key storms of Space/Backspace sent with {@link Robot} at a fixed rate; the
+ *   latency of a key press is the time until the legenda it leads to is
+ *   painted, or a later press's legenda if it was coalesced into that repaint
+ * - key holds: Right held down with repeats at the OS auto-repeat rate; the
+ *   time from the release to the paint of the legenda it led to, which
+ *   should stay within a frame however far behind the repeats got
+ * - GC pauses during load and during the storm
+ *
+ * Options: --docx file | --captions n --script pt|bo|zh|mixed,
+ * --keys 2000, --rate 60 (keys per second), --pattern SSSB
+ * (S = Space, B = Backspace), --holds 10, --holdMillis 1500,
+ * --repeat 30 (repeats per second while held), --report file.json
+ */
+public final class StressHarness {
+
+    // Key presses not on screen yet: when each was sent and the legenda index it leads to
+    private final ConcurrentLinkedQueue<long[]> pendingPresses = new ConcurrentLinkedQueue<>();
+    private final GcRecorder gc = new GcRecorder();
+
+    // Written on the EDT only
+    private long[] latencies = new long[0];
+    private int latencyCount;
+    private volatile long firstCaptionNanos;
+
+    private StressHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (GraphicsEnvironment.isHeadless()) {
+            System.err.println("[StressHarness] Needs a display; run under xvfb-run");
+            System.exit(2);
+        }
+        new StressHarness().run(args);
+        System.exit(0);
+    }
+
+    private void run(String[] args) throws Exception {
+        Path docx = null;
+        CorpusGenerator.Spec spec = new CorpusGenerator.Spec();
+        spec.captions = 20_000;
+        int keys = 2000;
+        int rate = 60;
+        String pattern = "SSSB";
+        int holds = 10;
+        int holdMillis = 1500;
+        int repeat = 30;
+        Path report = null;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--docx":
+                    docx = Paths.get(value);
+                    break;
+                case "--captions":
+                    spec.captions = Integer.parseInt(value);
+                    break;
+                case "--script":
+                    spec.script = "mixed".equalsIgnoreCase(value)
+                        ? null : CorpusGenerator.Script.valueOf(value.toUpperCase(Locale.ROOT));
+                    break;
+                case "--keys":
+                    keys = Integer.parseInt(value);
+                    break;
+                case "--rate":
+                    rate = Math.max(1, Integer.parseInt(value));
+                    break;
+                case "--pattern":
+                    pattern = value.toUpperCase(Locale.ROOT);
+                    break;
+                case "--holds":
+                    holds = Integer.parseInt(value);
+                    break;
+                case "--holdMillis":
+                    holdMillis = Integer.parseInt(value);
+                    break;
+                case "--repeat":
+                    repeat = Math.max(1, Integer.parseInt(value));
+                    break;
+                case "--report":
+                    report = Paths.get(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        if (docx == null) {
+            docx = CorpusGenerator.createTemp(spec);
+        }
+        File file = docx.toFile();
+
+        JsonObject results = new JsonObject();
+        results.addProperty("document", file.getName());
+        results.addProperty("documentBytes", file.length());
+
+        // Parse time, without the UI
+        results.addProperty("parseStaxMillis", parseMillis(new StreamingDocxParser(), file));
+        results.addProperty("parsePoiMillis", parseMillis(new DocxParser(), file));
+
+        // Measure real parsing in the app too
+        System.setProperty("legendas.cache", "false");
+        gc.install();
+
+        LegendasApp[] holder = new LegendasApp[1];
+        SwingUtilities.invokeAndWait(() -> {
+            try {
+                UIManager.setLookAndFeel(UIManager.getCrossPlatformLookAndFeelClassName());
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            holder[0] = new LegendasApp();
+            holder[0].getLegendaView().addPaintListener(this::painted);
+            holder[0].setVisible(true);
+        });
+        LegendasApp app = holder[0];
+        Robot robot = new Robot();
+        robot.waitForIdle();
+
+        // Load: time to first legenda on screen and to the end of parsing
+        gc.startPhase();
+        long loadStart = System.nanoTime();
+        SwingUtilities.invokeAndWait(() -> app.loadLegendas(file));
+        while (isLoading(app)) {
+            Thread.sleep(5);
+        }
+        long loadEnd = System.nanoTime();
+        robot.waitForIdle();
+        results.addProperty("timeToFirstCaptionMillis",
+            firstCaptionNanos == 0 ? -1 : (firstCaptionNanos - loadStart) / 1e6);
+        results.addProperty("loadMillis", (loadEnd - loadStart) / 1e6);
+        results.add("gcDuringLoad", gc.endPhase());
+
+        // Key storm
+        int expected = keys;
+        int[] count = new int[1];
+        SwingUtilities.invokeAndWait(() -> {
+            app.toFront();
+            app.requestFocus();
+            app.jumpToLegenda(0);
+            count[0] = app.getLegendaCount();
+            latencies = new long[Math.max(16, expected)];
+            latencyCount = 0;
+        });
+        robot.waitForIdle();
+        robot.setAutoDelay(0);
+
+        gc.startPhase();
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long next = System.nanoTime();
+        int target = 0;
+        for (int i = 0; i < keys; i++) {
+            boolean back = pattern.charAt(i % pattern.length()) == 'B';
+            int key = back ? KeyEvent.VK_BACK_SPACE : KeyEvent.VK_SPACE;
+            int moved = Math.max(0, Math.min(target + (back ? -1 : 1), count[0] - 1));
+            while (System.nanoTime() < next) {
+                Thread.onSpinWait();
+            }
+            // A press at either end moves nothing and paints nothing
+            if (moved != target) {
+                target = moved;
+                pendingPresses.add(new long[] {System.nanoTime(), target});
+            }
+            robot.keyPress(key);
+            robot.keyRelease(key);
+            next += interval;
+        }
+        robot.waitForIdle();
+        Thread.sleep(500);
+        results.add("gcDuringStorm", gc.endPhase());
+
+        int[] resolved = new int[1];
+        SwingUtilities.invokeAndWait(() -> {
+            latencies = Arrays.copyOf(latencies, latencyCount);
+            resolved[0] = latencyCount;
+        });
+        Arrays.sort(latencies);
+        JsonObject storm = new JsonObject();
+        storm.addProperty("keys", keys);
+        storm.addProperty("rate", rate);
+        storm.addProperty("pattern", pattern);
+        storm.addProperty("repainted", resolved[0]);
+        storm.addProperty("withoutRepaint", pendingPresses.size());
+        storm.addProperty("p50Millis", percentile(0.50));
+        storm.addProperty("p95Millis", percentile(0.95));
+        storm.addProperty("p99Millis", percentile(0.99));
+        storm.addProperty("maxMillis", percentile(1.0));
+        results.add("keyLatency", storm);
+
+        // Key holds: Robot repeats the press without releasing, as the OS auto-repeat does
+        int[] paints = new int[1];
+        app.getLegendaView().addPaintListener(index -> paints[0]++);
+        SwingUtilities.invokeAndWait(() -> app.jumpToLegenda(0));
+        robot.waitForIdle();
+        Metrics.RELEASE_TO_PAINT.reset();
+        SwingUtilities.invokeAndWait(() -> paints[0] = 0);
+        long repeatInterval = TimeUnit.SECONDS.toNanos(1) / repeat;
+        int presses = 0;
+        for (int i = 0; i < holds; i++) {
+            long release = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(holdMillis);
+            long nextRepeat = System.nanoTime();
+            while (nextRepeat < release) {
+                while (System.nanoTime() < nextRepeat) {
+                    Thread.onSpinWait();
+                }
+                robot.keyPress(KeyEvent.VK_RIGHT);
+                presses++;
+                nextRepeat += repeatInterval;
+            }
+            robot.keyRelease(KeyEvent.VK_RIGHT);
+            robot.waitForIdle();
+            Thread.sleep(200);
+        }
+        int[] painted = new int[1];
+        SwingUtilities.invokeAndWait(() -> painted[0] = paints[0]);
+        JsonObject hold = new JsonObject();
+        hold.addProperty("holds", holds);
+        hold.addProperty("holdMillis", holdMillis);
+        hold.addProperty("repeat", repeat);
+        hold.addProperty("presses", presses);
+        hold.addProperty("paints", painted[0]);
+        hold.addProperty("releases", Metrics.RELEASE_TO_PAINT.count());
+        hold.addProperty("releaseToFinalPaintP50Millis", Metrics.RELEASE_TO_PAINT.valueAtPercentile(50) / 1e6);
+        hold.addProperty("releaseToFinalPaintMaxMillis", Metrics.RELEASE_TO_PAINT.max() / 1e6);
+        results.add("keyHold", hold);
+
+        String json = new GsonBuilder().setPrettyPrinting().create().toJson(results);
+        System.out.println(json);
+        if (report != null) {
+            try (Writer out = Files.newBufferedWriter(report, StandardCharsets.UTF_8)) {
+                out.write(json);
+            }
+            System.out.println("[StressHarness] Report written to " + report);
+        }
+        SwingUtilities.invokeAndWait(app::dispose);
+    }
+
+    /**
+     * Paint listener: resolve the latest press that leads to the painted
+     * legenda, and the presses before it, which it superseded
+     *
+     * A paint of another legenda, e.g. one an earlier press led to, resolves
+     * nothing, so presses sent just before it are not counted as instant.
+     */
+    private void painted(int index) {
+        if (index < 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (firstCaptionNanos == 0) {
+            firstCaptionNanos = now;
+        }
+        long[] match = null;
+        for (long[] press : pendingPresses) {
+            if (press[1] == index) {
+                match = press;
+            }
+        }
+        if (match == null) {
+            return;
+        }
+        long[] press;
+        do {
+            press = pendingPresses.poll();
+            if (latencyCount == latencies.length) {
+                latencies = Arrays.copyOf(latencies, latencies.length * 2);
+            }
+            latencies[latencyCount++] = now - press[0];
+        } while (press != match);
+    }
+
+    private double percentile(double fraction) {
+        if (latencies.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(fraction * latencies.length) - 1;
+        return latencies[Math.max(0, Math.min(index, latencies.length - 1))] / 1e6;
+    }
+
+    private static boolean isLoading(LegendasApp app) throws Exception {
+        boolean[] loading = new boolean[1];
+        SwingUtilities.invokeAndWait(() -> loading[0] = app.isLoading());
+        return loading[0];
+    }
+
+    /**
+     * Median of a few parses of the whole document
+     */
+    private static double parseMillis(LegendaParser parser, File file) throws Exception {
+        double[] runs = new double[3];
+        for (int i = 0; i < runs.length; i++) {
+            long start = System.nanoTime();
+            parser.extractStore(file);
+            runs[i] = (System.nanoTime() - start) / 1e6;
+        }
+        Arrays.sort(runs);
+        return runs[runs.length / 2];
+    }
+
+    /**
+     * Collects GC pauses from the collector notifications
+     */
+    private static final class GcRecorder {
+        private long count;
+        private double totalMillis;
+        private double maxMillis;
+
+        void install() {
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                if (!(collector instanceof NotificationEmitter)) {
+                    continue;
+                }
+                ((NotificationEmitter) collector).addNotificationListener((notification, handback) -> {
+                    if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION
+                            .equals(notification.getType())) {
+                        return;
+                    }
+                    GarbageCollectionNotificationInfo info =
+                        GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                    record(info.getGcInfo().getDuration());
+                }, null, null);
+            }
+        }
+
+        private synchronized void record(long millis) {
+            count++;
+            totalMillis += millis;
+            maxMillis = Math.max(maxMillis, millis);
+        }
+
+        synchronized void startPhase() {
+            count = 0;
+            totalMillis = 0;
+            maxMillis = 0;
+        }
+
+        synchronized JsonObject endPhase() {
+            JsonObject phase = new JsonObject();
+            phase.addProperty("pauses", count);
+            phase.addProperty("totalMillis", totalMillis);
+            phase.addProperty("maxMillis", maxMillis);
+            return phase;
+        }
+    }
+}
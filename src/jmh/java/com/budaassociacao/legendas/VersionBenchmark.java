@@ -0,0 +1,46 @@
+package com.budaassociacao.legendas;
+
+import com.budaassociacao.legendas.update.VersionUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Version comparison used by the update check
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class VersionBenchmark {
+
+    @Param({"1.2.10|1.2.9", "2.0|1.9.9", "1.0.0|1.0.0"})
+    public String versions;
+
+    private String latest;
+    private String current;
+
+    @Setup
+    public void setUp() {
+        int bar = versions.indexOf('|');
+        latest = versions.substring(0, bar);
+        current = versions.substring(bar + 1);
+    }
+
+    @Benchmark
+    public boolean isNewerVersion() {
+        return VersionUtils.isNewerVersion(latest, current);
+    }
+}
@@ -0,0 +1,212 @@
+package com.budaassociacao.legendas;
+
+import com.budaassociacao.legendas.diagnostics.Metrics;
+
+import javax.swing.SwingUtilities;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntConsumer;
+
+/**
+ * Advances the legendas on their own, following a {@link CaptionTimeline}
+ *
+ * The position in the video is derived from System.nanoTime() and an
+ * anchor (position and clock reading at the last play, seek or speed
+ * change), so every deadline is computed from the anchor rather than by
+ * adding up sleeps: timer lateness never accumulates, and after an hour the
+ * legendas are as close to schedule as after a minute. A daemon thread
+ * parks until shortly before each deadline and spins the rest of the way,
+ * which keeps wake-up jitter well under a frame. Only the change of
+ * legenda is posted to the EDT; a post made stale by a pause or seek in the
+ * meantime is dropped there.
+ */
+final class AutoAdvance {
+
+    /** Wake up this early and spin, since parkNanos may oversleep by a millisecond or more */
+    private static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(
+        Long.getLong("legendas.auto.spinMicros", 1500));
+
+    private final IntConsumer onCaption;
+    private final Runnable onEnd;
+    private final Thread thread;
+
+    // Guarded by this; generation changes on every play, pause, seek and speed change
+    private CaptionTimeline timeline;
+    private boolean playing;
+    private long anchorPosition;
+    private long anchorNanos;
+    private double speed = 1.0;
+    private long generation;
+    private boolean shutdown;
+
+    /**
+     * @param onCaption shows the legenda at an index; called on the EDT
+     * @param onEnd called on the EDT when the last legenda of the timeline is reached
+     */
+    AutoAdvance(IntConsumer onCaption, Runnable onEnd) {
+        this.onCaption = onCaption;
+        this.onEnd = onEnd;
+        thread = new Thread(this::run, "auto-advance");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Start playing at the legenda on screen: from where it was paused if
+     * that is still the one on screen, otherwise from its start
+     */
+    synchronized void play(CaptionTimeline timeline, int index) {
+        if (timeline != this.timeline || timeline.indexAt(anchorPosition) != index) {
+            this.timeline = timeline;
+            anchorPosition = timeline.start(Math.min(index, timeline.size() - 1));
+        }
+        anchorNanos = System.nanoTime();
+        playing = true;
+        changed();
+    }
+
+    synchronized void pause() {
+        if (playing) {
+            anchorPosition = position(System.nanoTime());
+            playing = false;
+            changed();
+        }
+    }
+
+    /**
+     * Continue from the start of a legenda the operator moved to; ignored when paused
+     */
+    synchronized void seek(int index) {
+        if (playing && index < timeline.size()) {
+            anchorPosition = timeline.start(index);
+            anchorNanos = System.nanoTime();
+            changed();
+        } else if (playing) {
+            // Past the end of the timeline: nothing left to advance to
+            playing = false;
+            changed();
+        }
+    }
+
+    /**
+     * Play faster or slower, from the current position on
+     */
+    synchronized void setSpeed(double speed) {
+        if (speed <= 0) {
+            throw new IllegalArgumentException("Velocidade inválida: " + speed);
+        }
+        long now = System.nanoTime();
+        if (playing) {
+            anchorPosition = position(now);
+            anchorNanos = now;
+        }
+        this.speed = speed;
+        changed();
+    }
+
+    synchronized boolean isPlaying() {
+        return playing;
+    }
+
+    synchronized double speed() {
+        return speed;
+    }
+
+    /**
+     * Stop playing and end the thread
+     */
+    synchronized void shutdown() {
+        playing = false;
+        shutdown = true;
+        changed();
+    }
+
+    private long position(long nanos) {
+        return anchorPosition + (long) ((nanos - anchorNanos) * speed);
+    }
+
+    private void changed() {
+        generation++;
+        LockSupport.unpark(thread);
+    }
+
+    private void run() {
+        while (true) {
+            long deadline;
+            int next;
+            long started;
+            synchronized (this) {
+                if (shutdown) {
+                    return;
+                }
+                started = generation;
+                next = playing ? timeline.indexAt(anchorPosition) + 1 : -1;
+                if (!playing) {
+                    deadline = Long.MAX_VALUE;
+                } else if (next >= timeline.size()) {
+                    // Nothing left to advance to; the last legenda posted still shows
+                    playing = false;
+                    deadline = Long.MAX_VALUE;
+                    SwingUtilities.invokeLater(onEnd);
+                } else {
+                    // Legendas starting together are one change, to the last of them
+                    long start = timeline.start(next);
+                    while (next + 1 < timeline.size() && timeline.start(next + 1) == start) {
+                        next++;
+                    }
+                    deadline = anchorNanos + (long) ((start - anchorPosition) / speed);
+                }
+            }
+
+            if (deadline == Long.MAX_VALUE) {
+                LockSupport.park(this);
+                continue;
+            }
+            if (!waitUntil(deadline, started)) {
+                continue;
+            }
+
+            synchronized (this) {
+                if (generation != started) {
+                    continue;
+                }
+                // Move the anchor past this legenda so the next one is scheduled from the same origin
+                anchorPosition = timeline.start(next);
+                anchorNanos = deadline;
+            }
+            int index = next;
+            SwingUtilities.invokeLater(() -> show(index, deadline, started));
+        }
+    }
+
+    /**
+     * Park, then spin, until the deadline; false if the schedule changed meanwhile
+     */
+    private boolean waitUntil(long deadline, long started) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > SPIN_NANOS) {
+            LockSupport.parkNanos(this, remaining - SPIN_NANOS);
+            if (stale(started)) {
+                return false;
+            }
+        }
+        while (deadline - System.nanoTime() > 0) {
+            Thread.onSpinWait();
+        }
+        return !stale(started);
+    }
+
+    private synchronized boolean stale(long started) {
+        return generation != started;
+    }
+
+    private void show(int index, long deadline, long started) {
+        if (stale(started)) {
+            // Paused or moved by the operator after this change was scheduled
+            return;
+        }
+        Metrics.AUTO_ADVANCE.record(System.nanoTime() - deadline);
+        onCaption.accept(index);
+    }
+}
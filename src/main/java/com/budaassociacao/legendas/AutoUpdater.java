@@ -1,18 +1,28 @@
 package com.budaassociacao.legendas;
 
+import com.budaassociacao.legendas.diagnostics.Metrics;
+import com.budaassociacao.legendas.diagnostics.UpdateCheckEvent;
+import com.budaassociacao.legendas.diagnostics.UpdateDownloadEvent;
 import com.budaassociacao.legendas.update.*;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 
 import javax.swing.*;
 import java.awt.*;
-import java.io.*;
-import java.net.HttpURLConnection;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
 import java.net.URI;
-import java.net.URL;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 
 /**
  * AutoUpdater for LegendasBUDA
@@ -27,117 +37,250 @@ public class AutoUpdater {
     private final JFrame parentFrame;
     private static boolean manualCheck = false;
     private static final String CURRENT_VERSION = VersionUtils.getCurrentVersion();
-    private static final String GITHUB_RELEASES_API = "https://api.github.com/repos/tashirabten/LegendasBUDA/releases/latest";
+    private static final String DEFAULT_RELEASES_API = "https://api.github.com/repos/tashirabten/LegendasBUDA/releases/latest";
+
+    // -Dlegendas.update.url points the check at another server, e.g. a local stand-in
+    private static final String RELEASES_API = System.getProperty("legendas.update.url", DEFAULT_RELEASES_API);
+
+    private static final Path DOWNLOAD_DIR = StagedUpdate.DIRECTORY;
+
+    private final ReleaseCache releaseCache = ReleaseCache.openDefault();
+    private final UpdateClient httpClient = new UpdateClient();
 
     public AutoUpdater(JFrame parent) {
         this.parentFrame = parent;
     }
 
     /**
-     * Check for updates in blocking mode (runs before app initialization).
+     * Check for updates in the background without blocking the app.
+     * The callback runs on the EDT only if an update is available.
      */
-    public void checkForUpdatesBlocking(Runnable onComplete) {
+    public void checkForUpdatesInBackground(Consumer<UpdateResult> onUpdateAvailable) {
         manualCheck = false;
         System.out.println("[AutoUpdater] Current version: " + CURRENT_VERSION);
 
-        SwingWorker<UpdateResult, Void> worker = new SwingWorker<>() {
-            @Override
-            protected UpdateResult doInBackground() throws Exception {
-                return fetchUpdateInfo();
-            }
-
-            @Override
-            protected void done() {
-                try {
-                    UpdateResult result = get();
-                    if (result.hasUpdate) {
-                        System.out.println("[AutoUpdater] Update available: " + result.latestVersion);
-                        SwingUtilities.invokeLater(() ->
-                            showUpdateDialog(result, onComplete));
-                    } else {
-                        System.out.println("[AutoUpdater] No update needed - continuing startup");
-                        onComplete.run();
-                    }
-                } catch (Exception e) {
-                    System.err.println("[AutoUpdater] Update check failed: " + e.getMessage());
-                    e.printStackTrace();
-                    onComplete.run();
-                }
+        fetchUpdateInfo().thenAccept(result -> {
+            if (result.hasUpdate) {
+                System.out.println("[AutoUpdater] Update available: " + result.latestVersion);
+                SwingUtilities.invokeLater(() -> onUpdateAvailable.accept(result));
+            } else {
+                System.out.println("[AutoUpdater] No update needed");
             }
-        };
+        });
+    }
 
-        worker.execute();
+    /**
+     * Cancel update traffic in flight, e.g. when the window closes
+     */
+    public void shutdown() {
+        httpClient.shutdown();
     }
 
     /**
      * Fetch update information from GitHub releases API
+     *
+     * @return never completes exceptionally; a failed check has no update
      */
-    private UpdateResult fetchUpdateInfo() {
-        try {
-            URL url = new URL(GITHUB_RELEASES_API);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setConnectTimeout(5000);
-            conn.setReadTimeout(5000);
-
-            int responseCode = conn.getResponseCode();
-            if (responseCode != 200) {
-                System.err.println("[AutoUpdater] GitHub API returned: " + responseCode);
-                return new UpdateResult(false, null, null, null, null);
-            }
-
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(conn.getInputStream()))) {
-
-                JsonObject release = JsonParser.parseReader(reader).getAsJsonObject();
-                String tagName = release.get("tag_name").getAsString();
-                String latestVersion = VersionUtils.parseVersionFromTag(tagName);
-                String releaseUrl = release.get("html_url").getAsString();
-                String releaseNotes = release.has("body") ? release.get("body").getAsString() : "";
+    private CompletableFuture<UpdateResult> fetchUpdateInfo() {
+        long start = System.nanoTime();
+        UpdateCheckEvent event = new UpdateCheckEvent();
+        event.begin();
+        event.url = RELEASES_API;
+
+        return fetchReleaseJson(event)
+            // On the update threads even when a fresh cached body is already at hand on the EDT
+            .thenApplyAsync(body -> {
+                if (body == null) {
+                    return new UpdateResult(false, null, null, null, null);
+                }
+                ReleaseInfo release;
+                try {
+                    release = ReleaseInfo.parse(new StringReader(body));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                String latestVersion = VersionUtils.parseVersionFromTag(release.tagName);
 
                 // Get download URL for appropriate platform
                 String downloadUrl = getDownloadUrl(release);
+                String checksumUrl = getChecksumUrl(release, downloadUrl);
+                String patchUrl = getPatchUrl(release, latestVersion);
 
                 boolean hasUpdate = VersionUtils.isNewerVersion(latestVersion, CURRENT_VERSION);
 
                 System.out.println("[AutoUpdater] Latest version: " + latestVersion);
                 System.out.println("[AutoUpdater] Has update: " + hasUpdate);
+                event.latestVersion = latestVersion;
+                event.hasUpdate = hasUpdate;
+
+                return new UpdateResult(hasUpdate, latestVersion, downloadUrl, release.htmlUrl, release.body,
+                    checksumUrl, patchUrl);
+            }, httpClient.executor())
+            .exceptionally(e -> {
+                System.err.println("[AutoUpdater] Failed to check for updates: " + e.getMessage());
+                return new UpdateResult(false, null, null, null, null);
+            })
+            .whenComplete((result, e) -> {
+                event.commit();
+                Metrics.UPDATE_CHECK.record(System.nanoTime() - start);
+            });
+    }
 
-                return new UpdateResult(hasUpdate, latestVersion, downloadUrl, releaseUrl, releaseNotes);
-            }
+    /**
+     * Latest release JSON, from the cache while it is fresh, otherwise with a
+     * conditional request
+     *
+     * The cache file is read on the update threads, so a check started while
+     * the window opens never touches the disk on the EDT.
+     *
+     * @return the release JSON, or null if there is none
+     */
+    private CompletableFuture<String> fetchReleaseJson(UpdateCheckEvent event) {
+        if (httpClient.isClosed()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.supplyAsync(() -> releaseCache.load(RELEASES_API), httpClient.executor())
+            .thenCompose(cached -> fetchReleaseJson(cached, event));
+    }
+
+    private CompletableFuture<String> fetchReleaseJson(ReleaseCache.Entry cached, UpdateCheckEvent event) {
+        if (cached != null && releaseCache.isFresh(cached)) {
+            System.out.println("[AutoUpdater] Using cached release info");
+            return CompletableFuture.completedFuture(cached.body);
+        }
 
-        } catch (Exception e) {
-            System.err.println("[AutoUpdater] Failed to check for updates: " + e.getMessage());
-            return new UpdateResult(false, null, null, null, null);
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(RELEASES_API))
+            .timeout(Duration.ofSeconds(5))
+            .header("Accept", "application/vnd.github+json");
+        if (cached != null) {
+            if (cached.etag != null) {
+                request.header("If-None-Match", cached.etag);
+            }
+            if (cached.lastModified != null) {
+                request.header("If-Modified-Since", cached.lastModified);
+            }
         }
+
+        return httpClient.send(request.build(), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8))
+            .thenApply(response -> {
+                int responseCode = response.statusCode();
+                event.status = responseCode;
+
+                if (responseCode == 304 && cached != null) {
+                    System.out.println("[AutoUpdater] Release info not modified");
+                    releaseCache.store(cached.revalidated());
+                    return cached.body;
+                }
+                if (responseCode != 200) {
+                    System.err.println("[AutoUpdater] GitHub API returned: " + responseCode);
+                    // e.g. rate limited: an older answer is better than none
+                    return cached != null ? cached.body : null;
+                }
+
+                String body = response.body();
+                event.bytes = body.length();
+                releaseCache.store(new ReleaseCache.Entry(RELEASES_API,
+                    response.headers().firstValue("ETag").orElse(null),
+                    response.headers().firstValue("Last-Modified").orElse(null),
+                    System.currentTimeMillis(), body));
+                return body;
+            });
     }
 
     /**
      * Get the appropriate download URL based on OS
      */
-    private String getDownloadUrl(JsonObject release) {
+    private String getDownloadUrl(ReleaseInfo release) {
         String os = System.getProperty("os.name").toLowerCase();
-        JsonArray assets = release.getAsJsonArray("assets");
 
-        for (JsonElement assetElem : assets) {
-            JsonObject asset = assetElem.getAsJsonObject();
-            String name = asset.get("name").getAsString().toLowerCase();
-            String downloadUrl = asset.get("browser_download_url").getAsString();
+        for (Map.Entry<String, String> asset : release.assets.entrySet()) {
+            String name = asset.getKey().toLowerCase();
 
             if (os.contains("win") && name.endsWith(".exe")) {
-                return downloadUrl;
+                return asset.getValue();
             } else if (os.contains("mac") && (name.endsWith(".pkg") || name.endsWith(".dmg"))) {
-                return downloadUrl;
+                return asset.getValue();
             }
         }
 
         return null;
     }
 
+    /**
+     * Find the delta patch from the running version, if running from a jar it can be applied to
+     */
+    private String getPatchUrl(ReleaseInfo release, String latestVersion) {
+        if (StagedUpdate.runningJar() == null) {
+            return null;
+        }
+        String patchName = JarPatch.assetName(CURRENT_VERSION, latestVersion);
+        for (Map.Entry<String, String> asset : release.assets.entrySet()) {
+            if (asset.getKey().equalsIgnoreCase(patchName)) {
+                return asset.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find the checksum asset for the installer: "&lt;installer&gt;.sha256" or a SHA256SUMS list
+     */
+    private String getChecksumUrl(ReleaseInfo release, String downloadUrl) {
+        if (downloadUrl == null) {
+            return null;
+        }
+        String installerName = downloadUrl.substring(downloadUrl.lastIndexOf('/') + 1).toLowerCase();
+        String sumsUrl = null;
+
+        for (Map.Entry<String, String> asset : release.assets.entrySet()) {
+            String name = asset.getKey().toLowerCase();
+
+            if (name.equals(installerName + ".sha256")) {
+                return asset.getValue();
+            } else if (name.equals("sha256sums") || name.equals("sha256sums.txt")) {
+                sumsUrl = asset.getValue();
+            }
+        }
+
+        return sumsUrl;
+    }
+
+    /**
+     * Fetch the published SHA-256 of the installer
+     *
+     * Accepts a bare digest or sha256sum output ("digest  name" per line).
+     *
+     * @return the hex digest, or null if no checksum is published
+     */
+    private CompletableFuture<String> fetchChecksum(UpdateResult result, String fileName) {
+        if (result.checksumUrl == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        HttpRequest request = HttpRequest.newBuilder(URI.create(result.checksumUrl))
+            .timeout(Duration.ofSeconds(5))
+            .build();
+
+        return httpClient.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.US_ASCII))
+            .thenApply(response -> {
+                if (response.statusCode() != 200) {
+                    throw new UncheckedIOException(new IOException("Checksum HTTP " + response.statusCode()));
+                }
+                for (String line : response.body().split("\\R")) {
+                    String[] fields = line.trim().split("\\s+\\*?", 2);
+                    if (fields[0].matches("[0-9a-fA-F]{64}")
+                            && (fields.length == 1 || fields[1].trim().equalsIgnoreCase(fileName))) {
+                        return fields[0];
+                    }
+                }
+                throw new UncheckedIOException(new IOException(
+                    "Checksum for " + fileName + " not found in " + result.checksumUrl));
+            });
+    }
+
     /**
      * Show update dialog to user
      */
-    private void showUpdateDialog(UpdateResult result, Runnable onComplete) {
+    public void showUpdateDialog(UpdateResult result, Runnable onComplete) {
         int choice = JOptionPane.showConfirmDialog(
             parentFrame,
             "Uma nova versão está disponível!\n\n" +
@@ -150,7 +293,9 @@ public class AutoUpdater {
         );
 
         if (choice == JOptionPane.YES_OPTION) {
-            if (result.downloadUrl != null) {
+            if (result.patchUrl != null) {
+                applyPatch(result, onComplete);
+            } else if (result.downloadUrl != null) {
                 downloadUpdate(result, onComplete);
             } else {
                 // Open release page in browser
@@ -172,58 +317,173 @@ public class AutoUpdater {
     }
 
     /**
-     * Download update file
+     * Update by patching the running jar, falling back to the full installer
+     *
+     * Only the patch is downloaded. The patched jar is staged and started on
+     * the next launch; if anything fails (download, a base jar that is not
+     * the released build, or a result whose SHA-256 does not match) the
+     * full installer is downloaded instead.
      */
-    private void downloadUpdate(UpdateResult result, Runnable onComplete) {
+    private void applyPatch(UpdateResult result, Runnable onComplete) {
         JProgressBar progressBar = new JProgressBar(0, 100);
         progressBar.setStringPainted(true);
+        progressBar.setIndeterminate(true);
 
         JDialog progressDialog = new JDialog(parentFrame, "Baixando atualização", true);
         progressDialog.setLayout(new BorderLayout(10, 10));
-        progressDialog.add(new JLabel("Baixando " + result.latestVersion + "..."), BorderLayout.NORTH);
+        progressDialog.add(new JLabel("Baixando " + result.latestVersion + " (atualização parcial)..."), BorderLayout.NORTH);
         progressDialog.add(progressBar, BorderLayout.CENTER);
         progressDialog.setSize(400, 100);
         progressDialog.setLocationRelativeTo(parentFrame);
 
-        SwingWorker<File, Integer> downloadWorker = new SwingWorker<>() {
-            @Override
-            protected File doInBackground() throws Exception {
-                URL url = new URL(result.downloadUrl);
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                long fileSize = conn.getContentLengthLong();
-
-                String fileName = Paths.get(new URI(result.downloadUrl).getPath()).getFileName().toString();
-                Path downloadPath = Paths.get(System.getProperty("java.io.tmpdir"), fileName);
-
-                try (InputStream in = conn.getInputStream();
-                     FileOutputStream out = new FileOutputStream(downloadPath.toFile())) {
-
-                    byte[] buffer = new byte[8192];
-                    long totalRead = 0;
-                    int bytesRead;
-
-                    while ((bytesRead = in.read(buffer)) != -1) {
-                        out.write(buffer, 0, bytesRead);
-                        totalRead += bytesRead;
-                        int progress = (int) ((totalRead * 100) / fileSize);
-                        publish(progress);
+        long start = System.nanoTime();
+        UpdateDownloadEvent event = new UpdateDownloadEvent();
+        event.begin();
+        event.url = result.patchUrl;
+
+        URI patchUri = URI.create(result.patchUrl);
+        Path patchPath = DOWNLOAD_DIR.resolve(Paths.get(patchUri.getPath()).getFileName().toString());
+        Path baseJar = StagedUpdate.runningJar();
+        Path stagedJar = StagedUpdate.jarFor(result.latestVersion);
+
+        ResumableDownload download = new ResumableDownload(httpClient, patchUri, patchPath);
+        CompletableFuture<Path> patched = download
+            .start(null, (bytes, total) -> {
+                event.expectedBytes = total;
+                event.bytes = bytes;
+                SwingUtilities.invokeLater(() -> showProgress(progressBar, bytes, total));
+            })
+            .thenApplyAsync(patch -> {
+                try (InputStream in = new BufferedInputStream(Files.newInputStream(patch))) {
+                    JarPatch.apply(baseJar, in, stagedJar);
+                    System.out.println("[AutoUpdater] Patched " + baseJar.getFileName() + " to " + stagedJar);
+                    return stagedJar;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    try {
+                        Files.deleteIfExists(patch);
+                    } catch (IOException e) {
+                        // Left for the next attempt to overwrite
                     }
                 }
+            }, httpClient.executor());
 
-                return downloadPath.toFile();
+        progressDialog.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        progressDialog.addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override
+            public void windowClosing(java.awt.event.WindowEvent e) {
+                download.cancel();
             }
+        });
 
-            @Override
-            protected void process(java.util.List<Integer> chunks) {
-                int latestProgress = chunks.get(chunks.size() - 1);
-                progressBar.setValue(latestProgress);
+        patched.whenComplete((jar, failure) -> {
+            Throwable cause = failure;
+            while (cause instanceof CompletionException || cause instanceof UncheckedIOException) {
+                cause = cause.getCause();
             }
+            Throwable error = cause;
+            event.succeeded = error == null;
+            event.commit();
+            Metrics.UPDATE_DOWNLOAD.record(System.nanoTime() - start);
+
+            SwingUtilities.invokeLater(() -> {
+                progressDialog.dispose();
+                if (error instanceof CancellationException) {
+                    onComplete.run();
+                } else if (error != null) {
+                    System.err.println("[AutoUpdater] Patch failed, downloading the full installer: " + error.getMessage());
+                    if (result.downloadUrl != null) {
+                        downloadUpdate(result, onComplete);
+                    } else {
+                        JOptionPane.showMessageDialog(parentFrame,
+                            "Erro ao aplicar atualização:\n" + error.getMessage() + "\n\n" +
+                            "Acesse manualmente: " + result.releaseUrl,
+                            "Erro",
+                            JOptionPane.ERROR_MESSAGE);
+                        onComplete.run();
+                    }
+                } else {
+                    JOptionPane.showMessageDialog(parentFrame,
+                        "Atualização baixada!\n\n" +
+                        "A versão " + result.latestVersion + " será usada na próxima vez que o aplicativo for aberto.",
+                        "Atualização Concluída",
+                        JOptionPane.INFORMATION_MESSAGE);
+                    onComplete.run();
+                }
+            });
+        });
+
+        progressDialog.setVisible(true);
+    }
+
+    /**
+     * Download update file
+     */
+    private void downloadUpdate(UpdateResult result, Runnable onComplete) {
+        JProgressBar progressBar = new JProgressBar(0, 100);
+        progressBar.setStringPainted(true);
+        progressBar.setIndeterminate(true);
 
+        JDialog progressDialog = new JDialog(parentFrame, "Baixando atualização", true);
+        progressDialog.setLayout(new BorderLayout(10, 10));
+        progressDialog.add(new JLabel("Baixando " + result.latestVersion + "..."), BorderLayout.NORTH);
+        progressDialog.add(progressBar, BorderLayout.CENTER);
+        progressDialog.setSize(400, 100);
+        progressDialog.setLocationRelativeTo(parentFrame);
+
+        long start = System.nanoTime();
+        UpdateDownloadEvent event = new UpdateDownloadEvent();
+        event.begin();
+        event.url = result.downloadUrl;
+
+        URI downloadUri = URI.create(result.downloadUrl);
+        String fileName = Paths.get(downloadUri.getPath()).getFileName().toString();
+        // Kept next to the release cache so a partial download resumes on the next run
+        Path downloadPath = DOWNLOAD_DIR.resolve(fileName);
+
+        ResumableDownload download = new ResumableDownload(httpClient, downloadUri, downloadPath);
+        CompletableFuture<Path> installerFuture = fetchChecksum(result, fileName)
+            .thenCompose(sha256 -> download.start(sha256, (bytes, total) -> {
+                event.expectedBytes = total;
+                event.bytes = bytes;
+                SwingUtilities.invokeLater(() -> showProgress(progressBar, bytes, total));
+            }));
+
+        // Closing the dialog abandons the download; the part file is kept for next time
+        progressDialog.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        progressDialog.addWindowListener(new java.awt.event.WindowAdapter() {
             @Override
-            protected void done() {
+            public void windowClosing(java.awt.event.WindowEvent e) {
+                download.cancel();
+            }
+        });
+
+        installerFuture.whenComplete((installer, failure) -> {
+            Throwable cause = failure;
+            while (cause instanceof CompletionException || cause instanceof UncheckedIOException) {
+                cause = cause.getCause();
+            }
+            Throwable error = cause;
+            event.succeeded = error == null;
+            event.commit();
+            Metrics.UPDATE_DOWNLOAD.record(System.nanoTime() - start);
+
+            SwingUtilities.invokeLater(() -> {
                 progressDialog.dispose();
+                if (error instanceof CancellationException) {
+                    onComplete.run();
+                    return;
+                }
+                if (error != null) {
+                    JOptionPane.showMessageDialog(parentFrame,
+                        "Erro ao baixar atualização:\n" + error.getMessage(),
+                        "Erro",
+                        JOptionPane.ERROR_MESSAGE);
+                    onComplete.run();
+                    return;
+                }
                 try {
-                    File installerFile = get();
                     JOptionPane.showMessageDialog(parentFrame,
                         "Download concluído!\n\n" +
                         "O instalador será aberto automaticamente.\n" +
@@ -232,20 +492,30 @@ public class AutoUpdater {
                         JOptionPane.INFORMATION_MESSAGE);
 
                     // Launch installer
-                    Desktop.getDesktop().open(installerFile);
+                    Desktop.getDesktop().open(installer.toFile());
                     onComplete.run();
 
                 } catch (Exception e) {
                     JOptionPane.showMessageDialog(parentFrame,
-                        "Erro ao baixar atualização:\n" + e.getMessage(),
+                        "Erro ao abrir o instalador:\n" + e.getMessage(),
                         "Erro",
                         JOptionPane.ERROR_MESSAGE);
                     onComplete.run();
                 }
-            }
-        };
+            });
+        });
 
-        downloadWorker.execute();
         progressDialog.setVisible(true);
     }
+
+    private static void showProgress(JProgressBar progressBar, long bytes, long total) {
+        if (total > 0) {
+            progressBar.setIndeterminate(false);
+            progressBar.setValue((int) (bytes * 100 / total));
+            progressBar.setString(String.format("%.1f de %.1f MB", bytes / 1e6, total / 1e6));
+        } else {
+            // Unknown length: show how much has arrived
+            progressBar.setString(String.format("%.1f MB", bytes / 1e6));
+        }
+    }
 }
@@ -0,0 +1,390 @@
+package com.budaassociacao.legendas;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Command-line converter from DOCX legendas to SRT, WebVTT or numbered text
+ *
+ * Inputs may be files, directories (searched recursively for .docx) or glob
+ * patterns such as {@code "cursos/modulo-*.docx"}. Files are converted in
+ * parallel on a fixed pool; each legenda is written to the output as soon
+ * as the parser emits it, so no document is held in memory. DOCX legendas
+ * have no timing, so each cue gets the same duration, back to back. With
+ * --out, the folders below a directory or glob given as input are kept, so
+ * "cursos/a/aula.docx" and "cursos/b/aula.docx" do not overwrite each other;
+ * outputs that would still collide are reported before anything is written.
+ *
+ * Runs without a display:
+ * {@code java -Djava.awt.headless=true -cp LegendasBUDA.jar com.budaassociacao.legendas.BatchConverter ...}
+ * or {@code LegendasApp --batch ...}.
+ */
+public final class BatchConverter {
+
+    private static final String USAGE = String.join("\n",
+        "Uso: BatchConverter [opções] <arquivo|pasta|glob>...",
+        "  --format srt|vtt|txt   formato de saída (padrão: srt)",
+        "  --out <pasta>          pasta de saída, mantendo as subpastas (padrão: ao lado de cada .docx)",
+        "  --threads <n>          arquivos convertidos em paralelo (padrão: núcleos)",
+        "  --duration <ms>        duração de cada legenda (padrão: 3000)",
+        "  --fail-fast            para no primeiro erro (padrão: continua)");
+
+    private static final int DEFAULT_DURATION_MILLIS = 3000;
+    private static final int WRITE_BUFFER_CHARS = 64 * 1024;
+
+    private final SubtitleFormat format;
+    private final Path outputDir;
+    private final int threads;
+    private final long durationMillis;
+    private final boolean failFast;
+
+    private final AtomicBoolean aborted = new AtomicBoolean();
+    private final AtomicInteger converted = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final LongAdder captions = new LongAdder();
+
+    BatchConverter(SubtitleFormat format, Path outputDir, int threads, long durationMillis, boolean failFast) {
+        this.format = format;
+        this.outputDir = outputDir;
+        this.threads = threads;
+        this.durationMillis = durationMillis;
+        this.failFast = failFast;
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        System.exit(run(args));
+    }
+
+    /**
+     * Parse the arguments and convert
+     *
+     * @return exit status: 0 if all files converted, 1 if any failed, 2 on bad usage
+     */
+    static int run(String[] args) {
+        SubtitleFormat format = SubtitleFormat.SRT;
+        Path outputDir = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long duration = DEFAULT_DURATION_MILLIS;
+        boolean failFast = false;
+        List<String> inputs = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--format":
+                        format = SubtitleFormat.fromName(value(args, ++i, arg));
+                        break;
+                    case "--out":
+                        outputDir = Paths.get(value(args, ++i, arg));
+                        break;
+                    case "--threads":
+                        threads = Math.max(1, Integer.parseInt(value(args, ++i, arg)));
+                        break;
+                    case "--duration":
+                        duration = Math.max(1, Long.parseLong(value(args, ++i, arg)));
+                        break;
+                    case "--fail-fast":
+                        failFast = true;
+                        break;
+                    case "-h":
+                    case "--help":
+                        System.out.println(USAGE);
+                        return 0;
+                    default:
+                        if (arg.startsWith("--")) {
+                            throw new IllegalArgumentException("Opção desconhecida: " + arg);
+                        }
+                        inputs.add(arg);
+                }
+            }
+            if (inputs.isEmpty()) {
+                throw new IllegalArgumentException("Nenhum arquivo informado");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("[BatchConverter] " + e.getMessage());
+            System.err.println(USAGE);
+            return 2;
+        }
+
+        BatchConverter converter = new BatchConverter(format, outputDir, threads, duration, failFast);
+        Map<Path, Path> outputs;
+        try {
+            Map<Path, Path> files = collectInputs(inputs);
+            if (files.isEmpty()) {
+                System.err.println("[BatchConverter] Nenhum arquivo .docx encontrado");
+                return 1;
+            }
+            outputs = converter.outputsFor(files);
+            if (outputDir != null) {
+                Files.createDirectories(outputDir);
+            }
+        } catch (IOException e) {
+            System.err.println("[BatchConverter] " + e.getMessage());
+            return 2;
+        }
+
+        return converter.convertAll(outputs) ? 0 : 1;
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Falta o valor de " + option);
+        }
+        return args[index];
+    }
+
+    /**
+     * Convert all files on the pool and print throughput
+     *
+     * @param outputs output file of each input, as given by {@link #outputsFor}
+     * @return true if every file was converted
+     */
+    boolean convertAll(Map<Path, Path> outputs) {
+        int poolSize = Math.min(threads, outputs.size());
+        System.out.println("[BatchConverter] " + outputs.size() + " arquivo(s), " + poolSize + " thread(s), formato "
+            + format.extension());
+
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(poolSize, r -> {
+            Thread thread = new Thread(r, "batch-convert");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> tasks = new ArrayList<>(outputs.size());
+            for (Map.Entry<Path, Path> file : outputs.entrySet()) {
+                tasks.add(pool.submit(() -> convertOne(file.getKey(), file.getValue())));
+            }
+            for (Future<?> task : tasks) {
+                try {
+                    task.get();
+                } catch (Exception e) {
+                    // convertOne reports its own failures
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        double seconds = Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+
+        long captionCount = captions.sum();
+        System.out.println(String.format(Locale.ROOT,
+            "[BatchConverter] %d convertido(s), %d com erro, %d legendas em %.2f s "
+                + "(%.1f arquivos/s, %.0f legendas/s, pico de heap %d MB)",
+            converted.get(), failed.get(), captionCount, seconds,
+            converted.get() / seconds, captionCount / seconds, peakHeapBytes() / (1024 * 1024)));
+
+        return failed.get() == 0 && converted.get() == outputs.size();
+    }
+
+    private void convertOne(Path input, Path output) {
+        if (aborted.get()) {
+            return;
+        }
+
+        Path temp = output.resolveSibling(output.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(output.getParent());
+            int count = convert(input.toFile(), temp);
+            Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            captions.add(count);
+            converted.incrementAndGet();
+            System.out.println("[BatchConverter] " + input + " -> " + output + " (" + count + " legendas)");
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            System.err.println("[BatchConverter] Falha em " + input + ": " + e.getMessage());
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // Best effort cleanup
+            }
+            if (failFast) {
+                aborted.set(true);
+            }
+        }
+    }
+
+    /**
+     * Stream the legendas of one document into an output file
+     *
+     * @return number of legendas written
+     */
+    int convert(File input, Path output) throws Exception {
+        LegendaParser parser = LegendaParser.create();
+        int[] count = {0};
+        try (Writer out = new BufferedWriter(
+                new OutputStreamWriter(Files.newOutputStream(output), StandardCharsets.UTF_8), WRITE_BUFFER_CHARS)) {
+            format.writeHeader(out);
+            try {
+                parser.parseLegendas(input, legenda -> {
+                    if (aborted.get()) {
+                        throw new CancellationRequest();
+                    }
+                    int number = ++count[0];
+                    long startMillis = (number - 1) * durationMillis;
+                    try {
+                        format.writeCue(out, number, startMillis, startMillis + durationMillis, legenda);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        return count[0];
+    }
+
+    /**
+     * Output file of every input, checked before any conversion starts
+     *
+     * @param files each input with its path relative to the directory or glob it was found under
+     * @throws IOException if two inputs would be written to the same file
+     */
+    Map<Path, Path> outputsFor(Map<Path, Path> files) throws IOException {
+        Map<Path, Path> outputs = new LinkedHashMap<>();
+        // Windows and macOS file systems ignore case
+        Map<String, Path> claimed = new HashMap<>();
+        for (Map.Entry<Path, Path> file : files.entrySet()) {
+            Path input = file.getKey();
+            Path output = outputFor(input, file.getValue());
+            Path other = claimed.putIfAbsent(output.toString().toLowerCase(Locale.ROOT), input);
+            if (other != null) {
+                throw new IOException("Dois arquivos seriam gravados em " + output + ": " + other + " e " + input
+                    + " (converta-os separadamente ou com --out diferentes)");
+            }
+            outputs.put(input, output);
+        }
+        return outputs;
+    }
+
+    private Path outputFor(Path input, Path relative) {
+        String name = input.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        Path dir = input.getParent();
+        if (outputDir != null) {
+            Path folder = relative.getParent();
+            dir = folder == null ? outputDir : outputDir.resolve(folder);
+        }
+        return dir.toAbsolutePath().normalize().resolve(base + "." + format.extension());
+    }
+
+    /**
+     * Expand files, directories and glob patterns into .docx files
+     *
+     * @return each file, absolute, with its path relative to the directory or glob base it was
+     *         found under (just its name when given directly), in the order given
+     */
+    static Map<Path, Path> collectInputs(List<String> inputs) throws IOException {
+        Map<Path, Path> files = new LinkedHashMap<>();
+
+        for (String input : inputs) {
+            int glob = firstGlobChar(input);
+            if (glob < 0) {
+                Path path = Paths.get(input);
+                if (Files.isDirectory(path)) {
+                    addMatching(path, any -> true, files);
+                } else if (Files.isRegularFile(path)) {
+                    files.putIfAbsent(path.toAbsolutePath().normalize(), path.getFileName());
+                } else {
+                    throw new IOException("Arquivo não encontrado: " + input);
+                }
+                continue;
+            }
+
+            // Walk from the directory before the first wildcard and match the rest of the pattern
+            int slash = Math.max(input.lastIndexOf('/', glob), input.lastIndexOf(File.separatorChar, glob));
+            Path base = Paths.get(slash < 0 ? "" : input.substring(0, slash + 1)).toAbsolutePath();
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + input.substring(slash + 1));
+            addMatching(base, path -> matcher.matches(base.relativize(path)), files);
+        }
+        return files;
+    }
+
+    /**
+     * Add the .docx files under a directory that the matcher accepts
+     *
+     * Only documents are taken, whatever the pattern says, so "cursos/*" does
+     * not pick up the .srt files of an earlier run.
+     */
+    private static void addMatching(Path dir, PathMatcher matcher, Map<Path, Path> files) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.filter(Files::isRegularFile)
+                .filter(BatchConverter::isDocument)
+                .filter(matcher::matches)
+                .sorted()
+                .forEach(path -> files.putIfAbsent(path.toAbsolutePath().normalize(), dir.relativize(path)));
+        }
+    }
+
+    private static boolean isDocument(Path path) {
+        String name = path.getFileName().toString();
+        // Word lock files ("~$nome.docx") are not documents; "AULA.DOCX" is one
+        return !name.startsWith("~$") && name.toLowerCase(Locale.ROOT).endsWith(".docx");
+    }
+
+    private static int firstGlobChar(String input) {
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '{') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Peak heap use over the run, summed over the heap memory pools
+     */
+    private static long peakHeapBytes() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    /**
+     * Thrown from the parser sink to stop a conversion after another file failed
+     */
+    private static final class CancellationRequest extends RuntimeException {
+        CancellationRequest() {
+            super("Cancelado após erro em outro arquivo", null, false, false);
+        }
+    }
+}
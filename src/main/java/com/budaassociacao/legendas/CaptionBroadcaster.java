@@ -0,0 +1,497 @@
+package com.budaassociacao.legendas;
+
+import com.budaassociacao.legendas.diagnostics.Metrics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends the legenda on screen to other screens on the local network
+ *
+ * A small HTTP server on one non-blocking NIO thread. {@code /} serves a
+ * page that shows the legenda full screen, for a projector, a phone or an
+ * OBS browser source ({@code /?fundo=transparente}); {@code /eventos} is
+ * the Server-Sent Events stream the page listens to. Each legenda is
+ * serialized once, into a direct buffer that every connection writes from
+ * through its own duplicate, so a change costs one encoding and one write
+ * per client. A slow client never has more than one event queued: while it
+ * is still receiving one, newer legendas replace each other and it gets
+ * only the latest when it catches up. A client that takes nothing for
+ * -Dlegendas.broadcast.stallSeconds (default 10) is disconnected; the page
+ * reconnects on its own. A failure with one client only drops that client;
+ * if the server itself fails, the stop callback given to start() runs.
+ */
+final class CaptionBroadcaster implements Closeable {
+
+    private static final long STALL_NANOS =
+        TimeUnit.SECONDS.toNanos(Long.getLong("legendas.broadcast.stallSeconds", 10));
+    private static final int MAX_CLIENTS = Integer.getInteger("legendas.broadcast.maxClients", 1000);
+
+    /** A comment line this often keeps idle connections from being dropped by the network */
+    private static final long HEARTBEAT_NANOS = TimeUnit.SECONDS.toNanos(15);
+    private static final long SWEEP_MILLIS = 1000;
+    private static final int MAX_REQUEST = 8192;
+
+    private static final ByteBuffer STREAM_HEADERS = ascii("HTTP/1.1 200 OK\r\n"
+        + "Content-Type: text/event-stream; charset=utf-8\r\n"
+        + "Cache-Control: no-cache\r\n"
+        + "Access-Control-Allow-Origin: *\r\n"
+        + "Connection: keep-alive\r\n\r\n"
+        + "retry: 1000\n\n");
+    private static final ByteBuffer HEARTBEAT = ascii(":\n\n");
+    private static final ByteBuffer NOT_FOUND = ascii("HTTP/1.1 404 Not Found\r\n"
+        + "Content-Length: 0\r\nConnection: close\r\n\r\n");
+    private static final ByteBuffer PAGE = page();
+
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final Thread thread;
+    private final Runnable onStopped;
+    private SelectionKey serverKey;
+    private final ByteBuffer discard = ByteBuffer.allocateDirect(1024);
+    // Event streams, in the broadcast thread only
+    private final List<Client> streams = new ArrayList<>();
+
+    private volatile Event latest;
+    private volatile int clientCount;
+    private volatile boolean closed;
+    private volatile boolean running = true;
+
+    /**
+     * A legenda as it goes on the wire, shared by all connections
+     */
+    private static final class Event {
+        final ByteBuffer bytes;
+        final long publishedNanos;
+
+        Event(ByteBuffer bytes, long publishedNanos) {
+            this.bytes = bytes;
+            this.publishedNanos = publishedNanos;
+        }
+    }
+
+    private static final class Client {
+        final SocketChannel channel;
+        SelectionKey key;
+        ByteBuffer request = ByteBuffer.allocate(1024);
+        boolean stream;
+        boolean closeWhenSent;
+
+        // What is being written, null when nothing is; sending is set when it is an event
+        ByteBuffer out;
+        Event sending;
+        Event sent;
+        long lastProgress;
+
+        Client(SocketChannel channel, long now) {
+            this.channel = channel;
+            this.lastProgress = now;
+        }
+    }
+
+    private CaptionBroadcaster(ServerSocketChannel server, Selector selector, Runnable onStopped) {
+        this.server = server;
+        this.selector = selector;
+        this.onStopped = onStopped;
+        thread = new Thread(this::run, "caption-broadcast");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Listen on a port of every network interface; 0 picks a free port
+     *
+     * @param onStopped called on the broadcast thread if the server fails and stops, not after close()
+     * @throws IOException if the port is in use or cannot be opened
+     */
+    static CaptionBroadcaster start(int port, Runnable onStopped) throws IOException {
+        Selector selector = Selector.open();
+        ServerSocketChannel server = ServerSocketChannel.open();
+        CaptionBroadcaster broadcaster = new CaptionBroadcaster(server, selector, onStopped);
+        try {
+            server.bind(new InetSocketAddress(port), 128);
+            server.configureBlocking(false);
+            broadcaster.serverKey = server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            server.close();
+            selector.close();
+            throw e;
+        }
+        broadcaster.thread.start();
+        System.out.println("[Broadcast] Listening on port " + broadcaster.port());
+        return broadcaster;
+    }
+
+    int port() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * Address other devices on the network open, for the status bar
+     */
+    String url() {
+        String host = "localhost";
+        try {
+            for (NetworkInterface network : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+                if (!network.isUp() || network.isLoopback() || network.isVirtual()) {
+                    continue;
+                }
+                for (InetAddress address : Collections.list(network.getInetAddresses())) {
+                    if (address instanceof Inet4Address && address.isSiteLocalAddress()) {
+                        host = address.getHostAddress();
+                    }
+                }
+            }
+        } catch (SocketException e) {
+            // Fall back to localhost
+        }
+        return "http://" + host + ":" + port() + "/";
+    }
+
+    /**
+     * False once the server has stopped, closed or failed
+     */
+    boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Connected event streams
+     */
+    int clients() {
+        return clientCount;
+    }
+
+    /**
+     * Send a legenda to every screen; returns at once, the writes happen on the broadcast thread
+     */
+    void publish(int index, CharSequence legenda) {
+        latest = new Event(encode(index, legenda), System.nanoTime());
+        selector.wakeup();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * One SSE event: the index as its id and one data line per line of the legenda
+     */
+    static ByteBuffer encode(int index, CharSequence legenda) {
+        StringBuilder event = new StringBuilder(legenda.length() + 40);
+        event.append("id: ").append(index).append("\nevent: legenda\ndata: ");
+        for (int i = 0; i < legenda.length(); i++) {
+            char c = legenda.charAt(i);
+            if (c == '\n') {
+                event.append("\ndata: ");
+            } else if (c != '\r') {
+                event.append(c);
+            }
+        }
+        event.append("\n\n");
+        byte[] bytes = event.toString().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        return buffer.asReadOnlyBuffer();
+    }
+
+    private void run() {
+        Event broadcast = null;
+        long nextSweep = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SWEEP_MILLIS);
+        try {
+            while (!closed) {
+                selector.select(SWEEP_MILLIS);
+                long now = System.nanoTime();
+                Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                while (selected.hasNext()) {
+                    SelectionKey key = selected.next();
+                    selected.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept(now);
+                        continue;
+                    }
+                    Client client = (Client) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            read(client, now);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            flush(client, now);
+                        }
+                    } catch (IOException | CancelledKeyException e) {
+                        disconnect(client);
+                    }
+                }
+
+                Event event = latest;
+                if (event != broadcast) {
+                    broadcast = event;
+                    // Clients still sending an older event pick this one up when they finish
+                    for (int i = streams.size() - 1; i >= 0; i--) {
+                        Client client = streams.get(i);
+                        if (client.out == null) {
+                            write(client, now);
+                        }
+                    }
+                }
+                if (now - nextSweep >= 0) {
+                    sweep(now);
+                    nextSweep = now + TimeUnit.MILLISECONDS.toNanos(SWEEP_MILLIS);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("[Broadcast] Stopped: " + e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key.channel());
+            }
+            closeQuietly(selector);
+            streams.clear();
+            clientCount = 0;
+            running = false;
+            System.out.println("[Broadcast] Closed");
+            if (!closed) {
+                onStopped.run();
+            }
+        }
+    }
+
+    private void accept(long now) {
+        while (true) {
+            SocketChannel channel;
+            try {
+                channel = server.accept();
+            } catch (IOException e) {
+                // E.g. out of file descriptors: stop accepting until the next sweep rather than spin
+                System.err.println("[Broadcast] Cannot accept a connection: " + e.getMessage());
+                serverKey.interestOps(0);
+                return;
+            }
+            if (channel == null) {
+                return;
+            }
+            if (selector.keys().size() > MAX_CLIENTS) {
+                closeQuietly(channel);
+                continue;
+            }
+            try {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                Client client = new Client(channel, now);
+                client.key = channel.register(selector, SelectionKey.OP_READ, client);
+            } catch (IOException e) {
+                // Reset by the client before it was set up
+                closeQuietly(channel);
+            }
+        }
+    }
+
+    private void read(Client client, long now) throws IOException {
+        if (client.request == null) {
+            // Nothing more is expected on a stream; reading only notices the close
+            discard.clear();
+            if (client.channel.read(discard) < 0) {
+                disconnect(client);
+            }
+            return;
+        }
+        if (client.channel.read(client.request) < 0) {
+            disconnect(client);
+            return;
+        }
+        int end = headerEnd(client.request);
+        if (end < 0) {
+            if (!client.request.hasRemaining()) {
+                if (client.request.capacity() >= MAX_REQUEST) {
+                    disconnect(client);
+                    return;
+                }
+                ByteBuffer larger = ByteBuffer.allocate(client.request.capacity() * 2);
+                client.request.flip();
+                client.request = larger.put(client.request);
+            }
+            return;
+        }
+
+        String path = path(client.request);
+        client.request = null;
+        if ("/eventos".equals(path)) {
+            client.stream = true;
+            streams.add(client);
+            clientCount = streams.size();
+            client.out = STREAM_HEADERS.duplicate();
+        } else {
+            client.closeWhenSent = true;
+            client.out = ("/".equals(path) || "/index.html".equals(path) ? PAGE : NOT_FOUND).duplicate();
+        }
+        flush(client, now);
+    }
+
+    /**
+     * Write what is pending, then the latest legenda if this client has not got it yet
+     */
+    private void write(Client client, long now) {
+        try {
+            flush(client, now);
+        } catch (IOException e) {
+            disconnect(client);
+        }
+    }
+
+    private void flush(Client client, long now) throws IOException {
+        while (true) {
+            if (client.out == null) {
+                Event event = latest;
+                if (client.closeWhenSent) {
+                    disconnect(client);
+                    return;
+                }
+                if (!client.stream || event == null || event == client.sent) {
+                    break;
+                }
+                client.out = event.bytes.duplicate();
+                client.sending = event;
+                client.sent = event;
+            }
+            if (client.channel.write(client.out) > 0) {
+                client.lastProgress = now;
+            }
+            if (client.out.hasRemaining()) {
+                // The socket buffer is full; wait until the client takes more
+                client.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+            if (client.sending != null) {
+                Metrics.BROADCAST.record(System.nanoTime() - client.sending.publishedNanos);
+                client.sending = null;
+            }
+            client.out = null;
+        }
+        client.key.interestOps(SelectionKey.OP_READ);
+    }
+
+    /**
+     * Disconnect stalled clients and keep idle streams alive
+     */
+    private void sweep(long now) {
+        serverKey.interestOps(SelectionKey.OP_ACCEPT);
+        for (SelectionKey key : new ArrayList<>(selector.keys())) {
+            if (!key.isValid() || !(key.attachment() instanceof Client)) {
+                continue;
+            }
+            Client client = (Client) key.attachment();
+            boolean waiting = client.out != null || client.request != null;
+            if (waiting && now - client.lastProgress > STALL_NANOS) {
+                System.out.println("[Broadcast] Disconnected a client stalled for "
+                    + TimeUnit.NANOSECONDS.toSeconds(now - client.lastProgress) + " s");
+                disconnect(client);
+            } else if (client.stream && client.out == null && now - client.lastProgress > HEARTBEAT_NANOS) {
+                client.out = HEARTBEAT.duplicate();
+                write(client, now);
+            }
+        }
+    }
+
+    private void disconnect(Client client) {
+        client.key.cancel();
+        closeQuietly(client.channel);
+        if (client.stream && streams.remove(client)) {
+            clientCount = streams.size();
+        }
+    }
+
+    /**
+     * Position after the blank line that ends the request headers, or -1
+     */
+    private static int headerEnd(ByteBuffer request) {
+        for (int i = 3; i < request.position(); i++) {
+            if (request.get(i) == '\n' && (request.get(i - 1) == '\n'
+                    || request.get(i - 1) == '\r' && request.get(i - 2) == '\n')) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Path of a GET request line, without the query; null for anything else
+     */
+    private static String path(ByteBuffer request) {
+        int end = 0;
+        while (end < request.position() && request.get(end) != '\r' && request.get(end) != '\n') {
+            end++;
+        }
+        String[] line = new String(request.array(), 0, end, StandardCharsets.ISO_8859_1).split(" ");
+        if (line.length < 2 || !"GET".equals(line[0])) {
+            return null;
+        }
+        int query = line[1].indexOf('?');
+        return query < 0 ? line[1] : line[1].substring(0, query);
+    }
+
+    private static ByteBuffer ascii(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        return buffer.asReadOnlyBuffer();
+    }
+
+    private static ByteBuffer page() {
+        try (InputStream in = CaptionBroadcaster.class.getResourceAsStream("/broadcast/legenda.html")) {
+            if (in == null) {
+                throw new IllegalStateException("broadcast/legenda.html missing from the jar");
+            }
+            byte[] html = in.readAllBytes();
+            ByteArrayOutputStream response = new ByteArrayOutputStream(html.length + 128);
+            response.write(("HTTP/1.1 200 OK\r\n"
+                + "Content-Type: text/html; charset=utf-8\r\n"
+                + "Content-Length: " + html.length + "\r\n"
+                + "Cache-Control: no-cache\r\n"
+                + "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            response.write(html);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(response.size());
+            buffer.put(response.toByteArray()).flip();
+            return buffer.asReadOnlyBuffer();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Already closed or reset by the client
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.budaassociacao.legendas;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * When each legenda of a document starts, for the automatic advance
+ *
+ * Start and end times are in nanoseconds from the start of the video, one
+ * pair per legenda in document order, kept in primitive arrays; starts
+ * never decrease, so the legenda at a time is a binary search. A timeline may cover
+ * only the first legendas of a document. Timelines are kept next to the
+ * document as an SRT file: {@code Vídeo.docx} uses {@code Vídeo.tempos.srt},
+ * which is what a recording saves, or else an imported {@code Vídeo.srt} or
+ * {@code Vídeo.vtt}, read by {@link SubtitleParser}. Only the times of
+ * those files are used; the legendas themselves still come from the
+ * document, unless the document is itself an SRT or WebVTT file.
+ */
+final class CaptionTimeline {
+
+    private static final String RECORDED_SUFFIX = ".tempos.srt";
+    private static final String[] IMPORTED_SUFFIXES = {".srt", ".vtt"};
+
+    /** How long the last legenda of a recording lasts */
+    private static final long LAST_CUE_NANOS = 3_000_000_000L;
+
+    private final long[] starts;
+    private final long[] ends;
+    private final int size;
+
+    /**
+     * @param starts start of each legenda; made non-decreasing here, in place
+     */
+    CaptionTimeline(long[] starts, long[] ends, int size) {
+        // Overlapping cues would go back in time; keep the order of the document
+        for (int i = 1; i < size; i++) {
+            starts[i] = Math.max(starts[i], starts[i - 1]);
+        }
+        this.starts = starts;
+        this.ends = ends;
+        this.size = size;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Start of a legenda in nanoseconds from the start of the video
+     */
+    long start(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Legenda " + index + " de " + size);
+        }
+        return starts[index];
+    }
+
+    /**
+     * End of a legenda in nanoseconds from the start of the video
+     */
+    long end(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Legenda " + index + " de " + size);
+        }
+        return ends[index];
+    }
+
+    /**
+     * Legenda on screen at a position: the last one started, or -1 before the first
+     */
+    int indexAt(long positionNanos) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] <= positionNanos) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low - 1;
+    }
+
+    /**
+     * Timeline file of a document, the recorded one first; null if there is none
+     */
+    static Path find(Path document) {
+        String name = document.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+
+        Path recorded = document.resolveSibling(base + RECORDED_SUFFIX);
+        if (Files.isRegularFile(recorded)) {
+            return recorded;
+        }
+        for (String suffix : IMPORTED_SUFFIXES) {
+            Path imported = document.resolveSibling(base + suffix);
+            if (Files.isRegularFile(imported)) {
+                return imported;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Where a recording of a document is saved
+     */
+    static Path recordingPath(Path document) {
+        String name = document.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return document.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + RECORDED_SUFFIX);
+    }
+
+    /**
+     * Read the cue times of an SRT or WebVTT file
+     *
+     * @throws IOException if the file cannot be read or a cue time is malformed
+     */
+    static CaptionTimeline read(Path file) throws IOException {
+        SubtitleParser parser = new SubtitleParser();
+        parser.parseLegendas(file.toFile(), legenda -> { }, percent -> { });
+        return parser.timeline();
+    }
+
+    /**
+     * Records a timeline while the operator advances the legendas by hand
+     *
+     * Time starts when the recording starts, at the legenda on screen.
+     * Going back and advancing again records the legendas after that point
+     * anew; legendas skipped over start together with the next one recorded.
+     */
+    static final class Recorder {
+        private final long origin = System.nanoTime();
+        private long[] starts = new long[256];
+        private int size;
+
+        Recorder(int firstIndex) {
+            mark(firstIndex);
+        }
+
+        /**
+         * The legenda at this index is now on screen
+         */
+        void mark(int index) {
+            long now = System.nanoTime() - origin;
+            if (index + 1 > starts.length) {
+                starts = Arrays.copyOf(starts, Math.max(starts.length * 2, index + 1));
+            }
+            // Skipped legendas, including those before the first one recorded
+            for (int i = size; i < index; i++) {
+                starts[i] = now;
+            }
+            starts[index] = now;
+            size = index + 1;
+        }
+
+        int size() {
+            return size;
+        }
+
+        CaptionTimeline finish() {
+            // Each legenda lasts until the next one
+            long[] ends = new long[size];
+            for (int i = 0; i < size; i++) {
+                ends[i] = i + 1 < size ? starts[i + 1] : starts[i] + LAST_CUE_NANOS;
+            }
+            return new CaptionTimeline(Arrays.copyOf(starts, size), ends, size);
+        }
+    }
+
+    /**
+     * Save as SRT with the legendas' text, so the file can also be uploaded
+     * to YouTube. Written to a temporary file first, so a failed save does
+     * not destroy an earlier recording.
+     */
+    void write(Path file, LegendaStore legendas) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer out = new BufferedWriter(
+                new OutputStreamWriter(Files.newOutputStream(temp), StandardCharsets.UTF_8))) {
+            SubtitleFormat.SRT.writeHeader(out);
+            for (int i = 0; i < size && i < legendas.size(); i++) {
+                SubtitleFormat.SRT.writeCue(out, i + 1, starts[i] / 1_000_000L, ends[i] / 1_000_000L, legendas.get(i));
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
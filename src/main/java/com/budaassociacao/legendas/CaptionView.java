@@ -0,0 +1,429 @@
+package com.budaassociacao.legendas;
+
+import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Insets;
+import java.awt.RenderingHints;
+import java.awt.font.FontRenderContext;
+import java.awt.font.LineBreakMeasurer;
+import java.awt.font.TextAttribute;
+import java.awt.font.TextLayout;
+import java.text.AttributedString;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Displays one legenda
+ *
+ * Replaces a JTextArea: the text is shaped once per legenda, font and width
+ * into wrapped {@link TextLayout} lines, which are kept in a small LRU
+ * cache. The preferred size comes from the cached layout, so showing a
+ * legenda only needs a repaint of this component unless its height changes.
+ *
+ * After each legenda is shown, the next and previous few are shaped on a
+ * background thread at the same width, so flipping to them is a cache hit.
+ * The look-ahead window is set with -Dlegendas.lookahead.next and
+ * -Dlegendas.lookahead.previous and is bounded by the cache size.
+ */
+class CaptionView extends JComponent {
+
+    private static final int CACHE_SIZE = 32;
+    private static final int MESSAGE_INDEX = -1;
+
+    private final int columns;
+    private final int minRows;
+    private final int lookAheadNext;
+    private final int lookAheadPrevious;
+    private final Insets insets = new Insets(0, 0, 0, 0);
+    private final Dimension preferredSize = new Dimension();
+
+    // LRU cache of shaped legendas, searched linearly; only touched on the EDT
+    private final Layout[] cache = new Layout[CACHE_SIZE];
+    private long useCounter;
+    private int generation;
+
+    // Look-ahead shaping; a new epoch abandons work queued for an older one
+    private final ExecutorService prefetcher = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "caption-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicInteger prefetchEpoch = new AtomicInteger();
+
+    private IntFunction<Font> fontChooser;
+    private IntConsumer[] paintListeners = new IntConsumer[0];
+    private Runnable rewrapListener;
+    private LegendaStore store = LegendaStore.EMPTY;
+    private String message = "";
+    private Layout current;
+
+    CaptionView(int columns, int minRows) {
+        this.columns = columns;
+        this.minRows = minRows;
+
+        // Keep the current legenda and its neighbours within the cache
+        int budget = CACHE_SIZE / 2;
+        this.lookAheadNext = Math.max(0, Math.min(Integer.getInteger("legendas.lookahead.next", 3), budget));
+        this.lookAheadPrevious = Math.max(0,
+            Math.min(Integer.getInteger("legendas.lookahead.previous", 1), budget - lookAheadNext));
+        setOpaque(true);
+    }
+
+    /**
+     * Set how the font for a legenda index is chosen, used for look-ahead
+     */
+    void setFontChooser(IntFunction<Font> fontChooser) {
+        this.fontChooser = fontChooser;
+    }
+
+    /**
+     * Be told the index painted after each paint, -1 for a message
+     */
+    void addPaintListener(IntConsumer listener) {
+        paintListeners = Arrays.copyOf(paintListeners, paintListeners.length + 1);
+        paintListeners[paintListeners.length - 1] = listener;
+    }
+
+    /**
+     * Be told when a resize wrapped the legenda on screen to a different height;
+     * the window should then be resized to the new preferred height
+     */
+    void setRewrapListener(Runnable listener) {
+        this.rewrapListener = listener;
+    }
+
+    /**
+     * Show a legenda from the store
+     *
+     * @return true if the preferred size changed and the window should be resized
+     */
+    boolean showCaption(LegendaStore store, int index) {
+        // Snapshots of a loading store share their legendas; only a new document clears the cache
+        this.store = store;
+        boolean sizeChanged = show(index, fontChooser.apply(index));
+        prefetchAround(index);
+        return sizeChanged;
+    }
+
+    /**
+     * Show a message that is not a legenda
+     *
+     * @return true if the preferred size changed
+     */
+    boolean showMessage(String text, Font font) {
+        if (!text.equals(message)) {
+            message = text;
+            evict(MESSAGE_INDEX);
+        }
+        return show(MESSAGE_INDEX, font);
+    }
+
+    /**
+     * Drop all shaped legendas, e.g. when another document is loaded
+     */
+    void clearCache() {
+        invalidateLayouts();
+        store = LegendaStore.EMPTY;
+    }
+
+    /**
+     * Switch to a new version of the same document, keeping the layouts of
+     * legendas that did not change under their new index
+     *
+     * @param oldToNew new index of each old legenda, or -1 if it changed or was removed
+     */
+    void remap(LegendaStore updated, IntUnaryOperator oldToNew) {
+        for (int i = 0; i < cache.length; i++) {
+            Layout layout = cache[i];
+            if (layout == null || layout.index == MESSAGE_INDEX) {
+                continue;
+            }
+            int index = oldToNew.applyAsInt(layout.index);
+            if (index < 0) {
+                cache[i] = null;
+            } else {
+                layout.index = index;
+            }
+        }
+        // Look-ahead queued for the old indexes would land on the wrong legendas
+        prefetchEpoch.incrementAndGet();
+        store = updated;
+    }
+
+    /**
+     * Drop shaped and pending layouts, e.g. when the font size changes
+     */
+    void invalidateLayouts() {
+        generation++;
+        prefetchEpoch.incrementAndGet();
+    }
+
+    private boolean show(int index, Font font) {
+        int width = wrapWidth(font);
+        Layout layout = lookup(index, font, width);
+        if (layout == null) {
+            layout = shapeAndCache(index, font, width);
+        }
+
+        boolean sizeChanged = current == null || current.font != font
+            || current.preferredHeight != layout.preferredHeight;
+        current = layout;
+
+        if (sizeChanged) {
+            updatePreferredSize();
+            revalidate();
+        }
+        repaint();
+        return sizeChanged;
+    }
+
+    /**
+     * The window was resized by the user: wrap the legenda on screen again at the new width
+     *
+     * Layouts are cached per width, so the ones at the old width simply stop
+     * matching; the neighbours are shaped again at the new width.
+     */
+    @Override
+    public void setBounds(int x, int y, int width, int height) {
+        int previousWidth = getWidth();
+        super.setBounds(x, y, width, height);
+        if (width == previousWidth || current == null) {
+            return;
+        }
+        int wrapWidth = wrapWidth(current.font);
+        if (wrapWidth == current.width) {
+            return;
+        }
+        Layout layout = lookup(current.index, current.font, wrapWidth);
+        if (layout == null) {
+            layout = shapeAndCache(current.index, current.font, wrapWidth);
+        }
+        boolean heightChanged = layout.preferredHeight != current.preferredHeight;
+        current = layout;
+        if (current.index != MESSAGE_INDEX) {
+            prefetchAround(current.index);
+        }
+        if (heightChanged) {
+            updatePreferredSize();
+            revalidate();
+            if (rewrapListener != null) {
+                // After the layout in progress, which called this
+                SwingUtilities.invokeLater(rewrapListener);
+            }
+        }
+        repaint();
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        if (isPreferredSizeSet() || current == null) {
+            return super.getPreferredSize();
+        }
+        return new Dimension(preferredSize);
+    }
+
+    private void updatePreferredSize() {
+        getInsets(insets);
+        FontMetrics metrics = getFontMetrics(current.font);
+        preferredSize.width = columns * metrics.charWidth('m') + insets.left + insets.right;
+        preferredSize.height = current.preferredHeight + insets.top + insets.bottom;
+    }
+
+    /**
+     * Width available for text: the current width once laid out,
+     * otherwise the width the given font asks for
+     */
+    private int wrapWidth(Font font) {
+        getInsets(insets);
+        int width = getWidth();
+        if (width <= 0) {
+            return columns * getFontMetrics(font).charWidth('m');
+        }
+        return Math.max(1, width - insets.left - insets.right);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Graphics2D g2 = (Graphics2D) g;
+        g2.setColor(getBackground());
+        g2.fillRect(0, 0, getWidth(), getHeight());
+
+        if (current == null) {
+            return;
+        }
+
+        g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g2.setColor(getForeground());
+        getInsets(insets);
+
+        float y = insets.top;
+        for (TextLayout line : current.lines) {
+            y += line.getAscent();
+            line.draw(g2, insets.left, y);
+            y += line.getDescent() + line.getLeading();
+        }
+
+        for (IntConsumer listener : paintListeners) {
+            listener.accept(current.index);
+        }
+    }
+
+    /**
+     * Queue shaping of the neighbours of a legenda that are not cached yet
+     */
+    private void prefetchAround(int index) {
+        int epoch = prefetchEpoch.incrementAndGet();
+        if (lookAheadNext + lookAheadPrevious == 0) {
+            return;
+        }
+
+        List<Layout> pending = new ArrayList<>();
+        for (int i = 1; i <= lookAheadNext + lookAheadPrevious; i++) {
+            // Next ones first, they are the likely direction
+            int neighbour = i <= lookAheadNext ? index + i : index - (i - lookAheadNext);
+            if (neighbour < 0 || neighbour >= store.size()) {
+                continue;
+            }
+            Font font = fontChooser.apply(neighbour);
+            int width = wrapWidth(font);
+            if (lookup(neighbour, font, width) == null) {
+                pending.add(new Layout(neighbour, font, width, generation, null, minHeight(font)));
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        LegendaStore source = store;
+        FontRenderContext frc = getFontMetrics(pending.get(0).font).getFontRenderContext();
+        prefetcher.execute(() -> {
+            for (Layout request : pending) {
+                if (prefetchEpoch.get() != epoch) {
+                    return;
+                }
+                Layout layout = shape(request.index, source.get(request.index), request.font, frc,
+                    request.width, request.generation, request.preferredHeight);
+                SwingUtilities.invokeLater(() -> {
+                    if (layout.generation == generation && store == source
+                            && lookup(layout.index, layout.font, layout.width) == null) {
+                        put(layout);
+                    }
+                });
+            }
+        });
+    }
+
+    private Layout lookup(int index, Font font, int width) {
+        for (Layout layout : cache) {
+            if (layout != null && layout.index == index && layout.font == font
+                    && layout.width == width && layout.generation == generation) {
+                layout.lastUse = ++useCounter;
+                return layout;
+            }
+        }
+        return null;
+    }
+
+    private void evict(int index) {
+        for (int i = 0; i < cache.length; i++) {
+            if (cache[i] != null && cache[i].index == index) {
+                cache[i] = null;
+            }
+        }
+    }
+
+    private Layout shapeAndCache(int index, Font font, int width) {
+        String text = index == MESSAGE_INDEX ? message : store.get(index);
+        Layout layout = shape(index, text, font, getFontMetrics(font).getFontRenderContext(),
+            width, generation, minHeight(font));
+        put(layout);
+        return layout;
+    }
+
+    private int minHeight(Font font) {
+        return minRows * getFontMetrics(font).getHeight();
+    }
+
+    /**
+     * Put a layout in the least recently used slot
+     */
+    private void put(Layout layout) {
+        int slot = 0;
+        for (int i = 0; i < cache.length; i++) {
+            if (cache[i] == null) {
+                slot = i;
+                break;
+            }
+            if (cache[i].lastUse < cache[slot].lastUse) {
+                slot = i;
+            }
+        }
+        layout.lastUse = ++useCounter;
+        cache[slot] = layout;
+    }
+
+    /**
+     * Shape a legenda into wrapped lines. Safe to call off the EDT.
+     */
+    private static Layout shape(int index, String text, Font font, FontRenderContext frc,
+                                int width, int generation, int minHeight) {
+        List<TextLayout> lines = new ArrayList<>();
+        float height = 0;
+        for (String paragraph : text.split("\n", -1)) {
+            if (paragraph.isEmpty()) {
+                // Blank line keeps the height of one row
+                TextLayout blank = new TextLayout(" ", font, frc);
+                lines.add(blank);
+                height += blank.getAscent() + blank.getDescent() + blank.getLeading();
+                continue;
+            }
+
+            AttributedString attributed = new AttributedString(paragraph);
+            attributed.addAttribute(TextAttribute.FONT, font);
+            LineBreakMeasurer measurer = new LineBreakMeasurer(attributed.getIterator(), frc);
+            while (measurer.getPosition() < paragraph.length()) {
+                TextLayout line = measurer.nextLayout(width);
+                lines.add(line);
+                height += line.getAscent() + line.getDescent() + line.getLeading();
+            }
+        }
+
+        return new Layout(index, font, width, generation,
+            lines.toArray(new TextLayout[0]), Math.max(minHeight, (int) Math.ceil(height)));
+    }
+
+    /**
+     * One legenda shaped at a given font and width
+     */
+    private static final class Layout {
+        // Moved by remap() when legendas before it are inserted or removed
+        int index;
+        final Font font;
+        final int width;
+        final int generation;
+        final TextLayout[] lines;
+        final int preferredHeight;
+        long lastUse;
+
+        Layout(int index, Font font, int width, int generation, TextLayout[] lines, int preferredHeight) {
+            this.index = index;
+            this.font = font;
+            this.width = width;
+            this.generation = generation;
+            this.lines = lines;
+            this.preferredHeight = preferredHeight;
+        }
+    }
+}
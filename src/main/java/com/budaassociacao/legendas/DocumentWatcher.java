@@ -0,0 +1,129 @@
+package com.budaassociacao.legendas;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tells when the open document was saved again
+ *
+ * Watches the document's folder with a {@link WatchService}, since editors
+ * often save by writing a temporary file and renaming it over the
+ * original. A save produces a burst of events, so the callback runs only
+ * once the file has been quiet for the debounce interval
+ * (-Dlegendas.reload.debounceMillis, default 750) and its size or
+ * modification time differs from the last version reported. The callback
+ * runs on the watcher thread.
+ */
+final class DocumentWatcher implements Closeable {
+
+    private static final long DEBOUNCE_NANOS =
+        TimeUnit.MILLISECONDS.toNanos(Long.getLong("legendas.reload.debounceMillis", 750));
+
+    private final Path file;
+    private final Runnable onChange;
+    private final WatchService service;
+    private final Thread thread;
+
+    private long lastSize;
+    private long lastModified;
+
+    private DocumentWatcher(Path file, Runnable onChange) throws IOException {
+        this.file = file;
+        this.onChange = onChange;
+        this.service = FileSystems.getDefault().newWatchService();
+        file.getParent().register(service, StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY);
+        remember();
+
+        thread = new Thread(this::run, "docx-watcher");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Start watching a file
+     *
+     * @param onChange called after each save, off the EDT
+     */
+    static DocumentWatcher watch(Path file, Runnable onChange) throws IOException {
+        DocumentWatcher watcher = new DocumentWatcher(file.toAbsolutePath(), onChange);
+        watcher.thread.start();
+        return watcher;
+    }
+
+    Path file() {
+        return file;
+    }
+
+    private void run() {
+        Path name = file.getFileName();
+        long due = 0;
+        try {
+            while (true) {
+                WatchKey key = due == 0 ? service.take()
+                    : service.poll(Math.max(0, due - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        // OVERFLOW has no name; a save may be among the lost events
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW || name.equals(event.context())) {
+                            due = System.nanoTime() + DEBOUNCE_NANOS;
+                        }
+                    }
+                    if (!key.reset()) {
+                        System.err.println("[DocumentWatcher] Folder no longer watchable: " + file.getParent());
+                        return;
+                    }
+                } else if (due != 0 && System.nanoTime() - due >= 0) {
+                    due = 0;
+                    if (changed()) {
+                        onChange.run();
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed
+        }
+    }
+
+    /**
+     * Whether the file differs from the last version reported; a file
+     * missing mid-save is not a change yet
+     */
+    private boolean changed() {
+        long size = lastSize;
+        long modified = lastModified;
+        if (!remember()) {
+            return false;
+        }
+        return size != lastSize || modified != lastModified;
+    }
+
+    private boolean remember() {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            lastSize = attributes.size();
+            lastModified = attributes.lastModifiedTime().toMillis();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            service.close();
+        } catch (IOException e) {
+            System.err.println("[DocumentWatcher] " + e.getMessage());
+        }
+    }
+}
@@ -1,60 +1,114 @@
 package com.budaassociacao.legendas;
 
+import com.budaassociacao.legendas.diagnostics.DocxOpenEvent;
+import com.budaassociacao.legendas.diagnostics.Metrics;
+import com.budaassociacao.legendas.diagnostics.PackageReadEvent;
+import com.budaassociacao.legendas.diagnostics.ParagraphWalkEvent;
 import org.apache.poi.xwpf.usermodel.XWPFDocument;
 import org.apache.poi.xwpf.usermodel.XWPFParagraph;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 
 /**
  * Parser for DOCX files to extract subtitles/captions
  * Subtitles are separated by blank lines
+ *
+ * Builds the full Apache POI document model. {@link StreamingDocxParser}
+ * is faster for large files; this parser remains as a fallback for
+ * documents the streaming parser cannot read.
  */
-public class DocxParser {
+public class DocxParser implements LegendaParser {
 
     /**
      * Extract legendas from a DOCX file
      * Legendas are separated by one or more blank lines
      *
      * @param file DOCX file to parse
-     * @return List of legendas (captions)
+     * @param sink receives legendas in document order
+     * @param progress receives the percentage of paragraphs processed
      * @throws Exception if parsing fails
      */
-    public List<String> extractLegendas(File file) throws Exception {
-        List<String> legendas = new ArrayList<>();
-        StringBuilder currentLegenda = new StringBuilder();
+    @Override
+    public void parseLegendas(File file, Consumer<CharSequence> sink, IntConsumer progress) throws Exception {
+        long start = System.nanoTime();
+        DocxOpenEvent open = new DocxOpenEvent();
+        open.begin();
+        open.file = file.getName();
+        open.parser = "poi";
+        open.bytes = file.length();
 
-        try (FileInputStream fis = new FileInputStream(file);
-             XWPFDocument document = new XWPFDocument(fis)) {
+        LegendaSplitter splitter = new LegendaSplitter(sink);
 
-            List<XWPFParagraph> paragraphs = document.getParagraphs();
+        try {
+            PackageReadEvent read = new PackageReadEvent();
+            read.begin();
+            try (FileInputStream fis = new FileInputStream(file);
+                 XWPFDocument document = new XWPFDocument(fis)) {
+                read.part = "word/document.xml";
+                read.compressedBytes = file.length();
+                read.commit();
 
-            for (XWPFParagraph paragraph : paragraphs) {
-                String text = paragraph.getText().trim();
+                ParagraphWalkEvent walk = new ParagraphWalkEvent();
+                walk.begin();
+                List<XWPFParagraph> paragraphs = document.getParagraphs();
+                int lastPercent = -1;
 
-                if (text.isEmpty()) {
-                    // Blank line - save current legenda if not empty
-                    if (currentLegenda.length() > 0) {
-                        legendas.add(currentLegenda.toString().trim());
-                        currentLegenda = new StringBuilder();
-                    }
-                } else {
-                    // Non-blank line - add to current legenda
-                    if (currentLegenda.length() > 0) {
-                        currentLegenda.append("\n");
+                for (int i = 0; i < paragraphs.size(); i++) {
+                    splitter.paragraph(paragraphs.get(i).getText());
+
+                    int percent = (int) ((i + 1) * 100L / paragraphs.size());
+                    if (percent != lastPercent) {
+                        lastPercent = percent;
+                        progress.accept(percent);
                     }
-                    currentLegenda.append(text);
                 }
-            }
 
-            // Add last legenda if not empty
-            if (currentLegenda.length() > 0) {
-                legendas.add(currentLegenda.toString().trim());
+                splitter.finish();
+                walk.paragraphs = splitter.paragraphs();
+                walk.legendas = splitter.legendas();
+                walk.chars = splitter.chars();
+                walk.commit();
             }
+            open.legendas = splitter.legendas();
+            open.succeeded = true;
+            Metrics.recordParse(file, "poi", splitter.paragraphs(), splitter.legendas(),
+                System.nanoTime() - start);
+        } finally {
+            open.commit();
+        }
+    }
+
+    @Override
+    public String cacheId() {
+        return "poi";
+    }
+
+    /**
+     * Write a small document with POI and read it back, which loads the
+     * package, XMLBeans schema and paragraph classes
+     */
+    @Override
+    public void warmUp() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (XWPFDocument document = new XWPFDocument()) {
+            document.createParagraph().createRun().setText("Primeira legenda");
+            document.createParagraph();
+            document.createParagraph().createRun().setText("Segunda legenda");
+            document.write(bytes);
         }
 
-        return legendas;
+        LegendaSplitter splitter = new LegendaSplitter(legenda -> { });
+        try (XWPFDocument document = new XWPFDocument(new ByteArrayInputStream(bytes.toByteArray()))) {
+            for (XWPFParagraph paragraph : document.getParagraphs()) {
+                splitter.paragraph(paragraph.getText());
+            }
+        }
+        splitter.finish();
     }
 }
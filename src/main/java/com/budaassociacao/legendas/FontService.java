@@ -0,0 +1,155 @@
+package com.budaassociacao.legendas;
+
+import java.awt.Font;
+import java.awt.GraphicsEnvironment;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Chooses and caches fonts for legendas
+ *
+ * The installed font families are probed once on a background thread.
+ * For each combination of scripts (see {@link LegendaStore#scripts}) the
+ * first candidate family that can display all of them, checked with
+ * {@link Font#canDisplayUpTo}, is remembered, and derived fonts are cached
+ * per size. Once warm, choosing a font for a legenda is two map lookups.
+ * The probe is shared by all instances and main starts it before the
+ * window is built. Only used on the Event Dispatch Thread.
+ */
+final class FontService {
+
+    // Families in order of preference for Unicode support
+    private static final String[] PREFERRED_FAMILIES = {
+        "Arial Unicode MS", "Noto Sans", "Microsoft YaHei"
+    };
+    private static final String[] TIBETAN_FAMILIES = {
+        "Microsoft Himalaya", "Noto Serif Tibetan", "Noto Sans Tibetan", "Jomolhari",
+        "Kailasa", "Tibetan Machine Uni", "DDC Uchen"
+    };
+    private static final String[] CJK_FAMILIES = {
+        "Microsoft YaHei", "PingFang SC", "Noto Sans CJK SC", "Source Han Sans SC",
+        "SimSun", "Heiti SC", "WenQuanYi Micro Hei"
+    };
+
+    private static final String LATIN_SAMPLE = "Ação";
+    private static final String TIBETAN_SAMPLE = "བོད་ཡིག";
+    private static final String CJK_SAMPLE = "中文字";
+
+    private static final int MAX_SIZE = 128;
+
+    // The logical font falls back to other installed fonts glyph by glyph
+    private static final Font DEFAULT_FONT = new Font(Font.SANS_SERIF, Font.PLAIN, 12);
+
+    private static CompletableFuture<List<Font>> probe;
+
+    private final CompletableFuture<List<Font>> candidates;
+    private final Map<Integer, Font> baseFontByScripts = new HashMap<>();
+    private final Map<Font, Font[]> sizedFonts = new HashMap<>();
+
+    FontService() {
+        candidates = startProbe();
+    }
+
+    /**
+     * Start probing the installed fonts, if not started yet
+     */
+    static synchronized CompletableFuture<List<Font>> startProbe() {
+        if (probe == null) {
+            probe = CompletableFuture.supplyAsync(FontService::probeCandidates)
+                .exceptionally(e -> {
+                    System.err.println("[FontService] Font probe failed: " + e.getMessage());
+                    return List.of();
+                });
+        }
+        return probe;
+    }
+
+    /**
+     * Font for a legenda using the given SCRIPT_* flags
+     */
+    Font fontFor(int scripts, int size) {
+        Font base = baseFontByScripts.get(scripts);
+        if (base == null) {
+            if (!candidates.isDone()) {
+                // Probe still running: use the logical font, which falls back per glyph
+                return sized(DEFAULT_FONT, size);
+            }
+            base = chooseBaseFont(scripts);
+            baseFontByScripts.put(scripts, base);
+        }
+        return sized(base, size);
+    }
+
+    /**
+     * Font for interface text that is not tied to a legenda
+     */
+    Font defaultFontWithSize(int size) {
+        return fontFor(LegendaStore.SCRIPT_LATIN, size);
+    }
+
+    private Font sized(Font base, int size) {
+        int index = Math.max(1, Math.min(size, MAX_SIZE));
+        Font[] bySize = sizedFonts.computeIfAbsent(base, f -> new Font[MAX_SIZE + 1]);
+        Font font = bySize[index];
+        if (font == null) {
+            font = base.deriveFont((float) index);
+            bySize[index] = font;
+        }
+        return font;
+    }
+
+    private Font chooseBaseFont(int scripts) {
+        List<String> samples = new ArrayList<>();
+        if ((scripts & LegendaStore.SCRIPT_LATIN) != 0) {
+            samples.add(LATIN_SAMPLE);
+        }
+        if ((scripts & LegendaStore.SCRIPT_TIBETAN) != 0) {
+            samples.add(TIBETAN_SAMPLE);
+        }
+        if ((scripts & LegendaStore.SCRIPT_CJK) != 0) {
+            samples.add(CJK_SAMPLE);
+        }
+
+        for (Font candidate : candidates.join()) {
+            boolean displaysAll = true;
+            for (String sample : samples) {
+                if (candidate.canDisplayUpTo(sample) != -1) {
+                    displaysAll = false;
+                    break;
+                }
+            }
+            if (displaysAll) {
+                return candidate;
+            }
+        }
+        return DEFAULT_FONT;
+    }
+
+    /**
+     * Installed candidate families, preferred ones first, then the ones
+     * specific to Tibetan and Chinese
+     */
+    private static List<Font> probeCandidates() {
+        Set<String> installed = new HashSet<>(Arrays.asList(
+            GraphicsEnvironment.getLocalGraphicsEnvironment().getAvailableFontFamilyNames()));
+
+        List<Font> fonts = new ArrayList<>();
+        Set<String> added = new LinkedHashSet<>();
+        for (String[] families : new String[][] {PREFERRED_FAMILIES, TIBETAN_FAMILIES, CJK_FAMILIES}) {
+            for (String family : families) {
+                if (installed.contains(family) && added.add(family)) {
+                    fonts.add(new Font(family, Font.PLAIN, 12));
+                }
+            }
+        }
+        System.out.println("[FontService] Candidate fonts: " + added);
+        return fonts;
+    }
+}
@@ -0,0 +1,361 @@
+package com.budaassociacao.legendas;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Persistent cache of parsed legendas
+ *
+ * Entries live under ~/.legendasbuda/cache, one file per document, named
+ * after the document path, size and modification time. An entry holds the
+ * {@link LegendaStore} arrays as they are in memory, so loading it is a
+ * single read with no per-legenda decoding, plus the cue times of SRT and
+ * WebVTT documents. Each entry stores
+ * a SHA-256 of the document content, so edits that keep the timestamp are
+ * detected too. The total size is capped and the least recently used
+ * entries are evicted first. Corrupt or outdated entries are treated as
+ * misses and removed, so callers always fall back to a full parse.
+ */
+public class LegendaCache {
+
+    private static final int MAGIC = 0x4C424341; // "LBCA"
+    private static final int FORMAT_VERSION = 5;
+
+    /**
+     * Bump when the rules shared by all parsers change (the splitting into
+     * legendas), so old entries are discarded; each parser's own rules are
+     * in its {@link LegendaParser#cacheId()}
+     */
+    private static final int PARSER_VERSION = 1;
+
+    private static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    private static final String ENTRY_SUFFIX = ".bin";
+    private static final int HASH_BUFFER_SIZE = 256 * 1024;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final Path directory;
+    private final long maxBytes;
+
+    public LegendaCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Open the cache in the user's home directory, or return null if it is
+     * disabled with -Dlegendas.cache=false
+     */
+    public static LegendaCache openDefault() {
+        if ("false".equalsIgnoreCase(System.getProperty("legendas.cache", "true"))) {
+            return null;
+        }
+        long maxBytes = Long.getLong("legendas.cache.maxBytes", DEFAULT_MAX_BYTES);
+        return new LegendaCache(Paths.get(System.getProperty("user.home"), ".legendasbuda", "cache"), maxBytes);
+    }
+
+    /**
+     * Identity of a document at the time it was opened, and of the parser reading it
+     */
+    public static final class Key {
+        final String path;
+        final String parser;
+        final long size;
+        final long lastModified;
+        final byte[] contentHash;
+
+        private Key(String path, String parser, long size, long lastModified, byte[] contentHash) {
+            this.path = path;
+            this.parser = parser;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.contentHash = contentHash;
+        }
+
+        /**
+         * The same document as read by another parser, e.g. the POI fallback after a failed streaming read
+         */
+        public Key withParser(LegendaParser other) {
+            return new Key(path, other.cacheId(), size, lastModified, contentHash);
+        }
+    }
+
+    /**
+     * What was read from a document
+     */
+    public static final class Entry {
+        final LegendaStore store;
+        /** Cue times when the document is itself an SRT or WebVTT file, else null */
+        final CaptionTimeline timeline;
+
+        Entry(LegendaStore store, CaptionTimeline timeline) {
+            this.store = store;
+            this.timeline = timeline;
+        }
+    }
+
+    /**
+     * Describe a document by path, size, modification time and content hash,
+     * as read by a parser
+     */
+    public Key keyFor(File file, LegendaParser parser) throws IOException {
+        Path path = file.toPath().toRealPath();
+        long size = Files.size(path);
+        long lastModified = Files.getLastModifiedTime(path).toMillis();
+        return new Key(path.toString(), parser.cacheId(), size, lastModified, hashContent(path));
+    }
+
+    /**
+     * Load cached legendas for a document
+     *
+     * @return the store and timeline, or null on a miss or an unreadable entry
+     */
+    public Entry load(Key key) {
+        Path entry = entryPath(key);
+        if (!Files.isRegularFile(entry)) {
+            return null;
+        }
+
+        try {
+            Entry cached = decode(Files.readAllBytes(entry), key);
+            if (cached == null) {
+                Files.deleteIfExists(entry);
+                return null;
+            }
+            // Mark as recently used
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            return cached;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("[LegendaCache] Discarding unreadable entry: " + e.getMessage());
+            try {
+                Files.deleteIfExists(entry);
+            } catch (IOException ignored) {
+                // Will be evicted later
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Store legendas for a document, evicting old entries if needed
+     *
+     * @param timeline cue times of an SRT or WebVTT document, or null
+     */
+    public void store(Key key, LegendaStore store, CaptionTimeline timeline) {
+        try {
+            Files.createDirectories(directory);
+            Path entry = entryPath(key);
+            Path temp = Files.createTempFile(directory, "entry", ".tmp");
+            try {
+                write(temp, key, store, timeline);
+                Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            evict();
+        } catch (IOException e) {
+            System.err.println("[LegendaCache] Could not store entry: " + e.getMessage());
+        }
+    }
+
+    private void write(Path target, Key key, LegendaStore store, CaptionTimeline timeline) throws IOException {
+        CRC32 crc = new CRC32();
+        try (OutputStream file = Files.newOutputStream(target);
+             DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new CheckedOutputStream(file, crc), WRITE_BUFFER_SIZE))) {
+
+            int count = store.size();
+            int[] offsets = store.offsets();
+            byte[] coders = store.coders();
+            byte[] scripts = store.scripts();
+            short[] lineCounts = store.lineCounts();
+            int[] maxLineLengths = store.maxLineLengths();
+
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(PARSER_VERSION);
+            out.writeUTF(key.path);
+            out.writeUTF(key.parser);
+            out.writeLong(key.size);
+            out.writeLong(key.lastModified);
+            out.write(key.contentHash);
+            out.writeInt(count);
+            for (int i = 0; i <= count; i++) {
+                out.writeInt(offsets[i]);
+            }
+            for (int i = 0; i < count; i++) {
+                out.writeByte(coders[i]);
+                out.writeByte(scripts[i]);
+                out.writeShort(lineCounts[i]);
+                out.writeInt(maxLineLengths[i]);
+            }
+            out.write(store.arena(), 0, offsets[count]);
+            out.writeInt(timeline == null ? -1 : timeline.size());
+            for (int i = 0; timeline != null && i < timeline.size(); i++) {
+                out.writeLong(timeline.start(i));
+                out.writeLong(timeline.end(i));
+            }
+
+            out.flush();
+            // The trailer itself is not part of the checksum
+            out.writeLong(crc.getValue());
+        }
+    }
+
+    /**
+     * @return the legendas, or null if the entry does not match the key
+     */
+    private Entry decode(byte[] data, Key key) {
+        if (data.length < Long.BYTES) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length - Long.BYTES);
+        if (crc.getValue() != buffer.getLong(data.length - Long.BYTES)) {
+            System.err.println("[LegendaCache] Checksum mismatch for " + key.path);
+            return null;
+        }
+
+        if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION || buffer.getInt() != PARSER_VERSION) {
+            return null;
+        }
+
+        int pathLength = buffer.getShort() & 0xFFFF;
+        buffer.position(buffer.position() + pathLength);
+        byte[] parser = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(parser);
+        if (!key.parser.equals(new String(parser, StandardCharsets.UTF_8))) {
+            return null;
+        }
+        if (buffer.getLong() != key.size || buffer.getLong() != key.lastModified) {
+            return null;
+        }
+        byte[] contentHash = new byte[key.contentHash.length];
+        buffer.get(contentHash);
+        if (!Arrays.equals(contentHash, key.contentHash)) {
+            return null;
+        }
+
+        int count = buffer.getInt();
+        int[] offsets = new int[count + 1];
+        buffer.asIntBuffer().get(offsets);
+        buffer.position(buffer.position() + offsets.length * Integer.BYTES);
+
+        byte[] coders = new byte[count];
+        byte[] scripts = new byte[count];
+        short[] lineCounts = new short[count];
+        int[] maxLineLengths = new int[count];
+        for (int i = 0; i < count; i++) {
+            coders[i] = buffer.get();
+            scripts[i] = buffer.get();
+            lineCounts[i] = buffer.getShort();
+            maxLineLengths[i] = buffer.getInt();
+        }
+
+        byte[] arena = new byte[offsets[count]];
+        buffer.get(arena);
+        LegendaStore store = new LegendaStore(arena, offsets, coders, lineCounts, maxLineLengths, scripts, count);
+
+        CaptionTimeline timeline = null;
+        int timed = buffer.getInt();
+        if (timed >= 0) {
+            long[] starts = new long[timed];
+            long[] ends = new long[timed];
+            for (int i = 0; i < timed; i++) {
+                starts[i] = buffer.getLong();
+                ends[i] = buffer.getLong();
+            }
+            timeline = new CaptionTimeline(starts, ends, timed);
+        }
+        return new Entry(store, timeline);
+    }
+
+    /**
+     * Delete least recently used entries until the cache fits its cap
+     */
+    private void evict() throws IOException {
+        List<Path> entries = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + ENTRY_SUFFIX)) {
+            for (Path entry : stream) {
+                entries.add(entry);
+                total += Files.size(entry);
+            }
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+
+        entries.sort((a, b) -> {
+            try {
+                return Files.getLastModifiedTime(a).compareTo(Files.getLastModifiedTime(b));
+            } catch (IOException e) {
+                return 0;
+            }
+        });
+        for (Path entry : entries) {
+            if (total <= maxBytes) {
+                break;
+            }
+            long size = Files.size(entry);
+            Files.deleteIfExists(entry);
+            total -= size;
+        }
+    }
+
+    private Path entryPath(Key key) {
+        String id = key.path + '|' + key.parser + '|' + key.size + '|' + key.lastModified;
+        return directory.resolve(toHex(sha256().digest(id.getBytes(StandardCharsets.UTF_8))) + ENTRY_SUFFIX);
+    }
+
+    private static byte[] hashContent(Path path) throws IOException {
+        MessageDigest digest = sha256();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(HASH_BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
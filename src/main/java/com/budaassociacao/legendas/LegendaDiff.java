@@ -0,0 +1,221 @@
+package com.budaassociacao.legendas;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Which legendas of a reloaded document are the same as before
+ *
+ * Legendas are compared by {@link LegendaStore#hash}. The common prefix and
+ * suffix are matched first; in between, legendas whose hash appears exactly
+ * once in each version are anchors, the longest run of anchors in the same
+ * order is kept (as in patience diff), and matches are extended from each
+ * anchor to equal neighbours. Everything left unmatched was edited,
+ * inserted or removed.
+ */
+final class LegendaDiff {
+
+    private final int[] oldToNew;
+    private final int newSize;
+    private final int changed;
+    private final int inserted;
+    private final int removed;
+
+    private LegendaDiff(int[] oldToNew, int newSize) {
+        this.oldToNew = oldToNew;
+        this.newSize = newSize;
+
+        // Between two matched legendas, old and new ones pair up as edits; the rest were inserted or removed
+        int changed = 0;
+        int inserted = 0;
+        int removed = 0;
+        int previousNew = -1;
+        int gapOld = 0;
+        for (int i = 0; i <= oldToNew.length; i++) {
+            int mapped = i < oldToNew.length ? oldToNew[i] : newSize;
+            if (mapped < 0) {
+                gapOld++;
+                continue;
+            }
+            int gapNew = mapped - previousNew - 1;
+            changed += Math.min(gapOld, gapNew);
+            inserted += Math.max(0, gapNew - gapOld);
+            removed += Math.max(0, gapOld - gapNew);
+            previousNew = mapped;
+            gapOld = 0;
+        }
+        this.changed = changed;
+        this.inserted = inserted;
+        this.removed = removed;
+    }
+
+    static LegendaDiff compute(LegendaStore before, LegendaStore after) {
+        long[] a = hashes(before);
+        long[] b = hashes(after);
+        int[] oldToNew = new int[a.length];
+        Arrays.fill(oldToNew, -1);
+
+        int prefix = 0;
+        while (prefix < a.length && prefix < b.length && a[prefix] == b[prefix]) {
+            oldToNew[prefix] = prefix;
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < a.length - prefix && suffix < b.length - prefix
+                && a[a.length - 1 - suffix] == b[b.length - 1 - suffix]) {
+            oldToNew[a.length - 1 - suffix] = b.length - 1 - suffix;
+            suffix++;
+        }
+
+        matchMiddle(a, prefix, a.length - suffix, b, prefix, b.length - suffix, oldToNew);
+        return new LegendaDiff(oldToNew, b.length);
+    }
+
+    private static long[] hashes(LegendaStore store) {
+        long[] hashes = new long[store.size()];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = store.hash(i);
+        }
+        return hashes;
+    }
+
+    /**
+     * Match a[aFrom, aTo) against b[bFrom, bTo) through unique anchors
+     */
+    private static void matchMiddle(long[] a, int aFrom, int aTo, long[] b, int bFrom, int bTo, int[] oldToNew) {
+        if (aFrom >= aTo || bFrom >= bTo) {
+            return;
+        }
+
+        // Hash -> position in b, or -2 if it occurs more than once
+        Map<Long, Integer> inB = new HashMap<>();
+        for (int j = bFrom; j < bTo; j++) {
+            inB.merge(b[j], j, (first, again) -> -2);
+        }
+        Map<Long, Integer> countInA = new HashMap<>();
+        for (int i = aFrom; i < aTo; i++) {
+            countInA.merge(a[i], 1, Integer::sum);
+        }
+
+        // Anchors in old order, with their position in the new version
+        int[] anchorOld = new int[aTo - aFrom];
+        int[] anchorNew = new int[aTo - aFrom];
+        int anchors = 0;
+        for (int i = aFrom; i < aTo; i++) {
+            Integer j = inB.get(a[i]);
+            if (j != null && j >= 0 && countInA.get(a[i]) == 1) {
+                anchorOld[anchors] = i;
+                anchorNew[anchors] = j;
+                anchors++;
+            }
+        }
+
+        // Longest increasing run of new positions (patience sorting)
+        int[] tails = new int[anchors];
+        int[] previous = new int[anchors];
+        int length = 0;
+        for (int k = 0; k < anchors; k++) {
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (anchorNew[tails[mid]] < anchorNew[k]) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            previous[k] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = k;
+            if (low == length) {
+                length++;
+            }
+        }
+        for (int k = length > 0 ? tails[length - 1] : -1; k >= 0; k = previous[k]) {
+            oldToNew[anchorOld[k]] = anchorNew[k];
+        }
+
+        // Grow each match over equal neighbours that are still unmatched
+        boolean[] usedNew = new boolean[bTo - bFrom];
+        for (int i = aFrom; i < aTo; i++) {
+            if (oldToNew[i] >= 0) {
+                usedNew[oldToNew[i] - bFrom] = true;
+            }
+        }
+        for (int i = aFrom; i < aTo; i++) {
+            if (oldToNew[i] < 0) {
+                continue;
+            }
+            for (int x = i + 1, y = oldToNew[i] + 1; x < aTo && y < bTo && oldToNew[x] < 0 && !usedNew[y - bFrom]
+                    && a[x] == b[y]; x++, y++) {
+                oldToNew[x] = y;
+                usedNew[y - bFrom] = true;
+            }
+        }
+        for (int i = aTo - 1; i >= aFrom; i--) {
+            if (oldToNew[i] < 0) {
+                continue;
+            }
+            for (int x = i - 1, y = oldToNew[i] - 1; x >= aFrom && y >= bFrom && oldToNew[x] < 0
+                    && !usedNew[y - bFrom] && a[x] == b[y]; x--, y--) {
+                oldToNew[x] = y;
+                usedNew[y - bFrom] = true;
+            }
+        }
+    }
+
+    /**
+     * New index of an old legenda, or -1 if it was edited or removed
+     */
+    int newIndex(int oldIndex) {
+        return oldIndex >= 0 && oldIndex < oldToNew.length ? oldToNew[oldIndex] : -1;
+    }
+
+    /**
+     * Where the viewer should be after the reload, given where it was
+     *
+     * An unchanged legenda keeps its place. If it was edited, the viewer
+     * stays the same distance after the closest unchanged legenda before
+     * it, without running past the next unchanged one.
+     */
+    int follow(int oldIndex) {
+        if (newSize == 0) {
+            return 0;
+        }
+        int mapped = newIndex(oldIndex);
+        if (mapped >= 0) {
+            return mapped;
+        }
+
+        int before = Math.min(oldIndex, oldToNew.length) - 1;
+        while (before >= 0 && oldToNew[before] < 0) {
+            before--;
+        }
+        int after = oldIndex + 1;
+        while (after < oldToNew.length && oldToNew[after] < 0) {
+            after++;
+        }
+        int base = before >= 0 ? oldToNew[before] : -1;
+        int limit = after < oldToNew.length ? oldToNew[after] : newSize;
+        int target = base + (oldIndex - before);
+        // A removed legenda with nothing in its place lands on the next one
+        return Math.max(0, Math.min(Math.min(target, Math.max(base + 1, limit - 1)), newSize - 1));
+    }
+
+    boolean isUnchanged() {
+        return changed == 0 && inserted == 0 && removed == 0;
+    }
+
+    int changed() {
+        return changed;
+    }
+
+    int inserted() {
+        return inserted;
+    }
+
+    int removed() {
+        return removed;
+    }
+}
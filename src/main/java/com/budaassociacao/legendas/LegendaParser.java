@@ -0,0 +1,96 @@
+package com.budaassociacao.legendas;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Common interface for parsers that extract legendas from a document.
+ * Legendas are separated by one or more blank paragraphs.
+ */
+public interface LegendaParser {
+
+    /**
+     * System property that selects the parser ("stax" or "poi").
+     */
+    String PARSER_PROPERTY = "legendas.parser";
+
+    /**
+     * Parse the file and hand each legenda to the sink as soon as it is complete.
+     * The text passed to the sink is only valid during the call; parsers
+     * reuse the same buffer for the next legenda.
+     *
+     * @param file document to parse
+     * @param sink receives legendas in document order
+     * @param progress receives the percentage read (0-100) whenever it changes
+     * @throws Exception if parsing fails
+     */
+    void parseLegendas(File file, Consumer<CharSequence> sink, IntConsumer progress) throws Exception;
+
+    /**
+     * Parse the file and hand each legenda to the sink as soon as it is complete
+     *
+     * @param file document to parse
+     * @param sink receives legendas in document order
+     * @throws Exception if parsing fails
+     */
+    default void parseLegendas(File file, Consumer<CharSequence> sink) throws Exception {
+        parseLegendas(file, sink, percent -> { });
+    }
+
+    /**
+     * Extract all legendas from a file into a list
+     *
+     * @param file document to parse
+     * @return List of legendas (captions)
+     * @throws Exception if parsing fails
+     */
+    default List<String> extractLegendas(File file) throws Exception {
+        List<String> legendas = new ArrayList<>();
+        parseLegendas(file, legenda -> legendas.add(legenda.toString()));
+        return legendas;
+    }
+
+    /**
+     * Extract all legendas from a file into a compact store
+     *
+     * @param file document to parse
+     * @return the legendas packed in a {@link LegendaStore}
+     * @throws Exception if parsing fails
+     */
+    default LegendaStore extractStore(File file) throws Exception {
+        LegendaStore.Builder builder = LegendaStore.builder();
+        parseLegendas(file, builder::append);
+        return builder.build();
+    }
+
+    /**
+     * Which parser, and which version of its rules, produced a cached entry;
+     * entries of another parser or version are misses
+     */
+    String cacheId();
+
+    /**
+     * Parse a tiny in-memory document, so the classes the parser needs are
+     * loaded and initialized before the first real file is opened.
+     * Nothing is recorded in the metrics.
+     *
+     * @throws Exception if parsing fails
+     */
+    default void warmUp() throws Exception {
+    }
+
+    /**
+     * Create the configured parser. The streaming parser is the default;
+     * -Dlegendas.parser=poi switches back to the Apache POI parser.
+     */
+    static LegendaParser create() {
+        String name = System.getProperty(PARSER_PROPERTY, "stax");
+        if ("poi".equalsIgnoreCase(name.trim())) {
+            return new DocxParser();
+        }
+        return new StreamingDocxParser();
+    }
+}
@@ -0,0 +1,76 @@
+package com.budaassociacao.legendas;
+
+import java.util.function.Consumer;
+
+/**
+ * Groups paragraphs into legendas.
+ * Paragraphs are trimmed; blank paragraphs close the current legenda and
+ * the remaining ones are joined with line breaks. The same buffer is handed
+ * to the sink for every legenda, so no String is created per legenda.
+ */
+final class LegendaSplitter {
+
+    private final Consumer<CharSequence> sink;
+    private final StringBuilder currentLegenda = new StringBuilder();
+    private int paragraphs;
+    private int legendas;
+    private long chars;
+
+    LegendaSplitter(Consumer<CharSequence> sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Add the text of one paragraph
+     */
+    void paragraph(CharSequence text) {
+        paragraphs++;
+        int start = 0;
+        int end = text.length();
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        if (start == end) {
+            // Blank line - save current legenda if not empty
+            flush();
+        } else {
+            // Non-blank line - add to current legenda
+            if (currentLegenda.length() > 0) {
+                currentLegenda.append('\n');
+            }
+            currentLegenda.append(text, start, end);
+        }
+    }
+
+    /**
+     * Emit the last legenda, if any
+     */
+    void finish() {
+        flush();
+    }
+
+    int paragraphs() {
+        return paragraphs;
+    }
+
+    int legendas() {
+        return legendas;
+    }
+
+    long chars() {
+        return chars;
+    }
+
+    private void flush() {
+        if (currentLegenda.length() > 0) {
+            legendas++;
+            chars += currentLegenda.length();
+            sink.accept(currentLegenda);
+            currentLegenda.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package com.budaassociacao.legendas;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Read-only, compact storage for a set of legendas
+ *
+ * All legenda text is packed into one contiguous byte array and indexed by
+ * a primitive offset array, instead of keeping one String per legenda.
+ * Like compact Strings, each legenda is stored as Latin-1 when possible
+ * (Portuguese) and as UTF-16 otherwise (Tibetan, Chinese). Line count,
+ * longest line length and the scripts used are computed once when a
+ * legenda is added. Text is only materialized as a String by {@link #get},
+ * which the viewer calls for the legenda on screen.
+ */
+public final class LegendaStore {
+
+    public static final LegendaStore EMPTY =
+        new LegendaStore(new byte[0], new int[1], new byte[0], new short[0], new int[0], new byte[0], 0);
+
+    /** Script flags returned by {@link #scripts(int)} */
+    public static final int SCRIPT_LATIN = 1;
+    public static final int SCRIPT_TIBETAN = 2;
+    public static final int SCRIPT_CJK = 4;
+    public static final int SCRIPT_OTHER = 8;
+
+    static final byte LATIN1 = 0;
+    static final byte UTF16 = 1;
+
+    private final byte[] arena;
+    private final int[] offsets;
+    private final byte[] coders;
+    private final short[] lineCounts;
+    private final int[] maxLineLengths;
+    private final byte[] scripts;
+    private final int count;
+
+    LegendaStore(byte[] arena, int[] offsets, byte[] coders, short[] lineCounts, int[] maxLineLengths,
+                 byte[] scripts, int count) {
+        this.arena = arena;
+        this.offsets = offsets;
+        this.coders = coders;
+        this.lineCounts = lineCounts;
+        this.maxLineLengths = maxLineLengths;
+        this.scripts = scripts;
+        this.count = count;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Materialize the text of one legenda
+     */
+    public String get(int index) {
+        checkIndex(index);
+        int offset = offsets[index];
+        int length = offsets[index + 1] - offset;
+        return new String(arena, offset, length,
+            coders[index] == LATIN1 ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_16BE);
+    }
+
+    /**
+     * Length in chars of a legenda, without materializing it
+     */
+    public int length(int index) {
+        checkIndex(index);
+        int bytes = offsets[index + 1] - offsets[index];
+        return coders[index] == LATIN1 ? bytes : bytes / 2;
+    }
+
+    /**
+     * Number of lines in a legenda
+     */
+    public int lineCount(int index) {
+        checkIndex(index);
+        return lineCounts[index];
+    }
+
+    /**
+     * Length in chars of the longest line of a legenda
+     */
+    public int maxLineLength(int index) {
+        checkIndex(index);
+        return maxLineLengths[index];
+    }
+
+    /**
+     * Scripts used by a legenda, as SCRIPT_* flags
+     */
+    public int scripts(int index) {
+        checkIndex(index);
+        return scripts[index];
+    }
+
+    /**
+     * 64-bit FNV-1a hash of a legenda's text, to tell edited legendas apart without materializing them
+     */
+    public long hash(int index) {
+        checkIndex(index);
+        long hash = 0xcbf29ce484222325L ^ coders[index];
+        for (int i = offsets[index]; i < offsets[index + 1]; i++) {
+            hash = (hash ^ (arena[i] & 0xFF)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Whether a legenda contains the text, compared in place without materializing it
+     */
+    public boolean contains(int index, CharSequence text) {
+        checkIndex(index);
+        int start = offsets[index];
+        boolean latin1 = coders[index] == LATIN1;
+        int length = latin1 ? offsets[index + 1] - start : (offsets[index + 1] - start) / 2;
+        int last = length - text.length();
+
+        for (int from = 0; from <= last; from++) {
+            int i = 0;
+            while (i < text.length() && charAt(start, latin1, from + i) == text.charAt(i)) {
+                i++;
+            }
+            if (i == text.length()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private char charAt(int start, boolean latin1, int i) {
+        if (latin1) {
+            return (char) (arena[start + i] & 0xFF);
+        }
+        int position = start + i * 2;
+        return (char) ((arena[position] & 0xFF) << 8 | arena[position + 1] & 0xFF);
+    }
+
+    /**
+     * Size in bytes of the packed text
+     */
+    public int textBytes() {
+        return offsets[count];
+    }
+
+    /**
+     * Approximate heap used by the store, arrays included
+     */
+    public long retainedBytes() {
+        return 64 + 16L * 6 + arena.length + offsets.length * 4L + coders.length + lineCounts.length * 2L
+            + maxLineLengths.length * 4L + scripts.length;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Legenda " + index + " de " + count);
+        }
+    }
+
+    // Raw access for LegendaCache
+
+    byte[] arena() {
+        return arena;
+    }
+
+    int[] offsets() {
+        return offsets;
+    }
+
+    byte[] coders() {
+        return coders;
+    }
+
+    short[] lineCounts() {
+        return lineCounts;
+    }
+
+    int[] maxLineLengths() {
+        return maxLineLengths;
+    }
+
+    byte[] scripts() {
+        return scripts;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Appends legendas into growing arrays
+     *
+     * {@link #snapshot()} shares the arrays with the builder: entries already
+     * added are never written again, so a snapshot stays valid while the
+     * builder keeps appending on another thread.
+     */
+    public static final class Builder {
+        private byte[] arena = new byte[16 * 1024];
+        private int[] offsets = new int[257];
+        private byte[] coders = new byte[256];
+        private short[] lineCounts = new short[256];
+        private int[] maxLineLengths = new int[256];
+        private byte[] scripts = new byte[256];
+        private int count;
+
+        /**
+         * Add a legenda. The text is copied, so a reused buffer may be passed.
+         */
+        public Builder append(CharSequence text) {
+            if (count == lineCounts.length) {
+                int capacity = count * 2;
+                offsets = Arrays.copyOf(offsets, capacity + 1);
+                coders = Arrays.copyOf(coders, capacity);
+                lineCounts = Arrays.copyOf(lineCounts, capacity);
+                maxLineLengths = Arrays.copyOf(maxLineLengths, capacity);
+                scripts = Arrays.copyOf(scripts, capacity);
+            }
+
+            int length = text.length();
+            byte coder = LATIN1;
+            int lines = 1;
+            int lineLength = 0;
+            int maxLineLength = 0;
+            int scriptFlags = 0;
+
+            for (int i = 0; i < length; i++) {
+                char c = text.charAt(i);
+                scriptFlags |= scriptOf(c);
+                if (c == '\n') {
+                    lines++;
+                    maxLineLength = Math.max(maxLineLength, lineLength);
+                    lineLength = 0;
+                } else {
+                    lineLength++;
+                }
+                if (c > 0xFF) {
+                    coder = UTF16;
+                }
+            }
+
+            int position = offsets[count];
+            int bytes = coder == LATIN1 ? length : length * 2;
+            if (arena.length - position < bytes) {
+                arena = Arrays.copyOf(arena, Math.max(arena.length * 2, position + bytes));
+            }
+
+            if (coder == LATIN1) {
+                for (int i = 0; i < length; i++) {
+                    arena[position++] = (byte) text.charAt(i);
+                }
+            } else {
+                for (int i = 0; i < length; i++) {
+                    char c = text.charAt(i);
+                    arena[position++] = (byte) (c >> 8);
+                    arena[position++] = (byte) c;
+                }
+            }
+
+            coders[count] = coder;
+            lineCounts[count] = (short) Math.min(lines, Short.MAX_VALUE);
+            maxLineLengths[count] = Math.max(maxLineLength, lineLength);
+            scripts[count] = (byte) scriptFlags;
+            offsets[count + 1] = position;
+            count++;
+            return this;
+        }
+
+        public int size() {
+            return count;
+        }
+
+        /**
+         * View of the legendas added so far, sharing the builder's arrays
+         */
+        public LegendaStore snapshot() {
+            return new LegendaStore(arena, offsets, coders, lineCounts, maxLineLengths, scripts, count);
+        }
+
+        /**
+         * Final store with arrays trimmed to size
+         */
+        public LegendaStore build() {
+            return new LegendaStore(
+                Arrays.copyOf(arena, offsets[count]),
+                Arrays.copyOf(offsets, count + 1),
+                Arrays.copyOf(coders, count),
+                Arrays.copyOf(lineCounts, count),
+                Arrays.copyOf(maxLineLengths, count),
+                Arrays.copyOf(scripts, count),
+                count);
+        }
+
+        private static int scriptOf(char c) {
+            if (c <= ' ' || Character.isSpaceChar(c)) {
+                return 0;
+            }
+            if (c < 0x250) {
+                return SCRIPT_LATIN;
+            }
+            if (c >= 0x0F00 && c <= 0x0FFF) {
+                return SCRIPT_TIBETAN;
+            }
+            if ((c >= 0x2E80 && c <= 0x9FFF) || (c >= 0xF900 && c <= 0xFAFF) || (c >= 0xFF00 && c <= 0xFFEF)) {
+                return SCRIPT_CJK;
+            }
+            if (Character.isSurrogate(c)) {
+                // Supplementary ideographs and emoji; treat as CJK for font selection
+                return Character.isHighSurrogate(c) ? SCRIPT_CJK : 0;
+            }
+            return SCRIPT_OTHER;
+        }
+    }
+}
@@ -1,13 +1,29 @@
 package com.budaassociacao.legendas;
 
+import com.budaassociacao.legendas.diagnostics.CaptionDisplayEvent;
+import com.budaassociacao.legendas.diagnostics.DiagnosticsDialog;
+import com.budaassociacao.legendas.diagnostics.FlightRecording;
+import com.budaassociacao.legendas.diagnostics.FontChangeEvent;
+import com.budaassociacao.legendas.diagnostics.Metrics;
+import com.budaassociacao.legendas.diagnostics.WindowResizeEvent;
+import com.budaassociacao.legendas.update.StagedUpdate;
+import com.budaassociacao.legendas.update.UpdateResult;
+import com.budaassociacao.legendas.update.VersionUtils;
+
 import javax.swing.*;
 import javax.swing.border.*;
+import javax.swing.text.JTextComponent;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.File;
-import java.net.URL;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * LegendasBUDA - Visualizador de legendas para vídeos do YouTube
@@ -17,19 +33,55 @@ import java.util.List;
  */
 public class LegendasApp extends JFrame {
 
-    private JTextArea legendaArea;
+    private CaptionView legendaView;
     private JButton uploadButton;
     private JButton previousButton;
     private JButton nextButton;
     private JCheckBox alwaysOnTopCheckbox;
     private AutoUpdater autoUpdater;
     private JComboBox<Integer> fontSizeCombo;
-
-    private List<String> legendas = new ArrayList<>();
+    private JLabel statusLabel;
+    private JButton updateNoticeButton;
+    private SearchBox searchBox;
+    private LegendaLoader loadWorker;
+    private DocumentWatcher watcher;
+    private JButton autoButton;
+    private JComboBox<String> speedCombo;
+    private AutoAdvance autoAdvance;
+    private CaptionTimeline timeline;
+    private CaptionTimeline.Recorder recorder;
+    private File currentFile;
+    private JComboBox<SessionLibrary.Document> sessionCombo;
+    private boolean updatingSessionList;
+    private CaptionBroadcaster broadcaster;
+    private final SessionLibrary library = new SessionLibrary();
+    private final LegendaCache legendaCache = LegendaCache.openDefault();
+    private final FontService fontService = new FontService();
+
+    private LegendaStore legendas = LegendaStore.EMPTY;
     private int currentIndex = 0;
     private int currentFontSize = 16;
 
+    // Navigation waiting for the next frame: where to go and the presses that asked for it
+    private final long frameNanos = frameNanos();
+    private Timer frameTimer;
+    private boolean renderScheduled;
+    private int targetIndex;
+    private long lastRenderNanos;
+    private final long[] queuedInputs = new long[16];
+    private int queuedInputCount;
+    private long releaseNanos;
+
+    // Presses shown by the last display, and the display waiting to be painted
+    private final long[] pendingInputs = new long[16];
+    private int pendingInputCount;
+    private int pendingIndex = -1;
+    private CaptionDisplayEvent pendingDisplay;
+    private DiagnosticsDialog diagnosticsDialog;
+
     private static final Integer[] FONT_SIZES = {12, 14, 16, 18, 20, 24, 28, 32, 36, 40, 48};
+    private static final String[] SPEED_LABELS = {"0,5x", "0,75x", "0,9x", "1x", "1,1x", "1,25x", "1,5x", "2x"};
+    private static final double[] SPEEDS = {0.5, 0.75, 0.9, 1.0, 1.1, 1.25, 1.5, 2.0};
     private static final int DEFAULT_FONT_SIZE = 16;
 
     private static final Color MAIN_BLUE = new Color(0x88A9CC);
@@ -39,6 +91,24 @@ public class LegendasApp extends JFrame {
     private static final Color BUTTON_GREEN = new Color(0x4CAF50);
 
     public static void main(String[] args) {
+        Startup.mainEntered();
+        boolean batch = args.length > 0 && "--batch".equals(args[0]);
+        if (!batch && !Startup.isTraining() && StagedUpdate.relaunchIfNewer(VersionUtils.getCurrentVersion(), LegendasApp.class.getName(), args)) {
+            // A delta update newer than the installed jar is running instead
+            return;
+        }
+
+        FlightRecording.startIfEnabled();
+
+        if (batch) {
+            // Headless conversion, no window
+            System.exit(BatchConverter.run(java.util.Arrays.copyOfRange(args, 1, args.length)));
+        }
+
+        // Decode the icon and probe the fonts while the window is built
+        Startup.icons();
+        FontService.startProbe();
+
         SwingUtilities.invokeLater(() -> {
             // Remove default UI styling for custom appearance
             try {
@@ -53,6 +123,12 @@ public class LegendasApp extends JFrame {
 
             LegendasApp app = new LegendasApp();
             app.setVisible(true);
+
+            // POI/XML classes load in the background instead of on the first open
+            Startup.warmUpParser();
+            if (Startup.isTraining()) {
+                Startup.startTraining(app);
+            }
         });
     }
 
@@ -64,42 +140,57 @@ public class LegendasApp extends JFrame {
         setLocationRelativeTo(null);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
-        // Check for updates on startup
+        // Check for updates in the background; the app is usable right away
         autoUpdater = new AutoUpdater(this);
-        checkForUpdatesBeforeStart();
+        if (!Startup.isTraining()) {
+            autoUpdater.checkForUpdatesInBackground(this::showUpdateNotice);
+        }
+        if (Boolean.getBoolean("legendas.broadcast")) {
+            toggleBroadcast();
+        }
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                autoUpdater.shutdown();
+                autoAdvance.shutdown();
+                stopWatching();
+                if (broadcaster != null) {
+                    broadcaster.close();
+                }
+            }
+        });
     }
 
-    private void checkForUpdatesBeforeStart() {
-        uploadButton.setEnabled(false);
-        uploadButton.setText("Verificando atualizações...");
-
-        autoUpdater.checkForUpdatesBlocking(() -> {
-            uploadButton.setEnabled(true);
-            uploadButton.setText("Carregar Legendas (.docx)");
+    /**
+     * Non-modal notice of a new version; the update dialog opens only on click
+     */
+    private void showUpdateNotice(UpdateResult result) {
+        updateNoticeButton.setText("Nova versão " + result.latestVersion + " disponível");
+        for (ActionListener listener : updateNoticeButton.getActionListeners()) {
+            updateNoticeButton.removeActionListener(listener);
+        }
+        updateNoticeButton.addActionListener(e -> {
+            updateNoticeButton.setVisible(false);
+            autoUpdater.showUpdateDialog(result, () -> legendaView.requestFocusInWindow());
         });
+        updateNoticeButton.setVisible(true);
     }
 
     private static String getApplicationTitle() {
-        try {
-            java.util.Properties props = new java.util.Properties();
-            props.load(LegendasApp.class.getResourceAsStream("/version.properties"));
-            String version = props.getProperty("application.version", "1.0.0");
-            return "LegendasBUDA v" + version;
-        } catch (Exception e) {
-            return "LegendasBUDA v1.0.0";
-        }
+        return "LegendasBUDA v" + VersionUtils.getCurrentVersion();
     }
 
+    /**
+     * Set the window icons once decoded; the window does not wait for them
+     */
     private void loadWindowIcon() {
-        try {
-            URL iconUrl = getClass().getResource("/icons/BUDA.png");
-            if (iconUrl != null) {
-                ImageIcon windowIcon = new ImageIcon(iconUrl);
-                setIconImage(windowIcon.getImage());
+        Startup.icons().whenComplete((icons, error) -> SwingUtilities.invokeLater(() -> {
+            if (error != null) {
+                System.err.println("Não foi possível carregar o ícone: " + error.getMessage());
+            } else if (!icons.isEmpty()) {
+                setIconImages(icons);
             }
-        } catch (Exception e) {
-            System.err.println("Não foi possível carregar o ícone: " + e.getMessage());
-        }
+        }));
     }
 
     private void initializeUI() {
@@ -148,14 +239,41 @@ public class LegendasApp extends JFrame {
         fontSizeCombo.setBackground(Color.WHITE);
         fontSizeCombo.setFocusable(false);
         fontSizeCombo.addActionListener(e -> {
+            int previousSize = currentFontSize;
             currentFontSize = (Integer) fontSizeCombo.getSelectedItem();
-            updateLegendaFont();
+            updateLegendaFont(previousSize);
             resizeToFitContent();
         });
 
         fontSizePanel.add(fontSizeLabel);
         fontSizePanel.add(fontSizeCombo);
 
+        // Automatic advance, shown once the file has a timeline
+        autoAdvance = new AutoAdvance(this::showTimed, this::autoAdvanceEnded);
+        autoButton = new JButton("▶ Auto");
+        autoButton.setFont(new Font("Segoe UI", Font.BOLD, 11));
+        autoButton.setBackground(DARK_BLUE);
+        autoButton.setForeground(Color.WHITE);
+        autoButton.setFocusPainted(false);
+        autoButton.setFocusable(false);
+        autoButton.setBorder(BorderFactory.createEmptyBorder(3, 8, 3, 8));
+        autoButton.setCursor(new Cursor(Cursor.HAND_CURSOR));
+        autoButton.setToolTipText("Avançar as legendas sozinho, nos tempos gravados (Ctrl+P)");
+        autoButton.addActionListener(e -> toggleAutoAdvance());
+        autoButton.setVisible(false);
+
+        speedCombo = new JComboBox<>(SPEED_LABELS);
+        speedCombo.setSelectedItem("1x");
+        speedCombo.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        speedCombo.setBackground(Color.WHITE);
+        speedCombo.setFocusable(false);
+        speedCombo.setToolTipText("Velocidade do vídeo");
+        speedCombo.addActionListener(e -> autoAdvance.setSpeed(SPEEDS[speedCombo.getSelectedIndex()]));
+        speedCombo.setVisible(false);
+
+        fontSizePanel.add(autoButton);
+        fontSizePanel.add(speedCombo);
+
         alwaysOnTopCheckbox = new JCheckBox("Sempre visível", true);
         alwaysOnTopCheckbox.setFont(new Font("Segoe UI", Font.PLAIN, 12));
         alwaysOnTopCheckbox.setBackground(MAIN_BLUE);
@@ -164,32 +282,77 @@ public class LegendasApp extends JFrame {
         alwaysOnTopCheckbox.addActionListener(e -> setAlwaysOnTop(alwaysOnTopCheckbox.isSelected()));
         setAlwaysOnTop(true);
 
+        // Documents opened in this session, shown once there are two
+        sessionCombo = new JComboBox<>();
+        sessionCombo.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        sessionCombo.setBackground(Color.WHITE);
+        sessionCombo.setFocusable(false);
+        sessionCombo.setToolTipText("Documentos abertos nesta sessão (Ctrl+1 a Ctrl+9)");
+        sessionCombo.setRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean selected, boolean focused) {
+                super.getListCellRendererComponent(list, value, index, selected, focused);
+                if (value instanceof SessionLibrary.Document) {
+                    SessionLibrary.Document document = (SessionLibrary.Document) value;
+                    // Filled dot: still in memory, opens at once
+                    setText((document.isLoaded() ? "● " : "○ ") + document.name());
+                }
+                return this;
+            }
+        });
+        sessionCombo.addActionListener(e -> {
+            SessionLibrary.Document selected = (SessionLibrary.Document) sessionCombo.getSelectedItem();
+            if (!updatingSessionList && selected != null && !selected.file.equals(currentFile)) {
+                loadLegendas(selected.file);
+            }
+        });
+        sessionCombo.setVisible(false);
+
+        JPanel filePanel = new JPanel();
+        filePanel.setLayout(new BoxLayout(filePanel, BoxLayout.X_AXIS));
+        filePanel.setBackground(MAIN_BLUE);
+        filePanel.add(uploadButton);
+        filePanel.add(Box.createHorizontalStrut(6));
+        filePanel.add(sessionCombo);
+
         JPanel topLeftPanel = new JPanel(new BorderLayout(10, 0));
         topLeftPanel.setBackground(MAIN_BLUE);
-        topLeftPanel.add(uploadButton, BorderLayout.WEST);
+        topLeftPanel.add(filePanel, BorderLayout.WEST);
         topLeftPanel.add(fontSizePanel, BorderLayout.CENTER);
 
+        // Search over the loaded legendas; the drop-down jumps to a hit
+        searchBox = new SearchBox(10,
+            scripts -> fontService.fontFor(scripts, currentFontSize),
+            this::jumpToLegenda,
+            () -> legendaView.requestFocusInWindow());
+        searchBox.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+
+        JPanel topRightPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 8, 0));
+        topRightPanel.setBackground(MAIN_BLUE);
+        topRightPanel.add(searchBox);
+        topRightPanel.add(alwaysOnTopCheckbox);
+
         topPanel.add(topLeftPanel, BorderLayout.CENTER);
-        topPanel.add(alwaysOnTopCheckbox, BorderLayout.EAST);
+        topPanel.add(topRightPanel, BorderLayout.EAST);
 
         // Center panel with legend display and side buttons
         JPanel centerPanel = new JPanel(new BorderLayout(6, 0));
         centerPanel.setBackground(MAIN_BLUE);
 
-        legendaArea = new JTextArea();
-        legendaArea.setFont(getUnicodeFontWithSize(currentFontSize));
-        legendaArea.setLineWrap(true);
-        legendaArea.setWrapStyleWord(true);
-        legendaArea.setEditable(false);
-        legendaArea.setBackground(Color.WHITE);
-        legendaArea.setForeground(TEXT_DARK);
-        legendaArea.setBorder(BorderFactory.createCompoundBorder(
+        // 30 columns wide, at least 2 rows tall
+        legendaView = new CaptionView(30, 2);
+        legendaView.setFontChooser(index -> fontService.fontFor(legendas.scripts(index), currentFontSize));
+        legendaView.addPaintListener(this::legendaPainted);
+        legendaView.setRewrapListener(this::fitHeightToContent);
+        legendaView.setBackground(Color.WHITE);
+        legendaView.setForeground(TEXT_DARK);
+        legendaView.setBorder(BorderFactory.createCompoundBorder(
             BorderFactory.createLineBorder(DARK_BLUE, 1),
             BorderFactory.createEmptyBorder(6, 8, 6, 8)
         ));
-        legendaArea.setColumns(30);
-        legendaArea.setText("Carregar legendas\n\nEspaço = Avançar | Backspace = Voltar");
-        legendaArea.setRows(2);
+        legendaView.showMessage("Carregar legendas\n\nEspaço = Avançar | Backspace = Voltar",
+            fontService.defaultFontWithSize(currentFontSize));
 
         // Side navigation buttons (no fixed height, will match text area)
         previousButton = new JButton("◄");
@@ -200,7 +363,7 @@ public class LegendasApp extends JFrame {
         previousButton.setBorder(BorderFactory.createEmptyBorder(3, 6, 3, 6));
         previousButton.setEnabled(false);
         previousButton.setCursor(new Cursor(Cursor.HAND_CURSOR));
-        previousButton.addActionListener(e -> previousLegenda());
+        previousButton.addActionListener(e -> navigate(-1, eventNanos(e.getWhen())));
 
         // Custom hover effect
         previousButton.addMouseListener(new MouseAdapter() {
@@ -222,7 +385,7 @@ public class LegendasApp extends JFrame {
         nextButton.setBorder(BorderFactory.createEmptyBorder(3, 6, 3, 6));
         nextButton.setEnabled(false);
         nextButton.setCursor(new Cursor(Cursor.HAND_CURSOR));
-        nextButton.addActionListener(e -> nextLegenda());
+        nextButton.addActionListener(e -> navigate(1, eventNanos(e.getWhen())));
 
         // Custom hover effect
         nextButton.addMouseListener(new MouseAdapter() {
@@ -236,13 +399,35 @@ public class LegendasApp extends JFrame {
             }
         });
 
-        centerPanel.add(legendaArea, BorderLayout.CENTER);
+        centerPanel.add(legendaView, BorderLayout.CENTER);
         centerPanel.add(previousButton, BorderLayout.WEST);
         centerPanel.add(nextButton, BorderLayout.EAST);
 
+        // Loading status (hidden until a file is loaded)
+        statusLabel = new JLabel(" ");
+        statusLabel.setFont(new Font("Segoe UI", Font.PLAIN, 11));
+        statusLabel.setForeground(TEXT_DARK);
+        statusLabel.setVisible(false);
+
+        // Update notice (hidden until the background check finds a new version)
+        updateNoticeButton = new JButton();
+        updateNoticeButton.setFont(new Font("Segoe UI", Font.BOLD, 11));
+        updateNoticeButton.setForeground(DARK_BLUE.darker());
+        updateNoticeButton.setContentAreaFilled(false);
+        updateNoticeButton.setBorder(BorderFactory.createEmptyBorder());
+        updateNoticeButton.setFocusable(false);
+        updateNoticeButton.setCursor(new Cursor(Cursor.HAND_CURSOR));
+        updateNoticeButton.setVisible(false);
+
+        JPanel bottomPanel = new JPanel(new BorderLayout(10, 0));
+        bottomPanel.setBackground(MAIN_BLUE);
+        bottomPanel.add(statusLabel, BorderLayout.CENTER);
+        bottomPanel.add(updateNoticeButton, BorderLayout.EAST);
+
         // Add all panels to main panel
         mainPanel.add(topPanel, BorderLayout.NORTH);
         mainPanel.add(centerPanel, BorderLayout.CENTER);
+        mainPanel.add(bottomPanel, BorderLayout.SOUTH);
 
         setContentPane(mainPanel);
 
@@ -255,19 +440,93 @@ public class LegendasApp extends JFrame {
         KeyboardFocusManager.getCurrentKeyboardFocusManager().addKeyEventDispatcher(new KeyEventDispatcher() {
             @Override
             public boolean dispatchKeyEvent(KeyEvent e) {
-                if (e.getID() == KeyEvent.KEY_PRESSED) {
+                if (e.getID() == KeyEvent.KEY_RELEASED && isNavigationKey(e.getKeyCode())
+                        && !(e.getComponent() instanceof JTextComponent)) {
+                    navigationReleased(eventNanos(e.getWhen()));
+                } else if (e.getID() == KeyEvent.KEY_PRESSED) {
+                    // In the search box, keys are text, Ctrl+arrows included; only the app's shortcuts go through
+                    if (e.getComponent() instanceof JTextComponent && !isAppShortcut(e)) {
+                        return false;
+                    }
                     switch (e.getKeyCode()) {
                         case KeyEvent.VK_SPACE:
                         case KeyEvent.VK_RIGHT:
-                            if (nextButton.isEnabled()) {
-                                nextLegenda();
+                            // Shift jumps 10 legendas, Ctrl+Shift 100
+                            if (navigate(navigationStep(e), eventNanos(e.getWhen()))) {
                                 return true;
                             }
                             break;
                         case KeyEvent.VK_BACK_SPACE:
                         case KeyEvent.VK_LEFT:
-                            if (previousButton.isEnabled()) {
-                                previousLegenda();
+                            if (navigate(-navigationStep(e), eventNanos(e.getWhen()))) {
+                                return true;
+                            }
+                            break;
+                        case KeyEvent.VK_F:
+                            // Ctrl+F searches
+                            if (e.isControlDown() && !e.isShiftDown()) {
+                                searchBox.requestFocusInWindow();
+                                searchBox.selectAll();
+                                return true;
+                            }
+                            break;
+                        case KeyEvent.VK_P:
+                            // Ctrl+P starts or pauses the automatic advance
+                            if (e.isControlDown() && !e.isShiftDown() && !legendas.isEmpty()) {
+                                toggleAutoAdvance();
+                                return true;
+                            }
+                            break;
+                        case KeyEvent.VK_G:
+                            // Ctrl+G goes to a time of the video
+                            if (e.isControlDown() && !e.isShiftDown() && timeline != null) {
+                                goToTime();
+                                return true;
+                            }
+                            break;
+                        case KeyEvent.VK_R:
+                            // Ctrl+R records the timings while advancing by hand
+                            if (e.isControlDown() && !e.isShiftDown() && !legendas.isEmpty()) {
+                                toggleRecording();
+                                return true;
+                            }
+                            break;
+                        case KeyEvent.VK_B:
+                            // Ctrl+B starts or stops sending the legendas to other screens
+                            if (e.isControlDown() && !e.isShiftDown()) {
+                                toggleBroadcast();
+                                return true;
+                            }
+                            break;
+                        case KeyEvent.VK_1:
+                        case KeyEvent.VK_2:
+                        case KeyEvent.VK_3:
+                        case KeyEvent.VK_4:
+                        case KeyEvent.VK_5:
+                        case KeyEvent.VK_6:
+                        case KeyEvent.VK_7:
+                        case KeyEvent.VK_8:
+                        case KeyEvent.VK_9:
+                            // Ctrl+1..9 switch to a document of the session, as listed
+                            if (e.isControlDown() && !e.isShiftDown()) {
+                                int position = e.getKeyCode() - KeyEvent.VK_1;
+                                if (position < sessionCombo.getItemCount()) {
+                                    loadLegendas(sessionCombo.getItemAt(position).file);
+                                    return true;
+                                }
+                            }
+                            break;
+                        case KeyEvent.VK_D:
+                            // Ctrl+Shift+D opens the diagnostics
+                            if (e.isControlDown() && e.isShiftDown()) {
+                                showDiagnostics();
+                                return true;
+                            }
+                            break;
+                        case KeyEvent.VK_J:
+                            // Ctrl+Shift+J saves the flight recording
+                            if (e.isControlDown() && e.isShiftDown() && FlightRecording.isRecording()) {
+                                dumpFlightRecording();
                                 return true;
                             }
                             break;
@@ -278,6 +537,82 @@ public class LegendasApp extends JFrame {
         });
     }
 
+    /**
+     * Shortcuts handled by the window even while typing in the search box
+     */
+    private static boolean isAppShortcut(KeyEvent e) {
+        if (!e.isControlDown()) {
+            return false;
+        }
+        int key = e.getKeyCode();
+        if (e.isShiftDown()) {
+            return key == KeyEvent.VK_D || key == KeyEvent.VK_J;
+        }
+        return key == KeyEvent.VK_F || key == KeyEvent.VK_P || key == KeyEvent.VK_G || key == KeyEvent.VK_R
+            || key == KeyEvent.VK_B || (key >= KeyEvent.VK_1 && key <= KeyEvent.VK_9);
+    }
+
+    private static boolean isNavigationKey(int keyCode) {
+        return keyCode == KeyEvent.VK_SPACE || keyCode == KeyEvent.VK_RIGHT
+            || keyCode == KeyEvent.VK_BACK_SPACE || keyCode == KeyEvent.VK_LEFT;
+    }
+
+    private static int navigationStep(KeyEvent e) {
+        if (!e.isShiftDown()) {
+            return 1;
+        }
+        return e.isControlDown() ? 100 : 10;
+    }
+
+    /**
+     * Duration of a display frame: -Dlegendas.frameHz, else the screen's refresh rate, else 60 Hz
+     */
+    private static long frameNanos() {
+        int hz = Integer.getInteger("legendas.frameHz", 0);
+        if (hz <= 0 && !GraphicsEnvironment.isHeadless()) {
+            hz = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                .getDisplayMode().getRefreshRate();
+        }
+        return TimeUnit.SECONDS.toNanos(1) / (hz > 0 ? hz : 60);
+    }
+
+    /**
+     * System.nanoTime() equivalent of an input event timestamp
+     */
+    private static long eventNanos(long when) {
+        return System.nanoTime() - Math.max(0, System.currentTimeMillis() - when) * 1_000_000L;
+    }
+
+    private void showDiagnostics() {
+        if (diagnosticsDialog == null) {
+            diagnosticsDialog = new DiagnosticsDialog(this);
+        }
+        diagnosticsDialog.setVisible(true);
+    }
+
+    private void dumpFlightRecording() {
+        new SwingWorker<Path, Void>() {
+            @Override
+            protected Path doInBackground() throws Exception {
+                return FlightRecording.dump();
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    statusLabel.setText("Gravação salva em " + get());
+                    statusLabel.setVisible(true);
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    JOptionPane.showMessageDialog(LegendasApp.this,
+                        "Não foi possível salvar a gravação:\n" + cause.getMessage(),
+                        "Erro",
+                        JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
     private void loadDocxFile() {
         // Temporarily disable always-on-top so user can interact with both windows
         boolean wasAlwaysOnTop = isAlwaysOnTop();
@@ -286,8 +621,12 @@ public class LegendasApp extends JFrame {
         // Use native file dialog (independent window)
         FileDialog fileDialog = new FileDialog((Frame) null, "Selecione o arquivo de legendas", FileDialog.LOAD);
 
-        // Set file filter for .docx files
-        fileDialog.setFile("*.docx");
+        // Set file filter for .docx files and timed subtitles
+        fileDialog.setFile("*.docx;*.srt;*.vtt");
+        fileDialog.setFilenameFilter((dir, name) -> {
+            String lower = name.toLowerCase(java.util.Locale.ROOT);
+            return lower.endsWith(".docx") || lower.endsWith(".srt") || lower.endsWith(".vtt");
+        });
 
         // Set initial directory to Documents
         String documentsPath = System.getProperty("user.home") + File.separator + "Documents";
@@ -307,49 +646,717 @@ public class LegendasApp extends JFrame {
         }
     }
 
-    private void loadLegendas(File file) {
+    void loadLegendas(File file) {
+        file = file.getAbsoluteFile();
+        if (file.equals(currentFile) && !isLoading() && !legendas.isEmpty()) {
+            // Already on screen: read it again in place, keeping the position, in case
+            // the watcher missed a save (network share, polling delay, failed registration)
+            reloadLegendas(file);
+            return;
+        }
+        rememberCurrent();
+        cancelNavigation();
+
+        // Cancel a load that is still running for a previous file
+        if (loadWorker != null) {
+            loadWorker.cancel(true);
+        }
+        stopWatching();
+        stopTimed();
+
+        SessionLibrary.Document document = library.get(file);
+        SessionLibrary.Parsed parsed = document != null ? document.parsed() : null;
+        if (parsed != null) {
+            showRemembered(document, parsed);
+            return;
+        }
+
+        Startup.fileOpening();
+        currentFile = file;
+        legendas = LegendaStore.EMPTY;
+        searchBox.indexing();
+        legendaView.clearCache();
+        currentIndex = 0;
+        previousButton.setEnabled(false);
+        nextButton.setEnabled(false);
+        statusLabel.setText("Carregando " + file.getName() + "...");
+        statusLabel.setVisible(true);
+
+        loadWorker = new LegendaLoader(file);
+        loadWorker.addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName()) && e.getSource() == loadWorker && !loadWorker.isDone()) {
+                updateLoadingStatus();
+            }
+        });
+        loadWorker.execute();
+    }
+
+    /**
+     * Keep the document on screen in the session library, with the legenda it is on
+     */
+    private void rememberCurrent() {
+        if (currentFile == null || legendas.isEmpty() || (isLoading() && !loadWorker.reload)) {
+            return;
+        }
+        library.put(currentFile, legendas, searchBox.index(), timeline, currentIndex);
+    }
+
+    /**
+     * Switch to a document whose legendas are still in memory, without reading it again
+     */
+    private void showRemembered(SessionLibrary.Document document, SessionLibrary.Parsed parsed) {
+        File file = document.file;
+        long start = System.nanoTime();
+        currentFile = file;
+        legendas = parsed.store;
+        legendaView.clearCache();
+        currentIndex = Math.max(0, Math.min(document.position, legendas.size() - 1));
+        if (legendas.isEmpty()) {
+            previousButton.setEnabled(false);
+            nextButton.setEnabled(false);
+            legendaView.showMessage("Nenhuma legenda encontrada no arquivo.",
+                fontService.defaultFontWithSize(currentFontSize));
+        } else {
+            updateLegendaDisplay();
+        }
+        if (parsed.index != null) {
+            searchBox.setIndex(parsed.index);
+        } else {
+            searchBox.indexing();
+            indexInBackground(legendas);
+        }
+        setTimeline(parsed.timeline);
+        statusLabel.setText(legendas.size() + " legendas - " + file.getName());
+        statusLabel.setVisible(true);
+        startWatching(file);
+
+        // Back to a strong reference, as the most recent document
+        library.put(file, parsed.store, parsed.index, parsed.timeline, currentIndex);
+        refreshSessionList();
+        System.out.println("[SessionLibrary] Switched to " + file.getName() + " in "
+            + (System.nanoTime() - start) / 1000 + " us, at legenda " + (currentIndex + 1));
+
+        if (library.isStale(document)) {
+            // Saved while another document was open: update it, staying on the same legenda
+            reloadLegendas(file);
+        }
+    }
+
+    /**
+     * List the session's documents, the one on screen first
+     */
+    private void refreshSessionList() {
+        updatingSessionList = true;
+        try {
+            sessionCombo.removeAllItems();
+            for (SessionLibrary.Document document : library.recent()) {
+                sessionCombo.addItem(document);
+            }
+            if (sessionCombo.getItemCount() > 0) {
+                sessionCombo.setSelectedIndex(0);
+            }
+        } finally {
+            updatingSessionList = false;
+        }
+        sessionCombo.setVisible(sessionCombo.getItemCount() > 1);
+    }
+
+    CaptionView getLegendaView() {
+        return legendaView;
+    }
+
+    int getLegendaCount() {
+        return legendas.size();
+    }
+
+    boolean isLoading() {
+        return loadWorker != null && !loadWorker.isDone();
+    }
+
+    /**
+     * Read the open file again after it was saved, staying on the same legenda
+     */
+    private void reloadLegendas(File file) {
+        if (isLoading() && !loadWorker.reload) {
+            // The first load is still running and will read the saved version
+            return;
+        }
+        if (loadWorker != null) {
+            loadWorker.cancel(true);
+        }
+        loadWorker = new LegendaLoader(file, legendas);
+        loadWorker.execute();
+    }
+
+    /**
+     * Reload a loaded file whenever it is saved
+     */
+    private void startWatching(File file) {
+        stopWatching();
         try {
+            watcher = DocumentWatcher.watch(file.toPath(),
+                () -> SwingUtilities.invokeLater(() -> reloadLegendas(file)));
+        } catch (IOException e) {
+            System.err.println("[DocumentWatcher] Could not watch " + file + ": " + e.getMessage());
+        }
+    }
+
+    private void stopWatching() {
+        if (watcher != null) {
+            watcher.close();
+            watcher = null;
+        }
+    }
+
+    /**
+     * Swap in a reloaded version of the open file. Layouts of unchanged
+     * legendas are kept, and the viewer follows the legenda on screen even
+     * if legendas before it were inserted or removed.
+     */
+    private void applyReload(File file, LegendaStore updated, LegendaDiff diff) {
+        if (diff.isUnchanged()) {
+            statusLabel.setText(legendas.size() + " legendas - " + file.getName());
+            return;
+        }
+
+        int index = diff.follow(currentIndex);
+        legendaView.remap(updated, diff::newIndex);
+        legendas = updated;
+        currentIndex = index;
+        if (updated.isEmpty()) {
+            pendingIndex = -1;
+            previousButton.setEnabled(false);
+            nextButton.setEnabled(false);
+            legendaView.showMessage("Nenhuma legenda encontrada no arquivo.",
+                fontService.defaultFontWithSize(currentFontSize));
+        } else {
+            updateLegendaDisplay();
+        }
+
+        statusLabel.setText(updated.size() + " legendas - " + file.getName() + " (atualizado: "
+            + diff.changed() + " alteradas, " + diff.inserted() + " inseridas, " + diff.removed() + " removidas)");
+        statusLabel.setVisible(true);
+        System.out.println("[Reload] " + file.getName() + ": " + diff.changed() + " changed, "
+            + diff.inserted() + " inserted, " + diff.removed() + " removed, now at " + (index + 1)
+            + "/" + updated.size());
+        searchBox.indexing();
+        indexInBackground(updated);
+    }
+
+    private void updateLoadingStatus() {
+        statusLabel.setText("Carregando... " + loadWorker.getProgress() + "% - "
+            + legendas.size() + " legendas");
+    }
+
+    /**
+     * Parses legendas on a worker thread and publishes snapshots of the
+     * growing store in batches, so the first legenda can be shown while
+     * the rest is still loading
+     */
+    private class LegendaLoader extends SwingWorker<LegendaStore, LegendaStore> {
+        private static final int BATCH_SIZE = 256;
+        private static final long BATCH_INTERVAL_NANOS = 50_000_000L;
+
+        private final File file;
+        /** Reading the open file again: no snapshots, no dialogs */
+        final boolean reload;
+        private final LegendaStore previous;
+        private LegendaDiff diff;
+        private CaptionTimeline timeline;
+        private CaptionTimeline parsedTimeline;
+        /** The parser that produced the store: POI after a failed streaming read */
+        private LegendaParser parsedBy;
+        private long lastPublish;
+
+        LegendaLoader(File file) {
+            this(file, false, null);
+        }
+
+        /**
+         * Reload of the file whose legendas are shown; the diff against them is computed off the EDT too
+         */
+        LegendaLoader(File file, LegendaStore previous) {
+            this(file, true, previous);
+        }
+
+        private LegendaLoader(File file, boolean reload, LegendaStore previous) {
+            this.file = file;
+            this.reload = reload;
+            this.previous = previous;
+        }
 
-            // Parse DOCX file
-            DocxParser parser = new DocxParser();
-            legendas = parser.extractLegendas(file);
+        @Override
+        protected LegendaStore doInBackground() throws Exception {
+            LegendaStore store = read();
+            if (reload && !isCancelled()) {
+                diff = LegendaDiff.compute(previous, store);
+            }
+            // A reloaded SRT or WebVTT file may have new times too
+            if (!reload || parsedTimeline != null) {
+                timeline = readTimeline(file, parsedTimeline);
+            }
+            return store;
+        }
+
+        private LegendaStore read() throws Exception {
+            LegendaParser parser = SubtitleParser.handles(file) ? new SubtitleParser() : LegendaParser.create();
+            LegendaCache.Key cacheKey = null;
+            if (legendaCache != null) {
+                try {
+                    cacheKey = legendaCache.keyFor(file, parser);
+                    LegendaCache.Entry cached = legendaCache.load(cacheKey);
+                    if (cached != null) {
+                        setProgress(100);
+                        parsedTimeline = cached.timeline;
+                        return cached.store;
+                    }
+                } catch (IOException e) {
+                    System.err.println("[LegendaCache] " + e.getMessage());
+                }
+            }
+
+            LegendaStore parsed = parse(parser);
+            if (cacheKey != null && parsedBy != parser) {
+                // Filed under the parser that read it, never under the one that failed
+                cacheKey = cacheKey.withParser(parsedBy);
+            }
+            if (cacheKey != null && !isCancelled()) {
+                legendaCache.store(cacheKey, parsed, parsedTimeline);
+            }
+            return parsed;
+        }
+
+        private LegendaStore parse(LegendaParser parser) throws Exception {
+            LegendaStore.Builder builder = LegendaStore.builder();
+
+            try {
+                parsedBy = parser;
+                parser.parseLegendas(file, legenda -> append(builder, legenda), this::setProgress);
+                if (parser instanceof SubtitleParser) {
+                    parsedTimeline = ((SubtitleParser) parser).timeline();
+                }
+            } catch (CancellationException e) {
+                throw e;
+            } catch (Exception e) {
+                if (parser instanceof DocxParser || parser instanceof SubtitleParser) {
+                    throw e;
+                }
+                // Retry with Apache POI; snapshots smaller than the one already shown are ignored
+                System.err.println("Leitura rápida falhou, usando Apache POI: " + e.getMessage());
+                LegendaStore.Builder retry = LegendaStore.builder();
+                parsedBy = new DocxParser();
+                parsedBy.parseLegendas(file, legenda -> append(retry, legenda), this::setProgress);
+                return retry.build();
+            }
+            return builder.build();
+        }
+
+        private void append(LegendaStore.Builder builder, CharSequence legenda) {
+            if (isCancelled()) {
+                throw new CancellationException();
+            }
+            builder.append(legenda);
+
+            // Publish the first legenda at once, then in batches
+            long now = System.nanoTime();
+            if (builder.size() == 1 || builder.size() % BATCH_SIZE == 0
+                    || now - lastPublish > BATCH_INTERVAL_NANOS) {
+                lastPublish = now;
+                publish(builder.snapshot());
+            }
+        }
 
-            if (legendas.isEmpty()) {
-                JOptionPane.showMessageDialog(this,
-                    "Nenhuma legenda encontrada no arquivo.",
-                    "Aviso",
-                    JOptionPane.WARNING_MESSAGE);
+        @Override
+        protected void process(List<LegendaStore> snapshots) {
+            // The last batch may arrive after done(), which already set the final store
+            if (loadWorker != this || isDone() || reload) {
                 return;
             }
+            showLoaded(snapshots.get(snapshots.size() - 1));
+            updateLoadingStatus();
+        }
 
-            // Reset to first legend
-            currentIndex = 0;
+        @Override
+        protected void done() {
+            if (loadWorker != this || isCancelled()) {
+                return;
+            }
+            if (reload) {
+                reloaded();
+                return;
+            }
+            Startup.fileLoaded();
+
+            try {
+                LegendaStore store = get();
+                showLoaded(store);
+                statusLabel.setText(store.size() + " legendas - " + file.getName());
+                indexInBackground(store);
+                startWatching(file);
+                setTimeline(timeline);
+
+                // A document opened before goes back to where it was left
+                SessionLibrary.Document remembered = library.get(file);
+                if (remembered != null && currentIndex == 0 && !store.isEmpty()) {
+                    currentIndex = Math.min(remembered.position, store.size() - 1);
+                    updateLegendaDisplay();
+                }
+                library.put(file, store, null, timeline, currentIndex);
+                refreshSessionList();
+
+                if (store.isEmpty()) {
+                    statusLabel.setVisible(false);
+                    JOptionPane.showMessageDialog(LegendasApp.this,
+                        "Nenhuma legenda encontrada no arquivo.",
+                        "Aviso",
+                        JOptionPane.WARNING_MESSAGE);
+                }
+            } catch (Exception e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                statusLabel.setText("Erro ao carregar " + file.getName());
+                JOptionPane.showMessageDialog(LegendasApp.this,
+                    "Erro ao carregar o arquivo:\n" + cause.getMessage(),
+                    "Erro",
+                    JOptionPane.ERROR_MESSAGE);
+                cause.printStackTrace();
+            }
+        }
+
+        /**
+         * A failed reload keeps the version on screen; the next save tries again
+         */
+        private void reloaded() {
+            try {
+                LegendaStore store = get();
+                applyReload(file, store, legendas == previous ? diff : LegendaDiff.compute(legendas, store));
+                if (timeline != null) {
+                    autoAdvance.pause();
+                    setTimeline(timeline);
+                }
+            } catch (Exception e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                statusLabel.setText("Não foi possível recarregar " + file.getName() + ": " + cause.getMessage());
+                statusLabel.setVisible(true);
+                System.err.println("[Reload] " + file.getName() + ": " + cause);
+            }
+        }
+    }
+
+    /**
+     * Timeline kept next to a document, or null if it has none or it cannot be read
+     *
+     * @param parsed times read along with an SRT or WebVTT document, or null;
+     *               a recording made for the document comes first
+     */
+    private static CaptionTimeline readTimeline(File file, CaptionTimeline parsed) {
+        Path recorded = CaptionTimeline.recordingPath(file.toPath());
+        Path path;
+        if (Files.isRegularFile(recorded)) {
+            path = recorded;
+        } else if (parsed != null || SubtitleParser.handles(file)) {
+            // An SRT or WebVTT file has its own times; never those of a sibling Foo.srt next to Foo.vtt
+            return parsed != null && parsed.size() > 0 ? parsed : null;
+        } else {
+            path = CaptionTimeline.find(file.toPath());
+        }
+        if (path == null) {
+            return null;
+        }
+        try {
+            CaptionTimeline timeline = CaptionTimeline.read(path);
+            System.out.println("[Timeline] " + timeline.size() + " legendas timed in " + path.getFileName());
+            return timeline.size() > 0 ? timeline : null;
+        } catch (IOException e) {
+            System.err.println("[Timeline] Could not read " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void setTimeline(CaptionTimeline timeline) {
+        this.timeline = timeline;
+        autoButton.setVisible(timeline != null);
+        speedCombo.setVisible(timeline != null);
+        autoButton.setText("▶ Auto");
+    }
+
+    /**
+     * Start or pause the automatic advance from the legenda on screen
+     */
+    private void toggleAutoAdvance() {
+        if (autoAdvance.isPlaying()) {
+            autoAdvance.pause();
+            autoButton.setText("▶ Auto");
+            return;
+        }
+        if (recorder != null) {
+            return;
+        }
+        if (timeline == null) {
+            statusLabel.setText("Sem tempos para este arquivo: grave com Ctrl+R enquanto o vídeo passa");
+            statusLabel.setVisible(true);
+            return;
+        }
+        if (currentIndex >= timeline.size() - 1) {
+            statusLabel.setText("Os tempos gravados terminam na legenda " + timeline.size());
+            statusLabel.setVisible(true);
+            return;
+        }
+        autoAdvance.play(timeline, currentIndex);
+        autoButton.setText("❚❚ Pausar");
+    }
+
+    /**
+     * Start or stop sending the legenda on screen to browsers on the local network
+     */
+    private void toggleBroadcast() {
+        if (broadcaster != null) {
+            broadcaster.close();
+            broadcaster = null;
+            statusLabel.setText("Transmissão encerrada");
+            statusLabel.setVisible(true);
+            return;
+        }
+        int port = Integer.getInteger("legendas.broadcast.port", 8090);
+        try {
+            broadcaster = CaptionBroadcaster.start(port, () -> SwingUtilities.invokeLater(this::broadcastStopped));
+        } catch (IOException e) {
+            System.err.println("[Broadcast] Cannot listen on port " + port + ": " + e.getMessage());
+            statusLabel.setText("Não foi possível transmitir na porta " + port + ": " + e.getMessage());
+            statusLabel.setVisible(true);
+            return;
+        }
+        if (!legendas.isEmpty()) {
+            broadcaster.publish(currentIndex, legendas.get(currentIndex));
+        }
+        statusLabel.setText("Transmitindo em " + broadcaster.url() + " (Ctrl+B encerra)");
+        statusLabel.setVisible(true);
+    }
+
+    /**
+     * The broadcast server failed on its own; it is not running any more
+     */
+    private void broadcastStopped() {
+        if (broadcaster != null && !broadcaster.isRunning()) {
+            broadcaster = null;
+            statusLabel.setText("Transmissão interrompida por um erro (Ctrl+B tenta de novo)");
+            statusLabel.setVisible(true);
+        }
+    }
+
+    /**
+     * Ask for a time of the video and show the legenda on screen at that time
+     */
+    private void goToTime() {
+        String input = JOptionPane.showInputDialog(this, "Ir para o tempo (hh:mm:ss):", "Ir para",
+            JOptionPane.QUESTION_MESSAGE);
+        if (input == null || input.isBlank()) {
+            return;
+        }
+        String time = input.trim();
+        try {
+            // Plain seconds are accepted too
+            long nanos = SubtitleParser.parseTime(time.indexOf(':') < 0 ? "0:" + time : time);
+            jumpToLegenda(Math.max(0, timeline.indexAt(nanos)));
+        } catch (IllegalArgumentException e) {
+            statusLabel.setText("Tempo inválido: " + time);
+            statusLabel.setVisible(true);
+        }
+    }
+
+    /**
+     * The automatic advance reached the next legenda
+     */
+    private void showTimed(int index) {
+        if (index < legendas.size()) {
+            currentIndex = index;
             updateLegendaDisplay();
+        }
+    }
 
-            // Enable navigation buttons
-            previousButton.setEnabled(false);
-            nextButton.setEnabled(legendas.size() > 1);
+    private void autoAdvanceEnded() {
+        autoButton.setText("▶ Auto");
+    }
+
+    /**
+     * Start recording the timings from the legenda on screen, or stop and save them
+     */
+    private void toggleRecording() {
+        if (recorder == null) {
+            autoAdvance.pause();
+            autoButton.setText("▶ Auto");
+            recorder = new CaptionTimeline.Recorder(currentIndex);
+            statusLabel.setText("Gravando tempos: avance as legendas junto com o vídeo (Ctrl+R termina)");
+            statusLabel.setVisible(true);
+            return;
+        }
 
-        } catch (Exception e) {
-            JOptionPane.showMessageDialog(this,
-                "Erro ao carregar o arquivo:\n" + e.getMessage(),
-                "Erro",
-                JOptionPane.ERROR_MESSAGE);
-            e.printStackTrace();
+        CaptionTimeline recorded = recorder.finish();
+        recorder = null;
+        setTimeline(recorded);
+        LegendaStore store = legendas;
+        Path path = CaptionTimeline.recordingPath(currentFile.toPath());
+        CompletableFuture.runAsync(() -> {
+            try {
+                recorded.write(path, store);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }).whenComplete((ignored, error) -> SwingUtilities.invokeLater(() -> {
+            if (error != null) {
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                statusLabel.setText("Não foi possível salvar os tempos: " + cause.getMessage());
+                System.err.println("[Timeline] Could not save " + path + ": " + cause);
+            } else {
+                statusLabel.setText(recorded.size() + " tempos salvos em " + path.getFileName());
+            }
+            statusLabel.setVisible(true);
+        }));
+    }
+
+    /**
+     * The operator moved to another legenda: record it, or make the automatic advance follow
+     */
+    private void operatorMoved() {
+        if (recorder != null) {
+            recorder.mark(currentIndex);
+        } else {
+            autoAdvance.seek(currentIndex);
         }
     }
 
-    private void nextLegenda() {
-        if (currentIndex < legendas.size() - 1) {
-            currentIndex++;
+    private void stopTimed() {
+        autoAdvance.pause();
+        recorder = null;
+        setTimeline(null);
+    }
+
+    /**
+     * Build the search index of a loaded file off the EDT
+     */
+    private void indexInBackground(LegendaStore store) {
+        long start = System.nanoTime();
+        CompletableFuture.supplyAsync(() -> SearchIndex.build(store))
+            .whenComplete((index, error) -> SwingUtilities.invokeLater(() -> {
+                if (legendas != store) {
+                    // Another file was opened meanwhile
+                    return;
+                }
+                if (error != null) {
+                    System.err.println("[Search] Could not index legendas: " + error.getMessage());
+                    searchBox.setIndex(SearchIndex.EMPTY);
+                    return;
+                }
+                System.out.println("[Search] Indexed " + store.size() + " legendas (" + index.termCount()
+                    + " terms) in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+                searchBox.setIndex(index);
+            }));
+    }
+
+    /**
+     * Show a legenda picked from the search results
+     */
+    void jumpToLegenda(int index) {
+        if (index >= 0 && index < legendas.size()) {
+            cancelNavigation();
+            currentIndex = index;
             updateLegendaDisplay();
+            operatorMoved();
         }
     }
 
-    private void previousLegenda() {
-        if (currentIndex > 0) {
-            currentIndex--;
+    /**
+     * Swap in a larger snapshot of the store being loaded
+     */
+    private void showLoaded(LegendaStore store) {
+        if (store.size() < legendas.size()) {
+            return;
+        }
+
+        boolean first = legendas.isEmpty();
+        legendas = store;
+
+        if (first && !store.isEmpty()) {
+            // Show the first legenda immediately
+            currentIndex = 0;
             updateLegendaDisplay();
+        } else {
+            nextButton.setEnabled(currentIndex < legendas.size() - 1);
+        }
+    }
+
+    /**
+     * Move by some legendas from the one on screen, or from where earlier presses not shown yet lead
+     *
+     * Only the target changes right away. The display follows at most once
+     * per frame, so with a key held down every repeat is counted but the
+     * intermediate legendas are skipped when the EDT cannot keep up, and the
+     * display stops as soon as the key is released.
+     *
+     * @param inputNanos when the press happened, for the latency metrics; 0 if unknown
+     * @return false if there is nowhere to move
+     */
+    private boolean navigate(int delta, long inputNanos) {
+        int from = renderScheduled ? targetIndex : currentIndex;
+        int to = Math.max(0, Math.min(from + delta, legendas.size() - 1));
+        if (legendas.isEmpty() || to == from) {
+            return false;
+        }
+        targetIndex = to;
+        if (inputNanos != 0 && queuedInputCount < queuedInputs.length) {
+            queuedInputs[queuedInputCount++] = inputNanos;
+        }
+        if (!renderScheduled) {
+            renderScheduled = true;
+            long wait = lastRenderNanos + frameNanos - System.nanoTime();
+            if (wait <= 0) {
+                // Idle for a frame already: show it now, after the events already queued
+                SwingUtilities.invokeLater(this::renderNavigation);
+            } else {
+                if (frameTimer == null) {
+                    frameTimer = new Timer(0, e -> renderNavigation());
+                    frameTimer.setRepeats(false);
+                }
+                frameTimer.setInitialDelay((int) TimeUnit.NANOSECONDS.toMillis(wait + 999_999));
+                frameTimer.restart();
+            }
+        }
+        return true;
+    }
+
+    private void renderNavigation() {
+        if (!renderScheduled) {
+            // Cancelled by a document switch
+            return;
+        }
+        renderScheduled = false;
+        if (legendas.isEmpty()) {
+            queuedInputCount = 0;
+            return;
+        }
+        lastRenderNanos = System.nanoTime();
+        currentIndex = Math.min(targetIndex, legendas.size() - 1);
+        updateLegendaDisplay();
+        operatorMoved();
+    }
+
+    private void cancelNavigation() {
+        renderScheduled = false;
+        queuedInputCount = 0;
+        releaseNanos = 0;
+        if (frameTimer != null) {
+            frameTimer.stop();
+        }
+    }
+
+    /**
+     * A navigation key was released: time until its last legenda is on screen
+     */
+    private void navigationReleased(long nanos) {
+        if (renderScheduled || pendingIndex >= 0) {
+            releaseNanos = nanos;
+        } else {
+            // Already showing where the key led
+            Metrics.RELEASE_TO_PAINT.record(0);
         }
     }
 
@@ -358,63 +1365,118 @@ public class LegendasApp extends JFrame {
             return;
         }
 
-        String text = legendas.get(currentIndex);
-        legendaArea.setText(text);
-        legendaArea.setCaretPosition(0); // Scroll to top
+        CaptionDisplayEvent event = new CaptionDisplayEvent();
+        event.begin();
 
-        // Adjust rows based on content (most subtitles are 2 lines, max 4-6)
-        int lineCount = text.split("\n").length;
-        // Start with 2 rows, grow only if needed
-        int estimatedRows = Math.max(2, Math.min(lineCount, 8));
-        legendaArea.setRows(estimatedRows);
+        // The view picks a font that can display this legenda's scripts
+        boolean sizeChanged = legendaView.showCaption(legendas, currentIndex);
+        if (broadcaster != null) {
+            broadcaster.publish(currentIndex, legendas.get(currentIndex));
+        }
+
+        searchBox.setCurrentIndex(currentIndex);
 
         // Update button states
         previousButton.setEnabled(currentIndex > 0);
         nextButton.setEnabled(currentIndex < legendas.size() - 1);
 
-        // Resize to fit content
-        resizeToFitContent();
-    }
-
-    /**
-     * Get Unicode font with specified size for Tibetan and Chinese support
-     */
-    private Font getUnicodeFontWithSize(int size) {
-        // Try fonts in order of preference for Unicode support
-        String[] fontNames = {"Arial Unicode MS", "Noto Sans", "Microsoft YaHei", Font.SANS_SERIF};
+        // Resize only when the legenda needs a different height
+        if (sizeChanged) {
+            resizeToFitContent();
+        }
 
-        for (String fontName : fontNames) {
-            Font font = new Font(fontName, Font.PLAIN, size);
-            if (font.getFamily().equals(fontName) || fontName.equals(Font.SANS_SERIF)) {
-                return font;
+        // Key presses and the JFR event are resolved by legendaPainted once the legenda is on screen.
+        // Presses coalesced into one paint all wait for it.
+        pendingIndex = currentIndex;
+        for (int i = 0; i < queuedInputCount; i++) {
+            pendingInputs[Math.min(pendingInputCount, pendingInputs.length - 1)] = queuedInputs[i];
+            pendingInputCount = Math.min(pendingInputCount + 1, pendingInputs.length);
+        }
+        if (event.isEnabled()) {
+            event.index = currentIndex;
+            event.chars = legendas.length(currentIndex);
+            event.lines = legendas.lineCount(currentIndex);
+            event.resized = sizeChanged;
+            if (pendingDisplay != null) {
+                pendingDisplay.superseded = true;
+                pendingDisplay.commit();
             }
+            pendingDisplay = event;
         }
+        queuedInputCount = 0;
+    }
 
-        return new Font(Font.SANS_SERIF, Font.PLAIN, size);
+    private void legendaPainted(int index) {
+        Startup.painted();
+        if (index >= 0) {
+            Startup.captionPainted();
+        }
+        if (index != pendingIndex) {
+            return;
+        }
+        long now = System.nanoTime();
+        for (int i = 0; i < pendingInputCount; i++) {
+            Metrics.KEY_TO_PAINT.record(now - pendingInputs[i]);
+        }
+        if (pendingDisplay != null) {
+            if (pendingInputCount > 0) {
+                pendingDisplay.inputToPaint = now - pendingInputs[pendingInputCount - 1];
+            }
+            pendingDisplay.commit();
+            pendingDisplay = null;
+        }
+        pendingInputCount = 0;
+        pendingIndex = -1;
+        if (releaseNanos != 0 && !renderScheduled) {
+            Metrics.RELEASE_TO_PAINT.record(now - releaseNanos);
+            releaseNanos = 0;
+        }
     }
 
     /**
      * Update the legend area font size
      */
-    private void updateLegendaFont() {
-        legendaArea.setFont(getUnicodeFontWithSize(currentFontSize));
+    private void updateLegendaFont(int previousSize) {
+        FontChangeEvent event = new FontChangeEvent();
+        event.begin();
 
-        // Recalculate rows if we have content
-        if (!legendas.isEmpty()) {
-            String text = legendas.get(currentIndex);
-            int lineCount = text.split("\n").length;
-            int estimatedRows = Math.max(2, Math.min(lineCount, 8));
-            legendaArea.setRows(estimatedRows);
+        // Layouts shaped or being prepared at the old size are no longer useful
+        legendaView.invalidateLayouts();
+
+        if (legendas.isEmpty()) {
+            legendaView.showMessage("Carregar legendas\n\nEspaço = Avançar | Backspace = Voltar",
+                fontService.defaultFontWithSize(currentFontSize));
+        } else {
+            legendaView.showCaption(legendas, currentIndex);
         }
 
-        legendaArea.revalidate();
-        legendaArea.repaint();
+        event.previousSize = previousSize;
+        event.size = currentFontSize;
+        event.commit();
+    }
+
+    /**
+     * The legenda wrapped to another height after the user resized the
+     * window: fit the height and keep the width the user chose
+     */
+    private void fitHeightToContent() {
+        int height = getPreferredSize().height;
+        if (height != getHeight()) {
+            setSize(getWidth(), height);
+            validate();
+        }
     }
 
     /**
      * Resize window to fit content dynamically
      */
     private void resizeToFitContent() {
+        long start = System.nanoTime();
+        WindowResizeEvent event = new WindowResizeEvent();
+        event.begin();
+        event.previousWidth = getWidth();
+        event.previousHeight = getHeight();
+
         pack();
 
         // Ensure reasonable minimum width only (no minimum height!)
@@ -425,7 +1487,11 @@ public class LegendasApp extends JFrame {
             setSize(minWidth, currentSize.height);
         }
 
-        revalidate();
-        repaint();
+        validate();
+
+        event.width = getWidth();
+        event.height = getHeight();
+        event.commit();
+        Metrics.RESIZE.record(System.nanoTime() - start);
     }
 }
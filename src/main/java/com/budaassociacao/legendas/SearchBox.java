@@ -0,0 +1,267 @@
+package com.budaassociacao.legendas;
+
+import javax.swing.AbstractListModel;
+import javax.swing.BorderFactory;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPopupMenu;
+import javax.swing.JScrollPane;
+import javax.swing.JTextField;
+import javax.swing.ListSelectionModel;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.Font;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.Locale;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+
+/**
+ * Search field with a drop-down of matching legendas
+ *
+ * Every keystroke searches the {@link SearchIndex} of the loaded file; the
+ * drop-down lists the hits in document order, first line only, and only
+ * the rows on screen are materialized from the store. Up/Down pick a hit,
+ * Enter or a click jumps to it, Escape gives the keys back to navigation.
+ */
+final class SearchBox extends JTextField {
+
+    private static final int MAX_RESULTS = 500;
+    private static final int SNIPPET_CHARS = 80;
+
+    private final IntConsumer jumpTo;
+    private final Runnable done;
+    private final HitModel model = new HitModel();
+    private final JList<Integer> list = new JList<>(model);
+    private final JLabel summary = new JLabel();
+    private final JPopupMenu popup = new JPopupMenu();
+
+    private SearchIndex index = SearchIndex.EMPTY;
+    private boolean indexing;
+    private int currentIndex;
+
+    /**
+     * @param fontForScripts font for a set of SCRIPT_* flags, so Tibetan and Chinese hits display
+     * @param jumpTo shows the legenda at an index
+     * @param done called when the search is left, to move the focus back
+     */
+    SearchBox(int columns, IntFunction<Font> fontForScripts, IntConsumer jumpTo, Runnable done) {
+        super(columns);
+        this.jumpTo = jumpTo;
+        this.done = done;
+        setToolTipText("Buscar legendas (Ctrl+F)");
+
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        list.setFocusable(false);
+        list.setVisibleRowCount(8);
+        list.setFixedCellWidth(360);
+        list.setFixedCellHeight(22);
+        list.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> l, Object value, int row,
+                                                          boolean selected, boolean focused) {
+                int legenda = (Integer) value;
+                LegendaStore store = index.store();
+                super.getListCellRendererComponent(l, snippet(store, legenda), row, selected, focused);
+                if (legenda < store.size()) {
+                    setFont(fontForScripts.apply(store.scripts(legenda)).deriveFont(13f));
+                }
+                return this;
+            }
+        });
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int row = list.locationToIndex(e.getPoint());
+                if (row >= 0) {
+                    list.setSelectedIndex(row);
+                    jumpToSelected();
+                }
+            }
+        });
+
+        JScrollPane scroll = new JScrollPane(list);
+        scroll.setBorder(BorderFactory.createEmptyBorder());
+        summary.setBorder(BorderFactory.createEmptyBorder(2, 6, 2, 6));
+        summary.setFont(summary.getFont().deriveFont(Font.PLAIN, 11f));
+        popup.setLayout(new BorderLayout());
+        popup.add(summary, BorderLayout.NORTH);
+        popup.add(scroll, BorderLayout.CENTER);
+        popup.setFocusable(false);
+
+        getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                search();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                search();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+
+        addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                switch (e.getKeyCode()) {
+                    case KeyEvent.VK_DOWN:
+                        moveSelection(1);
+                        e.consume();
+                        break;
+                    case KeyEvent.VK_UP:
+                        moveSelection(-1);
+                        e.consume();
+                        break;
+                    case KeyEvent.VK_ENTER:
+                        jumpToSelected();
+                        e.consume();
+                        break;
+                    case KeyEvent.VK_ESCAPE:
+                        popup.setVisible(false);
+                        done.run();
+                        e.consume();
+                        break;
+                }
+            }
+        });
+    }
+
+    /**
+     * A new file started loading; searches wait for its index
+     */
+    void indexing() {
+        index = SearchIndex.EMPTY;
+        indexing = true;
+        search();
+    }
+
+    /**
+     * The index of the loaded file is ready
+     */
+    void setIndex(SearchIndex index) {
+        this.index = index;
+        indexing = false;
+        search();
+    }
+
+    /**
+     * Index searched, or {@link SearchIndex#EMPTY} while indexing
+     */
+    SearchIndex index() {
+        return index;
+    }
+
+    /**
+     * Legenda on screen, so the first hit selected is the next one from there
+     */
+    void setCurrentIndex(int currentIndex) {
+        this.currentIndex = currentIndex;
+    }
+
+    private void search() {
+        String query = getText();
+        if (query.isBlank() || !isFocusOwner()) {
+            popup.setVisible(false);
+            return;
+        }
+
+        SearchIndex.Result result = indexing ? SearchIndex.Result.NONE : index.search(query, MAX_RESULTS);
+        model.setHits(result.hits);
+        if (indexing) {
+            summary.setText("Indexando legendas...");
+        } else if (result.count == 0) {
+            summary.setText("Nenhuma legenda encontrada");
+        } else {
+            summary.setText(String.format(Locale.ROOT, "%d%s legenda%s", result.count,
+                result.complete ? "" : "+", result.count == 1 ? "" : "s"));
+        }
+
+        int selected = 0;
+        while (selected < result.hits.length - 1 && result.hits[selected] < currentIndex) {
+            selected++;
+        }
+        if (result.hits.length > 0) {
+            list.setSelectedIndex(selected);
+            list.ensureIndexIsVisible(selected);
+        }
+
+        popup.pack();
+        if (!popup.isVisible()) {
+            popup.show(this, 0, getHeight());
+        }
+    }
+
+    private void moveSelection(int delta) {
+        if (model.getSize() == 0) {
+            return;
+        }
+        int row = Math.max(0, Math.min(model.getSize() - 1, list.getSelectedIndex() + delta));
+        list.setSelectedIndex(row);
+        list.ensureIndexIsVisible(row);
+    }
+
+    private void jumpToSelected() {
+        int row = list.getSelectedIndex();
+        if (row < 0) {
+            return;
+        }
+        popup.setVisible(false);
+        jumpTo.accept(model.getElementAt(row));
+        done.run();
+    }
+
+    /**
+     * First line of a legenda, shortened; read from the store only when the row is painted
+     */
+    private static String snippet(LegendaStore store, int legenda) {
+        if (legenda >= store.size()) {
+            return "";
+        }
+        String text = store.get(legenda);
+        int end = text.indexOf('\n');
+        String line = end >= 0 ? text.substring(0, end) + " ..." : text;
+        if (line.length() > SNIPPET_CHARS) {
+            line = line.substring(0, SNIPPET_CHARS) + "...";
+        }
+        return (legenda + 1) + "   " + line;
+    }
+
+    /**
+     * Hits of the last search, as legenda indexes
+     */
+    private static final class HitModel extends AbstractListModel<Integer> {
+        private int[] hits = new int[0];
+
+        void setHits(int[] hits) {
+            int previous = this.hits.length;
+            this.hits = hits;
+            if (previous > 0) {
+                fireIntervalRemoved(this, 0, previous - 1);
+            }
+            if (hits.length > 0) {
+                fireIntervalAdded(this, 0, hits.length - 1);
+            }
+        }
+
+        @Override
+        public int getSize() {
+            return hits.length;
+        }
+
+        @Override
+        public Integer getElementAt(int row) {
+            return hits[row];
+        }
+    }
+}
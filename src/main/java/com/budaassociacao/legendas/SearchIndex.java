@@ -0,0 +1,390 @@
+package com.budaassociacao.legendas;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Full-text index over the legendas of a {@link LegendaStore}
+ *
+ * Portuguese, and any other text with spaces between words, is indexed by
+ * word, folded to lower case without accents, so "acao" finds "Ação".
+ * Tibetan and Chinese have no spaces between words, so runs of those
+ * characters are indexed by character n-grams of one to three characters.
+ * A query is split the same way and every term must match. The last word
+ * also matches as a prefix, so results follow the typing. A Tibetan or
+ * Chinese run longer than three characters is looked up by its trigrams and
+ * then checked against the text, since the trigrams alone do not prove they
+ * are adjacent.
+ *
+ * Terms are kept sorted in one array, with their posting lists (legenda
+ * indexes, ascending) packed into a single int array. A query ORs the
+ * postings of its rarest term into a bitset, then narrows it by each other
+ * term, cheapest first: by ANDing their postings in, or once few legendas
+ * are left, by looking each of them up in the posting list.
+ * Built once per file on a background thread; searched on the EDT.
+ */
+final class SearchIndex {
+
+    // Tibetan and Chinese runs are indexed by 1- to 3-character n-grams
+    private static final int MAX_GRAM = 3;
+
+    // Latin letters folded to lower case without accents, built from the Unicode decomposition
+    private static final char[] FOLD = new char[0x250];
+
+    static {
+        for (char c = 0; c < FOLD.length; c++) {
+            String decomposed = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+            FOLD[c] = Character.toLowerCase(decomposed.charAt(0));
+        }
+    }
+
+    static final SearchIndex EMPTY = build(LegendaStore.EMPTY);
+
+    private final LegendaStore store;
+    private final String[] terms;
+    private final int[] postingStarts;
+    private final int[] postings;
+
+    // Scratch bitsets for search(); only used on the EDT
+    private final long[] matches;
+    private final long[] clause;
+
+    private SearchIndex(LegendaStore store, String[] terms, int[] postingStarts, int[] postings) {
+        this.store = store;
+        this.terms = terms;
+        this.postingStarts = postingStarts;
+        this.postings = postings;
+        int words = (store.size() + 63) >>> 6;
+        this.matches = new long[words];
+        this.clause = new long[words];
+    }
+
+    /**
+     * Index every legenda of the store
+     */
+    static SearchIndex build(LegendaStore store) {
+        Map<String, Postings> map = new HashMap<>();
+        List<String> words = new ArrayList<>();
+        List<String> runs = new ArrayList<>();
+
+        for (int i = 0; i < store.size(); i++) {
+            words.clear();
+            runs.clear();
+            split(store.get(i), words, runs);
+            for (String word : words) {
+                add(map, word, i);
+            }
+            for (String run : runs) {
+                int[] starts = codePointStarts(run);
+                for (int c = 0; c < starts.length - 1; c++) {
+                    for (int n = 1; n <= MAX_GRAM && c + n < starts.length; n++) {
+                        add(map, run.substring(starts[c], starts[c + n]), i);
+                    }
+                }
+            }
+        }
+
+        String[] terms = map.keySet().toArray(new String[0]);
+        Arrays.sort(terms);
+        int[] starts = new int[terms.length + 1];
+        int total = 0;
+        for (int t = 0; t < terms.length; t++) {
+            starts[t] = total;
+            total += map.get(terms[t]).size;
+        }
+        starts[terms.length] = total;
+
+        int[] postings = new int[total];
+        for (int t = 0; t < terms.length; t++) {
+            Postings list = map.get(terms[t]);
+            System.arraycopy(list.indexes, 0, postings, starts[t], list.size);
+        }
+        return new SearchIndex(store, terms, starts, postings);
+    }
+
+    /**
+     * Offset of each code point, plus the length at the end
+     */
+    private static int[] codePointStarts(String run) {
+        int[] starts = new int[run.codePointCount(0, run.length()) + 1];
+        int offset = 0;
+        for (int c = 0; c < starts.length; c++) {
+            starts[c] = offset;
+            if (offset < run.length()) {
+                offset += Character.charCount(run.codePointAt(offset));
+            }
+        }
+        return starts;
+    }
+
+    private static void add(Map<String, Postings> map, String term, int index) {
+        map.computeIfAbsent(term, t -> new Postings()).add(index);
+    }
+
+    LegendaStore store() {
+        return store;
+    }
+
+    /**
+     * Approximate heap used by the index, not counting the store
+     */
+    long retainedBytes() {
+        // Each term is a String object plus its bytes, counted as UTF-16 to stay on the safe side
+        long bytes = 64 + 16L * 5 + terms.length * 4L + postingStarts.length * 4L + postings.length * 4L
+            + (matches.length + clause.length) * 8L;
+        for (String term : terms) {
+            bytes += 40 + term.length() * 2L;
+        }
+        return bytes;
+    }
+
+    /**
+     * Number of distinct terms, for the log
+     */
+    int termCount() {
+        return terms.length;
+    }
+
+    /**
+     * Legendas matching every term of the query
+     *
+     * @param limit most hits to return
+     */
+    Result search(String query, int limit) {
+        List<String> words = new ArrayList<>();
+        List<String> runs = new ArrayList<>();
+        split(query, words, runs);
+        if (words.isEmpty() && runs.isEmpty()) {
+            return Result.NONE;
+        }
+
+        // Each clause is a range [from, to) of terms, one of which a legenda must contain
+        List<int[]> clauses = new ArrayList<>();
+
+        // The last word is still being typed unless the query ends with a separator
+        boolean lastIsPrefix = !words.isEmpty() && isWordChar(query.charAt(query.length() - 1));
+        for (int w = 0; w < words.size(); w++) {
+            String word = words.get(w);
+            int from = lowerBound(word);
+            int to = lastIsPrefix && w == words.size() - 1 ? lowerBound(word + Character.MAX_VALUE) : exactEnd(word, from);
+            clauses.add(new int[]{from, to});
+        }
+
+        List<String> verify = new ArrayList<>();
+        for (String run : runs) {
+            // Up to MAX_GRAM characters are one term; longer runs need all their n-grams
+            int[] starts = codePointStarts(run);
+            int n = Math.min(MAX_GRAM, starts.length - 1);
+            for (int c = 0; c + n < starts.length; c++) {
+                String term = run.substring(starts[c], starts[c + n]);
+                int from = lowerBound(term);
+                clauses.add(new int[]{from, exactEnd(term, from)});
+            }
+            if (starts.length - 1 > MAX_GRAM) {
+                verify.add(run);
+            }
+        }
+
+        // Cheapest first: once few legendas are left, the rest are probed instead of scanned
+        clauses.sort((a, b) -> Integer.compare(postingCount(a), postingCount(b)));
+        int candidates = store.size();
+        boolean first = true;
+        for (int[] range : clauses) {
+            candidates = first ? fill(range[0], range[1]) : intersect(range[0], range[1], candidates);
+            first = false;
+            if (candidates == 0) {
+                return Result.NONE;
+            }
+        }
+
+        int[] hits = new int[Math.min(limit, candidates)];
+        int found = 0;
+        for (int w = 0; w < matches.length && found < hits.length; w++) {
+            long bits = matches[w];
+            while (bits != 0 && found < hits.length) {
+                int index = (w << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                if (containsAll(index, verify)) {
+                    hits[found++] = index;
+                }
+            }
+        }
+        // With runs to verify, the candidates not reached are only probable matches
+        return new Result(Arrays.copyOf(hits, found), verify.isEmpty() ? candidates : found,
+            verify.isEmpty() || found < hits.length);
+    }
+
+    private int postingCount(int[] range) {
+        return postingStarts[range[1]] - postingStarts[range[0]];
+    }
+
+    /**
+     * Set the matches to the union of the postings of terms [from, to)
+     *
+     * @return how many legendas match
+     */
+    private int fill(int from, int to) {
+        Arrays.fill(matches, 0L);
+        orPostings(matches, from, to);
+        return bitCount(matches);
+    }
+
+    /**
+     * AND the union of the postings of terms [from, to) into the matches
+     *
+     * @return how many legendas still match
+     */
+    private int intersect(int from, int to, int candidates) {
+        if (from >= to) {
+            return 0;
+        }
+
+        int start = postingStarts[from];
+        int end = postingStarts[to];
+        if (to - from == 1 && candidates * 16L < end - start) {
+            // Few candidates, long posting list: look each candidate up
+            int remaining = 0;
+            for (int w = 0; w < matches.length; w++) {
+                long bits = matches[w];
+                while (bits != 0) {
+                    long bit = bits & -bits;
+                    bits ^= bit;
+                    int index = (w << 6) + Long.numberOfTrailingZeros(bit);
+                    if (Arrays.binarySearch(postings, start, end, index) < 0) {
+                        matches[w] &= ~bit;
+                    } else {
+                        remaining++;
+                    }
+                }
+            }
+            return remaining;
+        }
+
+        Arrays.fill(clause, 0L);
+        orPostings(clause, from, to);
+        for (int w = 0; w < matches.length; w++) {
+            matches[w] &= clause[w];
+        }
+        return bitCount(matches);
+    }
+
+    private void orPostings(long[] bits, int from, int to) {
+        for (int p = postingStarts[from]; p < postingStarts[to]; p++) {
+            int index = postings[p];
+            bits[index >>> 6] |= 1L << index;
+        }
+    }
+
+    private static int bitCount(long[] bits) {
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    private int exactEnd(String term, int from) {
+        return from < terms.length && terms[from].equals(term) ? from + 1 : from;
+    }
+
+    private int lowerBound(String term) {
+        int position = Arrays.binarySearch(terms, term);
+        return position >= 0 ? position : -position - 1;
+    }
+
+    private boolean containsAll(int index, List<String> runs) {
+        for (String run : runs) {
+            if (!store.contains(index, run)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Split text into folded words and runs of Tibetan or Chinese characters
+     */
+    static void split(CharSequence text, List<String> words, List<String> runs) {
+        StringBuilder word = new StringBuilder();
+        StringBuilder run = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (isRunChar(c)) {
+                flush(word, words);
+                run.append(c);
+            } else if (isWordChar(c)) {
+                flush(run, runs);
+                word.append(c < FOLD.length ? FOLD[c] : Character.toLowerCase(c));
+            } else if (Character.getType(c) != Character.NON_SPACING_MARK || word.length() == 0) {
+                // Combining accents inside a word are dropped; anything else separates
+                flush(word, words);
+                flush(run, runs);
+            }
+        }
+        flush(word, words);
+        flush(run, runs);
+    }
+
+    private static void flush(StringBuilder buffer, List<String> into) {
+        if (buffer.length() > 0) {
+            into.add(buffer.toString());
+            buffer.setLength(0);
+        }
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) && !isRunChar(c);
+    }
+
+    /**
+     * Tibetan letters, vowel signs and the tsheg between syllables, and CJK
+     * ideographs (with surrogates, for the supplementary ones); shad and
+     * other punctuation separate runs
+     */
+    private static boolean isRunChar(char c) {
+        return (c >= 0x0F40 && c <= 0x0FBC) || c == 0x0F0B
+            || (c >= 0x3400 && c <= 0x9FFF) || (c >= 0xF900 && c <= 0xFAFF)
+            || Character.isSurrogate(c);
+    }
+
+    /**
+     * Hits in document order, at most the limit passed to {@link #search}
+     */
+    static final class Result {
+        static final Result NONE = new Result(new int[0], 0, true);
+
+        final int[] hits;
+        /** Matching legendas, which may be more than hits.length */
+        final int count;
+        /** False if there may be more matches than count */
+        final boolean complete;
+
+        Result(int[] hits, int count, boolean complete) {
+            this.hits = hits;
+            this.count = count;
+            this.complete = complete;
+        }
+    }
+
+    /**
+     * Growable posting list; each legenda is added at most once per term
+     */
+    private static final class Postings {
+        int[] indexes = new int[4];
+        int size;
+
+        void add(int index) {
+            if (size > 0 && indexes[size - 1] == index) {
+                return;
+            }
+            if (size == indexes.length) {
+                indexes = Arrays.copyOf(indexes, size * 2);
+            }
+            indexes[size++] = index;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.budaassociacao.legendas;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Documents opened in this session, so switching back to one is instant
+ *
+ * Each document keeps the legenda it was left on. Its parsed legendas,
+ * search index and timeline are kept in memory too: strongly while the
+ * total stays under the heap budget (-Dlegendas.library.maxMB, by default
+ * a quarter of the maximum heap, at most 256 MB), least recently used
+ * first out. A document pushed out of the budget is still held through a
+ * {@link SoftReference}, so it survives until the garbage collector
+ * actually needs the memory. Only the EDT uses the library.
+ */
+final class SessionLibrary {
+
+    /** Documents remembered at all, parsed or not */
+    private static final int MAX_DOCUMENTS = 12;
+
+    private final long budgetBytes;
+    // Access order: least recently used first
+    private final LinkedHashMap<File, Document> documents = new LinkedHashMap<>(16, 0.75f, true);
+
+    SessionLibrary() {
+        this(Long.getLong("legendas.library.maxMB",
+            Math.min(256, Runtime.getRuntime().maxMemory() / 4 / (1024 * 1024))) * 1024 * 1024);
+    }
+
+    SessionLibrary(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * A document remembered by the library
+     */
+    static final class Document {
+        final File file;
+        int position;
+        private long size;
+        private long modified;
+        private Parsed strong;
+        private SoftReference<Parsed> soft;
+        private long bytes;
+
+        Document(File file) {
+            this.file = file;
+        }
+
+        String name() {
+            return file.getName();
+        }
+
+        /**
+         * Whether its legendas are still in memory
+         */
+        boolean isLoaded() {
+            return parsed() != null;
+        }
+
+        Parsed parsed() {
+            if (strong != null) {
+                return strong;
+            }
+            return soft != null ? soft.get() : null;
+        }
+
+        @Override
+        public String toString() {
+            return name();
+        }
+    }
+
+    /**
+     * What the viewer needs to show a document without reading it again
+     */
+    static final class Parsed {
+        final LegendaStore store;
+        final SearchIndex index;
+        final CaptionTimeline timeline;
+
+        Parsed(LegendaStore store, SearchIndex index, CaptionTimeline timeline) {
+            this.store = store;
+            this.index = index;
+            this.timeline = timeline;
+        }
+
+        long retainedBytes() {
+            return store.retainedBytes() + (index != null ? index.retainedBytes() : 0);
+        }
+    }
+
+    /**
+     * Remember a document as it is left or loaded: its legendas and where the viewer is
+     *
+     * @param index search index of the store, or null if it is not built yet
+     */
+    void put(File file, LegendaStore store, SearchIndex index, CaptionTimeline timeline, int position) {
+        Document document = documents.computeIfAbsent(file, Document::new);
+        document.position = position;
+        Parsed previous = document.parsed();
+        if (index == null || index.store() != store) {
+            // Keep an index built earlier for the same legendas
+            index = previous != null && previous.store == store ? previous.index : null;
+        }
+        Parsed parsed = new Parsed(store, index, timeline);
+        document.strong = parsed;
+        document.soft = null;
+        document.bytes = parsed.retainedBytes();
+        if (previous == null || previous.store != store) {
+            // Freshly read: these legendas match the file as it is now
+            stamp(document);
+        }
+
+        // Forget the least recently used documents beyond the list size
+        Iterator<Document> oldest = documents.values().iterator();
+        while (documents.size() > MAX_DOCUMENTS) {
+            oldest.next();
+            oldest.remove();
+        }
+        trim();
+    }
+
+    /**
+     * The document, marked as most recently used; null if it was never opened
+     */
+    Document get(File file) {
+        return documents.get(file);
+    }
+
+    /**
+     * Whether the file was saved since its legendas were kept
+     */
+    boolean isStale(Document document) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(document.file.toPath(), BasicFileAttributes.class);
+            return attributes.size() != document.size || attributes.lastModifiedTime().toMillis() != document.modified;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Documents, most recently used first
+     */
+    List<Document> recent() {
+        List<Document> recent = new ArrayList<>(documents.values());
+        Collections.reverse(recent);
+        return recent;
+    }
+
+    /**
+     * Bytes held strongly, for the log
+     */
+    long strongBytes() {
+        long total = 0;
+        for (Document document : documents.values()) {
+            if (document.strong != null) {
+                total += document.bytes;
+            }
+        }
+        return total;
+    }
+
+    private static void stamp(Document document) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(document.file.toPath(), BasicFileAttributes.class);
+            document.size = attributes.size();
+            document.modified = attributes.lastModifiedTime().toMillis();
+        } catch (IOException e) {
+            document.size = -1;
+        }
+    }
+
+    /**
+     * Demote least recently used documents to soft references until the rest fits the budget;
+     * the most recent one, on screen, always stays
+     */
+    private void trim() {
+        long total = strongBytes();
+        int remaining = documents.size();
+        for (Map.Entry<File, Document> entry : documents.entrySet()) {
+            if (total <= budgetBytes || --remaining == 0) {
+                break;
+            }
+            Document document = entry.getValue();
+            if (document.strong != null) {
+                document.soft = new SoftReference<>(document.strong);
+                document.strong = null;
+                total -= document.bytes;
+                System.out.println("[SessionLibrary] " + document.name() + " (" + document.bytes / 1024
+                    + " KB) now softly held; " + total / 1024 + " KB of " + budgetBytes / 1024 + " KB in use");
+            }
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.budaassociacao.legendas;
+
+import com.budaassociacao.legendas.diagnostics.Metrics;
+
+import javax.imageio.ImageIO;
+import javax.swing.SwingUtilities;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Startup sequence and its milestones
+ *
+ * The window is built first. The icon is decoded and scaled on a
+ * background thread, and once the window shows the configured parser is
+ * warmed up on a tiny in-memory document, so the first real file does not
+ * pay for loading the XML classes. The milestones (JVM start to main, main
+ * to first paint, and for the first file opened the time to its first
+ * caption and to the end of the load) are logged and shown in the
+ * diagnostics dialog.
+ *
+ * -Dlegendas.training=&lt;file.docx&gt; opens that file, shows it and exits;
+ * the build scripts use it to record the class-data-sharing archive.
+ */
+final class Startup {
+
+    static final String TRAINING_PROPERTY = "legendas.training";
+
+    private static final String ICON_PATH = "/icons/BUDA.png";
+    private static final int[] ICON_SIZES = {16, 32, 48, 64, 128, 256};
+
+    private static CompletableFuture<List<Image>> icons;
+
+    private static long mainNanos;
+    private static long jvmToMainNanos = -1;
+
+    // Only touched on the EDT
+    private static boolean painted;
+    private static long firstOpenStart;
+    private static boolean firstOpenShown;
+    private static boolean firstOpenDone;
+
+    private Startup() {
+    }
+
+    /**
+     * Called first thing in main
+     */
+    static void mainEntered() {
+        mainNanos = System.nanoTime();
+        long nowMillis = System.currentTimeMillis();
+        jvmToMainNanos = ProcessHandle.current().info().startInstant()
+            .map(start -> (nowMillis - start.toEpochMilli()) * 1_000_000L)
+            .orElse(-1L);
+    }
+
+    static boolean isTraining() {
+        return System.getProperty(TRAINING_PROPERTY) != null;
+    }
+
+    /**
+     * Window icons in several sizes, decoded and scaled off the EDT;
+     * the first call starts the work
+     */
+    static synchronized CompletableFuture<List<Image>> icons() {
+        if (icons == null) {
+            icons = loadIcons();
+        }
+        return icons;
+    }
+
+    private static CompletableFuture<List<Image>> loadIcons() {
+        return CompletableFuture.supplyAsync(() -> {
+            URL url = Startup.class.getResource(ICON_PATH);
+            if (url == null) {
+                return List.of();
+            }
+            try {
+                BufferedImage full = ImageIO.read(url);
+                List<Image> icons = new ArrayList<>(ICON_SIZES.length);
+                for (int size : ICON_SIZES) {
+                    icons.add(scaled(full, size));
+                }
+                return icons;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Halve the image until close to the size, then scale the last step;
+     * one big bilinear step would skip most of the pixels
+     */
+    private static BufferedImage scaled(BufferedImage image, int size) {
+        BufferedImage current = image;
+        while (current.getWidth() / 2 >= size && current.getHeight() / 2 >= size) {
+            current = draw(current, current.getWidth() / 2, current.getHeight() / 2);
+        }
+        return current.getWidth() == size && current.getHeight() == size ? current : draw(current, size, size);
+    }
+
+    private static BufferedImage draw(BufferedImage source, int width, int height) {
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    /**
+     * Load the parser's classes in the background, at low priority
+     */
+    static void warmUpParser() {
+        Thread thread = new Thread(() -> {
+            long start = System.nanoTime();
+            try {
+                LegendaParser.create().warmUp();
+                System.out.println("[Startup] Parser warmed up in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+            } catch (Exception e) {
+                System.err.println("[Startup] Parser warm-up failed: " + e.getMessage());
+            }
+        }, "parser-warmup");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * The window painted something; the first time is the startup milestone
+     */
+    static void painted() {
+        if (painted) {
+            return;
+        }
+        painted = true;
+        long mainToPaint = System.nanoTime() - mainNanos;
+        Metrics.recordStartup(jvmToMainNanos, mainToPaint);
+        System.out.println("[Startup] First paint " + mainToPaint / 1_000_000 + " ms after main"
+            + (jvmToMainNanos >= 0 ? ", " + (jvmToMainNanos + mainToPaint) / 1_000_000 + " ms after JVM start" : ""));
+    }
+
+    /**
+     * A file starts loading; only the first one of the run is measured
+     */
+    static void fileOpening() {
+        if (firstOpenStart == 0) {
+            firstOpenStart = System.nanoTime();
+        }
+    }
+
+    /**
+     * A caption was painted
+     */
+    static void captionPainted() {
+        if (firstOpenStart != 0 && !firstOpenShown) {
+            firstOpenShown = true;
+            long nanos = System.nanoTime() - firstOpenStart;
+            Metrics.recordFirstCaption(nanos);
+            System.out.println("[Startup] First caption of the first file after " + nanos / 1_000_000 + " ms");
+        }
+    }
+
+    /**
+     * A load finished (or failed)
+     */
+    static void fileLoaded() {
+        if (firstOpenStart != 0 && !firstOpenDone) {
+            firstOpenDone = true;
+            long nanos = System.nanoTime() - firstOpenStart;
+            Metrics.recordFirstLoad(nanos);
+            System.out.println("[Startup] First file loaded after " + nanos / 1_000_000 + " ms");
+
+            if (isTraining()) {
+                // Queued behind the repaint of the first legenda
+                SwingUtilities.invokeLater(Startup::finishTraining);
+            }
+        }
+    }
+
+    /**
+     * In a training run, open the training file once the window shows
+     */
+    static void startTraining(LegendasApp app) {
+        File file = new File(System.getProperty(TRAINING_PROPERTY));
+        System.out.println("[Startup] Training run with " + file + " at " + Instant.now());
+        app.loadLegendas(file);
+    }
+
+    /**
+     * Leave once the file is shown, so the JVM writes the archive on exit
+     */
+    private static void finishTraining() {
+        System.out.println("[Startup] Training run finished");
+        System.exit(0);
+    }
+}
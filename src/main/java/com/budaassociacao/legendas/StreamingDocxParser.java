@@ -0,0 +1,278 @@
+package com.budaassociacao.legendas;
+
+import com.budaassociacao.legendas.diagnostics.DocxOpenEvent;
+import com.budaassociacao.legendas.diagnostics.Metrics;
+import com.budaassociacao.legendas.diagnostics.PackageReadEvent;
+import com.budaassociacao.legendas.diagnostics.ParagraphWalkEvent;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Streaming parser for DOCX files
+ *
+ * Reads the main document part straight out of the ZIP package with a StAX
+ * pull parser and emits legendas while walking the body paragraphs, without
+ * building the Apache POI document model. Paragraph text follows the same
+ * rules as {@code XWPFParagraph.getText()}: runs, tabs and line breaks are
+ * included, field codes, tracked deletions and text boxes are not, and only
+ * top-level body paragraphs count (tables are skipped, as in {@link DocxParser}).
+ */
+public class StreamingDocxParser implements LegendaParser {
+
+    private static final String WORDML_NS = "http://schemas.openxmlformats.org/wordprocessingml/2006/main";
+    private static final String RELATIONSHIPS_PART = "_rels/.rels";
+    private static final String OFFICE_DOCUMENT_TYPE = "/officeDocument";
+    private static final String DEFAULT_DOCUMENT_PART = "word/document.xml";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Bump when the text rules change, so cached legendas are read again
+     */
+    private static final int VERSION = 2;
+
+    // w:document > w:body > w:p
+    private static final int BODY_PARAGRAPH_DEPTH = 3;
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = createInputFactory();
+
+    @Override
+    public void parseLegendas(File file, Consumer<CharSequence> sink, IntConsumer progress) throws Exception {
+        long start = System.nanoTime();
+        DocxOpenEvent open = new DocxOpenEvent();
+        open.begin();
+        open.file = file.getName();
+        open.parser = "stax";
+        open.bytes = file.length();
+
+        try (ZipFile zip = new ZipFile(file)) {
+            PackageReadEvent read = new PackageReadEvent();
+            read.begin();
+            String partName = findMainDocumentPart(zip);
+            ZipEntry entry = zip.getEntry(partName);
+            if (entry == null) {
+                throw new IOException("Documento principal não encontrado: " + partName);
+            }
+            read.part = partName;
+            read.compressedBytes = entry.getCompressedSize();
+            read.uncompressedBytes = entry.getSize();
+            read.commit();
+
+            ParagraphWalkEvent walk = new ParagraphWalkEvent();
+            walk.begin();
+            InputStream entryStream = new ProgressInputStream(zip.getInputStream(entry), entry.getSize(), progress);
+            try (InputStream in = new BufferedInputStream(entryStream, BUFFER_SIZE)) {
+                LegendaSplitter splitter = new LegendaSplitter(sink);
+                walkBody(in, splitter);
+                splitter.finish();
+
+                walk.paragraphs = splitter.paragraphs();
+                walk.legendas = splitter.legendas();
+                walk.chars = splitter.chars();
+                walk.commit();
+                open.legendas = splitter.legendas();
+                open.succeeded = true;
+                Metrics.recordParse(file, "stax", splitter.paragraphs(), splitter.legendas(),
+                    System.nanoTime() - start);
+            }
+        } finally {
+            open.commit();
+        }
+    }
+
+    @Override
+    public String cacheId() {
+        return "stax-" + VERSION;
+    }
+
+    @Override
+    public void warmUp() throws Exception {
+        String xml = "<w:document xmlns:w=\"" + WORDML_NS + "\"><w:body>"
+            + "<w:p><w:r><w:t>Primeira</w:t><w:tab/><w:t>legenda</w:t></w:r></w:p><w:p/>"
+            + "<w:p><w:r><w:t>Segunda</w:t><w:br/><w:t>legenda</w:t></w:r></w:p>"
+            + "</w:body></w:document>";
+        LegendaStore.Builder builder = LegendaStore.builder();
+        LegendaSplitter splitter = new LegendaSplitter(builder::append);
+        walkBody(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), splitter);
+        splitter.finish();
+        builder.build();
+    }
+
+    /**
+     * Walk the document body and feed each top-level paragraph to the splitter
+     */
+    private void walkBody(InputStream in, LegendaSplitter splitter) throws XMLStreamException {
+        XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+        try {
+            StringBuilder paragraph = new StringBuilder();
+            int depth = 0;
+            int paragraphDepth = -1;
+            int skipDepth = -1;
+            boolean inText = false;
+
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        depth++;
+                        if (skipDepth >= 0 || !WORDML_NS.equals(reader.getNamespaceURI())) {
+                            break;
+                        }
+                        String localName = reader.getLocalName();
+                        if (paragraphDepth < 0) {
+                            if (depth == BODY_PARAGRAPH_DEPTH && "p".equals(localName)) {
+                                paragraphDepth = depth;
+                                paragraph.setLength(0);
+                            }
+                            break;
+                        }
+                        switch (localName) {
+                            case "t":
+                                // Not w:delText: tracked deletions are not part of the text, as in POI
+                                inText = true;
+                                break;
+                            case "tab":
+                            case "ptab":
+                                paragraph.append('\t');
+                                break;
+                            case "br":
+                            case "cr":
+                                paragraph.append('\n');
+                                break;
+                            case "noBreakHyphen":
+                                paragraph.append('‑');
+                                break;
+                            case "pPr":
+                            case "txbxContent":
+                                // Paragraph properties hold tab stops, text boxes are separate stories
+                                skipDepth = depth;
+                                break;
+                            default:
+                                break;
+                        }
+                        break;
+
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        if (inText) {
+                            paragraph.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        }
+                        break;
+
+                    case XMLStreamConstants.END_ELEMENT:
+                        if (skipDepth == depth) {
+                            skipDepth = -1;
+                        } else if (depth == paragraphDepth) {
+                            splitter.paragraph(paragraph);
+                            paragraphDepth = -1;
+                        }
+                        inText = false;
+                        depth--;
+                        break;
+
+                    default:
+                        break;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Resolve the main document part from the package relationships,
+     * falling back to the conventional location
+     */
+    private String findMainDocumentPart(ZipFile zip) throws IOException, XMLStreamException {
+        ZipEntry rels = zip.getEntry(RELATIONSHIPS_PART);
+        if (rels == null) {
+            return DEFAULT_DOCUMENT_PART;
+        }
+
+        try (InputStream in = zip.getInputStream(rels)) {
+            XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT
+                            && "Relationship".equals(reader.getLocalName())) {
+                        String type = reader.getAttributeValue(null, "Type");
+                        String target = reader.getAttributeValue(null, "Target");
+                        if (type != null && target != null && type.endsWith(OFFICE_DOCUMENT_TYPE)) {
+                            return target.startsWith("/") ? target.substring(1) : target;
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+
+        return DEFAULT_DOCUMENT_PART;
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        return factory;
+    }
+
+    /**
+     * Reports how much of a stream has been read; also used by {@link SubtitleParser}
+     */
+    static final class ProgressInputStream extends FilterInputStream {
+        private final long total;
+        private final IntConsumer progress;
+        private long read;
+        private int lastPercent = -1;
+
+        ProgressInputStream(InputStream in, long total, IntConsumer progress) {
+            super(in);
+            this.total = total;
+            this.progress = progress;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                advance(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                advance(n);
+            }
+            return n;
+        }
+
+        private void advance(int n) {
+            read += n;
+            if (total > 0) {
+                int percent = (int) Math.min(100, read * 100 / total);
+                if (percent != lastPercent) {
+                    lastPercent = percent;
+                    progress.accept(percent);
+                }
+            }
+        }
+    }
+}
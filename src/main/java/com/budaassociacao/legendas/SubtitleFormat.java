@@ -0,0 +1,118 @@
+package com.budaassociacao.legendas;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Output formats for exported legendas
+ */
+public enum SubtitleFormat {
+
+    SRT("srt") {
+        @Override
+        void writeCue(Writer out, int number, long startMillis, long endMillis, CharSequence text) throws IOException {
+            out.write(Integer.toString(number));
+            out.write('\n');
+            writeTime(out, startMillis, ',');
+            out.write(" --> ");
+            writeTime(out, endMillis, ',');
+            out.write('\n');
+            out.append(text);
+            out.write("\n\n");
+        }
+    },
+
+    VTT("vtt") {
+        @Override
+        void writeHeader(Writer out) throws IOException {
+            out.write("WEBVTT\n\n");
+        }
+
+        @Override
+        void writeCue(Writer out, int number, long startMillis, long endMillis, CharSequence text) throws IOException {
+            out.write(Integer.toString(number));
+            out.write('\n');
+            writeTime(out, startMillis, '.');
+            out.write(" --> ");
+            writeTime(out, endMillis, '.');
+            out.write('\n');
+            // Cue text is markup: escape it
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '&') {
+                    out.write("&amp;");
+                } else if (c == '<') {
+                    out.write("&lt;");
+                } else if (c == '>') {
+                    out.write("&gt;");
+                } else {
+                    out.write(c);
+                }
+            }
+            out.write("\n\n");
+        }
+    },
+
+    TXT("txt") {
+        @Override
+        void writeCue(Writer out, int number, long startMillis, long endMillis, CharSequence text) throws IOException {
+            out.write(Integer.toString(number));
+            out.write('\n');
+            out.append(text);
+            out.write("\n\n");
+        }
+    };
+
+    private final String extension;
+
+    SubtitleFormat(String extension) {
+        this.extension = extension;
+    }
+
+    public String extension() {
+        return extension;
+    }
+
+    void writeHeader(Writer out) throws IOException {
+        // No header by default
+    }
+
+    abstract void writeCue(Writer out, int number, long startMillis, long endMillis, CharSequence text)
+        throws IOException;
+
+    /**
+     * Parse a format name (srt, vtt or txt)
+     */
+    public static SubtitleFormat fromName(String name) {
+        for (SubtitleFormat format : values()) {
+            if (format.extension.equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Formato desconhecido: " + name + " (use srt, vtt ou txt)");
+    }
+
+    /**
+     * Write hh:mm:ss followed by the separator and milliseconds
+     */
+    private static void writeTime(Writer out, long millis, char separator) throws IOException {
+        long hours = millis / 3_600_000;
+        long minutes = (millis / 60_000) % 60;
+        long seconds = (millis / 1000) % 60;
+        writePadded(out, hours, 2);
+        out.write(':');
+        writePadded(out, minutes, 2);
+        out.write(':');
+        writePadded(out, seconds, 2);
+        out.write(separator);
+        writePadded(out, millis % 1000, 3);
+    }
+
+    private static void writePadded(Writer out, long value, int digits) throws IOException {
+        String text = Long.toString(value);
+        for (int i = text.length(); i < digits; i++) {
+            out.write('0');
+        }
+        out.write(text);
+    }
+}
@@ -0,0 +1,502 @@
+package com.budaassociacao.legendas;
+
+import com.budaassociacao.legendas.diagnostics.Metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Streaming parser for SRT and WebVTT files
+ *
+ * Each cue becomes one legenda, its lines joined with line breaks, and its
+ * start and end times go into primitive arrays that make up the
+ * {@link #timeline()}. The file is decoded in blocks into a char buffer
+ * and each line is scanned where it lies in that buffer; only a line cut
+ * by the end of a block is copied. Cue text is gathered in one reused
+ * buffer, so no String is created per line or per cue.
+ *
+ * Formatting is dropped: tags such as {@code <i>} or {@code <c.yellow>},
+ * SRT {@code {\an8}} overrides and WebVTT timestamps inside cues; the
+ * common character references are decoded. WebVTT headers and NOTE, STYLE
+ * and REGION blocks are skipped. Cue numbers are optional, and a cue that
+ * follows the previous one without a blank line in between is still
+ * recognized. Cues without text are left out.
+ */
+public class SubtitleParser implements LegendaParser {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Bump when the SRT/WebVTT parsing rules change, so cached legendas are read again
+     */
+    private static final int VERSION = 1;
+
+    private long[] starts = new long[0];
+    private long[] ends = new long[0];
+    private int cues;
+
+    @Override
+    public String cacheId() {
+        return "subtitle-" + VERSION;
+    }
+
+    /**
+     * Whether a file is SRT or WebVTT, by its extension
+     */
+    static boolean handles(File file) {
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        return name.endsWith(".srt") || name.endsWith(".vtt");
+    }
+
+    @Override
+    public void parseLegendas(File file, Consumer<CharSequence> sink, IntConsumer progress) throws IOException {
+        long start = System.nanoTime();
+        try (InputStream in = new StreamingDocxParser.ProgressInputStream(
+                Files.newInputStream(file.toPath()), file.length(), progress)) {
+            int lines = parse(new InputStreamReader(in, StandardCharsets.UTF_8), sink);
+            String format = file.getName().toLowerCase(Locale.ROOT).endsWith(".vtt") ? "vtt" : "srt";
+            Metrics.recordParse(file, format, lines, cues, System.nanoTime() - start);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(file.getName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void warmUp() throws Exception {
+        parse(new StringReader("1\r\n00:00:01,000 --> 00:00:02,500\r\n<i>Primeira</i>\r\nlegenda\r\n"),
+            legenda -> { });
+        parse(new StringReader("WEBVTT\n\nNOTE teste\n\n00:03.000 --> 00:04.000 line:0\nSegunda &amp; legenda\n"),
+            legenda -> { });
+    }
+
+    /**
+     * Start and end times of the cues read by the last parse
+     */
+    CaptionTimeline timeline() {
+        return new CaptionTimeline(Arrays.copyOf(starts, cues), Arrays.copyOf(ends, cues), cues);
+    }
+
+    /**
+     * Read cues from a reader; returns the number of lines read
+     */
+    int parse(Reader reader, Consumer<CharSequence> sink) throws IOException {
+        starts = new long[1024];
+        ends = new long[1024];
+        cues = 0;
+
+        char[] buffer = new char[BUFFER_SIZE];
+        // The start of a line that continues in the next block
+        char[] carry = new char[256];
+        int carried = 0;
+        Cue cue = new Cue(sink);
+        int lines = 0;
+        boolean first = true;
+        boolean skipLineFeed = false;
+
+        int n;
+        while ((n = reader.read(buffer)) > 0) {
+            int lineStart = 0;
+            if (first) {
+                first = false;
+                // Byte order mark
+                if (buffer[0] == '\uFEFF') {
+                    lineStart = 1;
+                }
+            }
+            if (skipLineFeed && lineStart < n && buffer[lineStart] == '\n') {
+                // Second half of a CRLF split across two blocks
+                lineStart++;
+            }
+            skipLineFeed = false;
+
+            for (int i = lineStart; i < n; i++) {
+                char c = buffer[i];
+                if (c != '\n' && c != '\r') {
+                    continue;
+                }
+                if (carried > 0) {
+                    carry = append(carry, carried, buffer, lineStart, i);
+                    cue.line(carry, 0, carried + i - lineStart);
+                    carried = 0;
+                } else {
+                    cue.line(buffer, lineStart, i);
+                }
+                lines++;
+                if (c == '\r') {
+                    if (i + 1 < n) {
+                        if (buffer[i + 1] == '\n') {
+                            i++;
+                        }
+                    } else {
+                        skipLineFeed = true;
+                    }
+                }
+                lineStart = i + 1;
+            }
+            if (lineStart < n) {
+                carry = append(carry, carried, buffer, lineStart, n);
+                carried += n - lineStart;
+            }
+        }
+        if (carried > 0) {
+            cue.line(carry, 0, carried);
+            lines++;
+        }
+        cue.finish();
+        return lines;
+    }
+
+    /**
+     * Copy chars after the first {@code length} of the carry, growing it if needed
+     */
+    private static char[] append(char[] carry, int length, char[] chars, int from, int to) {
+        if (length + to - from > carry.length) {
+            carry = Arrays.copyOf(carry, Math.max(carry.length * 2, length + to - from));
+        }
+        System.arraycopy(chars, from, carry, length, to - from);
+        return carry;
+    }
+
+    private void addTimes(long start, long end) {
+        if (cues == starts.length) {
+            starts = Arrays.copyOf(starts, cues * 2);
+            ends = Arrays.copyOf(ends, cues * 2);
+        }
+        starts[cues] = start;
+        ends[cues] = end;
+        cues++;
+    }
+
+    /**
+     * Line-by-line state of the cue being read
+     */
+    private final class Cue {
+        private static final int BETWEEN = 0;
+        private static final int HEADER = 1;
+        private static final int TEXT = 2;
+        private static final int SKIP = 3;
+
+        private final Consumer<CharSequence> sink;
+        private final StringBuilder text = new StringBuilder(256);
+        private int state = BETWEEN;
+        private boolean vtt;
+        private boolean firstLine = true;
+        private long start;
+        private long end;
+        // Where the last line of the text began, in case it turns out to be the next cue's number
+        private int lastLineStart;
+        private boolean lastLineNumeric;
+
+        Cue(Consumer<CharSequence> sink) {
+            this.sink = sink;
+        }
+
+        void line(char[] chars, int from, int to) {
+            if (firstLine) {
+                firstLine = false;
+                if (matches(chars, from, to, "WEBVTT")) {
+                    vtt = true;
+                    state = HEADER;
+                    return;
+                }
+            }
+
+            // Lines are compared and copied without their indentation
+            while (from < to && chars[from] <= ' ') {
+                from++;
+            }
+            boolean blank = from == to;
+            switch (state) {
+                case HEADER:
+                case SKIP:
+                    if (blank) {
+                        state = BETWEEN;
+                    }
+                    break;
+
+                case BETWEEN:
+                    if (blank) {
+                        break;
+                    }
+                    if (vtt && (matches(chars, from, to, "NOTE") || matches(chars, from, to, "STYLE")
+                            || matches(chars, from, to, "REGION"))) {
+                        state = SKIP;
+                    } else if (timing(chars, from, to, true)) {
+                        state = TEXT;
+                        text.setLength(0);
+                        lastLineNumeric = false;
+                    }
+                    // Anything else is a cue number or identifier
+                    break;
+
+                case TEXT:
+                    if (blank) {
+                        emit();
+                        state = BETWEEN;
+                        break;
+                    }
+                    long previousStart = start;
+                    long previousEnd = end;
+                    if (timing(chars, from, to, false)) {
+                        // No blank line before this cue: its number ended up in the text
+                        long nextStart = start;
+                        long nextEnd = end;
+                        if (lastLineNumeric) {
+                            text.setLength(Math.max(0, lastLineStart - 1));
+                        }
+                        start = previousStart;
+                        end = previousEnd;
+                        emit();
+                        start = nextStart;
+                        end = nextEnd;
+                    } else {
+                        appendLine(chars, from, to);
+                    }
+                    break;
+
+                default:
+                    break;
+            }
+        }
+
+        void finish() {
+            if (state == TEXT) {
+                emit();
+            }
+        }
+
+        private void emit() {
+            int length = text.length();
+            while (length > 0 && text.charAt(length - 1) <= ' ') {
+                length--;
+            }
+            text.setLength(length);
+            if (length > 0) {
+                addTimes(start, end);
+                sink.accept(text);
+            }
+            text.setLength(0);
+            lastLineNumeric = false;
+        }
+
+        /**
+         * Parse "start --> end [settings]" into start and end; false if the line is not a timing line
+         *
+         * @param strict whether a malformed time is an error rather than cue text
+         */
+        private boolean timing(char[] chars, int from, int to, boolean strict) {
+            int arrow = indexOfArrow(chars, from, to);
+            if (arrow < 0) {
+                return false;
+            }
+            long parsedStart;
+            long parsedEnd;
+            try {
+                parsedStart = parseTime(chars, from, arrow);
+                int endFrom = arrow + 3;
+                while (endFrom < to && chars[endFrom] <= ' ') {
+                    endFrom++;
+                }
+                int endTo = endFrom;
+                while (endTo < to && chars[endTo] > ' ') {
+                    endTo++;
+                }
+                parsedEnd = parseTime(chars, endFrom, endTo);
+            } catch (IllegalArgumentException e) {
+                if (strict) {
+                    throw e;
+                }
+                return false;
+            }
+            start = parsedStart;
+            end = Math.max(parsedStart, parsedEnd);
+            return true;
+        }
+
+        /**
+         * Append a line of cue text without markup; plain runs are copied in bulk
+         */
+        private void appendLine(char[] chars, int from, int to) {
+            if (text.length() > 0) {
+                text.append('\n');
+            }
+            lastLineStart = text.length();
+            boolean numeric = true;
+            int run = from;
+            for (int i = from; i < to; i++) {
+                char c = chars[i];
+                if (c > '}') {
+                    numeric = false;
+                    continue;
+                }
+                int skipTo = -1;
+                if (c == '<' && (vtt || isTagStart(chars, i, to))) {
+                    skipTo = indexOf(chars, '>', i + 1, to);
+                } else if (c == '{' && !vtt && i + 1 < to && chars[i + 1] == '\\') {
+                    skipTo = indexOf(chars, '}', i + 2, to);
+                } else if (c == '&') {
+                    text.append(chars, run, i - run);
+                    int length = appendEntity(chars, i, to);
+                    if (length > 0) {
+                        i += length - 1;
+                    } else {
+                        text.append('&');
+                    }
+                    run = i + 1;
+                    numeric = false;
+                    continue;
+                }
+                if (skipTo > 0) {
+                    text.append(chars, run, i - run);
+                    i = skipTo;
+                    run = i + 1;
+                } else {
+                    numeric &= c >= '0' && c <= '9';
+                }
+            }
+            text.append(chars, run, to - run);
+            lastLineNumeric = numeric && text.length() > lastLineStart;
+        }
+
+        /**
+         * Decode a character reference at i; returns its length, or 0 if it is not one
+         */
+        private int appendEntity(char[] chars, int i, int to) {
+            int semicolon = indexOf(chars, ';', i + 1, Math.min(to, i + 8));
+            if (semicolon < 0) {
+                return 0;
+            }
+            if (matches(chars, i, semicolon, "&amp")) {
+                text.append('&');
+            } else if (matches(chars, i, semicolon, "&lt")) {
+                text.append('<');
+            } else if (matches(chars, i, semicolon, "&gt")) {
+                text.append('>');
+            } else if (matches(chars, i, semicolon, "&quot")) {
+                text.append('"');
+            } else if (matches(chars, i, semicolon, "&apos")) {
+                text.append('\'');
+            } else if (matches(chars, i, semicolon, "&nbsp")) {
+                text.append(' ');
+            } else if (matches(chars, i, semicolon, "&lrm") || matches(chars, i, semicolon, "&rlm")) {
+                // Direction marks: nothing to display
+            } else {
+                return 0;
+            }
+            return semicolon - i + 1;
+        }
+    }
+
+    /**
+     * Parse [hh:]mm:ss[.,]fff into nanoseconds
+     *
+     * @throws IllegalArgumentException if the text is not a time
+     */
+    static long parseTime(String text) {
+        return parseTime(text.toCharArray(), 0, text.length());
+    }
+
+    private static long parseTime(char[] chars, int from, int to) {
+        while (from < to && chars[from] <= ' ') {
+            from++;
+        }
+        while (to > from && chars[to - 1] <= ' ') {
+            to--;
+        }
+
+        // Up to two fields before the last one: [hours:]minutes:
+        long first = 0;
+        long second = 0;
+        int count = 0;
+        long value = 0;
+        int digits = 0;
+        long millis = 0;
+        int i = from;
+        for (; i < to; i++) {
+            char c = chars[i];
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                digits++;
+            } else if (c == ':' && digits > 0 && count < 2) {
+                if (count++ == 0) {
+                    first = value;
+                } else {
+                    second = value;
+                }
+                value = 0;
+                digits = 0;
+            } else if ((c == ',' || c == '.') && digits > 0) {
+                // Fraction: the first three digits are milliseconds
+                int scale = 100;
+                for (i++; i < to && chars[i] >= '0' && chars[i] <= '9'; i++) {
+                    millis += (chars[i] - '0') * scale;
+                    scale /= 10;
+                }
+                break;
+            } else {
+                break;
+            }
+        }
+        if (i < to || digits == 0 || count == 0) {
+            throw new IllegalArgumentException("tempo inválido: " + new String(chars, from, to - from));
+        }
+
+        long hours = count == 2 ? first : 0;
+        long minutes = count == 2 ? second : first;
+        return (((hours * 60 + minutes) * 60 + value) * 1000 + millis) * 1_000_000L;
+    }
+
+    /**
+     * SRT tags: &lt;i&gt;, &lt;/b&gt;, &lt;font color=...&gt;; a lone '&lt;' is text
+     */
+    private static boolean isTagStart(char[] chars, int i, int to) {
+        if (i + 1 >= to) {
+            return false;
+        }
+        char next = chars[i + 1];
+        return next == '/' || Character.isLetter(next);
+    }
+
+    /**
+     * Whether chars[from, to) starts with the prefix
+     */
+    private static boolean matches(char[] chars, int from, int to, String prefix) {
+        if (to - from < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (chars[from + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOfArrow(char[] chars, int from, int to) {
+        for (int i = from; i + 2 < to; i++) {
+            if (chars[i] == '-' && chars[i + 1] == '-' && chars[i + 2] == '>') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(char[] chars, char target, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (chars[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
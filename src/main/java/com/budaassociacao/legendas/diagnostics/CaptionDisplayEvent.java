@@ -0,0 +1,39 @@
+package com.budaassociacao.legendas.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * One legenda shown, from the display call until it was painted
+ */
+@Name("legendas.CaptionDisplay")
+@Label("Caption Display")
+@Category({"LegendasBUDA", "Navigation"})
+@Description("Showing a legenda; the duration ends when it is painted")
+public final class CaptionDisplayEvent extends Event {
+
+    @Label("Index")
+    public int index;
+
+    @Label("Characters")
+    public int chars;
+
+    @Label("Lines")
+    public int lines;
+
+    @Label("Window Resized")
+    public boolean resized;
+
+    @Label("Input To Paint")
+    @Description("Time from the key press or click to the paint, 0 if not caused by input")
+    @Timespan(Timespan.NANOSECONDS)
+    public long inputToPaint;
+
+    @Label("Superseded")
+    @Description("Another legenda was shown before this one was painted")
+    public boolean superseded;
+}
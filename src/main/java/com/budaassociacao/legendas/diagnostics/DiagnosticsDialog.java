@@ -0,0 +1,99 @@
+package com.budaassociacao.legendas.diagnostics;
+
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import javax.swing.Timer;
+import java.awt.BorderLayout;
+import java.awt.FileDialog;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import java.awt.Frame;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Hidden dialog (Ctrl+Shift+D) showing the {@link Metrics}, refreshed every second,
+ * with CSV and JSON export
+ */
+public class DiagnosticsDialog extends JDialog {
+
+    private final JTextArea reportArea = new JTextArea(24, 100);
+    private final Timer refreshTimer = new Timer(1000, e -> refresh());
+
+    public DiagnosticsDialog(Frame owner) {
+        super(owner, "Diagnóstico", false);
+
+        reportArea.setEditable(false);
+        reportArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        reportArea.setBorder(BorderFactory.createEmptyBorder(6, 8, 6, 8));
+
+        JButton csvButton = new JButton("Exportar CSV");
+        csvButton.addActionListener(e -> export("legendas-metricas.csv", Metrics.toCsv()));
+        JButton jsonButton = new JButton("Exportar JSON");
+        jsonButton.addActionListener(e -> export("legendas-metricas.json", Metrics.toJson()));
+        JButton resetButton = new JButton("Zerar");
+        resetButton.addActionListener(e -> {
+            Metrics.reset();
+            refresh();
+        });
+        JButton closeButton = new JButton("Fechar");
+        closeButton.addActionListener(e -> setVisible(false));
+
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        buttons.add(csvButton);
+        buttons.add(jsonButton);
+        buttons.add(resetButton);
+        buttons.add(closeButton);
+
+        setLayout(new BorderLayout());
+        add(new JScrollPane(reportArea), BorderLayout.CENTER);
+        add(buttons, BorderLayout.SOUTH);
+        pack();
+        setLocationRelativeTo(owner);
+    }
+
+    /**
+     * Refresh only while shown
+     */
+    @Override
+    public void setVisible(boolean visible) {
+        if (visible) {
+            refresh();
+            refreshTimer.start();
+        } else {
+            refreshTimer.stop();
+        }
+        super.setVisible(visible);
+    }
+
+    private void refresh() {
+        reportArea.setText(Metrics.report());
+        reportArea.setCaretPosition(0);
+    }
+
+    private void export(String defaultName, String content) {
+        FileDialog fileDialog = new FileDialog(this, "Exportar métricas", FileDialog.SAVE);
+        fileDialog.setFile(defaultName);
+        fileDialog.setVisible(true);
+
+        if (fileDialog.getFile() == null || fileDialog.getDirectory() == null) {
+            return;
+        }
+        File target = new File(fileDialog.getDirectory(), fileDialog.getFile());
+        try {
+            Files.writeString(target.toPath(), content, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this,
+                "Erro ao exportar:\n" + e.getMessage(),
+                "Erro",
+                JOptionPane.ERROR_MESSAGE);
+        }
+    }
+}
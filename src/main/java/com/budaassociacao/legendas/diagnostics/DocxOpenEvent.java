@@ -0,0 +1,34 @@
+package com.budaassociacao.legendas.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A whole DOCX document parsed into legendas
+ */
+@Name("legendas.DocxOpen")
+@Label("DOCX Open")
+@Category({"LegendasBUDA", "Parsing"})
+@Description("Parsing of a document, from opening the file to the last legenda")
+public final class DocxOpenEvent extends Event {
+
+    @Label("File")
+    public String file;
+
+    @Label("Parser")
+    public String parser;
+
+    @Label("File Size")
+    @DataAmount
+    public long bytes;
+
+    @Label("Legendas")
+    public int legendas;
+
+    @Label("Succeeded")
+    public boolean succeeded;
+}
@@ -0,0 +1,79 @@
+package com.budaassociacao.legendas.diagnostics;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Opt-in continuous Java Flight Recorder recording
+ *
+ * Started with -Dlegendas.jfr=true using the low-overhead "default"
+ * settings. The last 30 minutes (at most 64 MB) are kept on disk; a dump
+ * can be taken on demand with Ctrl+Shift+J and one is written on exit.
+ * Dumps go to ~/.legendasbuda/recordings. The application events are in
+ * the "LegendasBUDA" category.
+ */
+public final class FlightRecording {
+
+    public static final String PROPERTY = "legendas.jfr";
+
+    private static final Path DIRECTORY = Paths.get(System.getProperty("user.home"), ".legendasbuda", "recordings");
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private static Recording recording;
+
+    private FlightRecording() {
+    }
+
+    /**
+     * Start the continuous recording if enabled by the system property
+     */
+    public static synchronized void startIfEnabled() {
+        if (recording != null || !Boolean.getBoolean(PROPERTY)) {
+            return;
+        }
+
+        try {
+            Files.createDirectories(DIRECTORY);
+            Recording continuous = new Recording(Configuration.getConfiguration("default"));
+            continuous.setName("LegendasBUDA");
+            continuous.setToDisk(true);
+            continuous.setMaxAge(Duration.ofMinutes(30));
+            continuous.setMaxSize(64L * 1024 * 1024);
+            continuous.setDumpOnExit(true);
+            continuous.setDestination(DIRECTORY.resolve("legendas-exit.jfr"));
+            continuous.start();
+            recording = continuous;
+            System.out.println("[FlightRecording] Recording to " + DIRECTORY);
+        } catch (Exception e) {
+            System.err.println("[FlightRecording] Could not start recording: " + e.getMessage());
+        }
+    }
+
+    public static synchronized boolean isRecording() {
+        return recording != null;
+    }
+
+    /**
+     * Write what has been recorded so far to a new file
+     *
+     * @return the file written
+     * @throws IOException if the recording is not running or cannot be written
+     */
+    public static synchronized Path dump() throws IOException {
+        if (recording == null) {
+            throw new IOException("Gravação não iniciada (use -D" + PROPERTY + "=true)");
+        }
+        Path file = DIRECTORY.resolve("legendas-" + LocalDateTime.now().format(FILE_TIME) + ".jfr");
+        recording.dump(file);
+        System.out.println("[FlightRecording] Dumped to " + file);
+        return file;
+    }
+}
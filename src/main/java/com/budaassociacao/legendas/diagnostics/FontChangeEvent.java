@@ -0,0 +1,21 @@
+package com.budaassociacao.legendas.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The legenda font size changed and the current legenda was shaped again
+ */
+@Name("legendas.FontChange")
+@Label("Font Change")
+@Category({"LegendasBUDA", "Navigation"})
+public final class FontChangeEvent extends Event {
+
+    @Label("Previous Size")
+    public int previousSize;
+
+    @Label("Size")
+    public int size;
+}
@@ -0,0 +1,272 @@
+package com.budaassociacao.legendas.diagnostics;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.awt.DisplayMode;
+import java.awt.GraphicsEnvironment;
+import java.io.File;
+import java.util.Locale;
+
+/**
+ * Always-on application metrics, shown in the diagnostics dialog
+ *
+ * Latencies go into {@link LatencyHistogram}s; each parsed document is
+ * kept in a ring of the last {@value #LOAD_HISTORY} loads held in
+ * preallocated arrays. Recording does not allocate. Reading (the dialog
+ * and the CSV/JSON export) formats everything on demand. The startup
+ * milestones happen once per run and are kept as plain values.
+ */
+public final class Metrics {
+
+    public static final LatencyHistogram KEY_TO_PAINT = new LatencyHistogram("Tecla até pintura");
+    public static final LatencyHistogram RELEASE_TO_PAINT = new LatencyHistogram("Soltar tecla até a última legenda");
+    public static final LatencyHistogram RESIZE = new LatencyHistogram("Redimensionar janela (pack)");
+    public static final LatencyHistogram PARSE = new LatencyHistogram("Leitura do DOCX");
+    public static final LatencyHistogram UPDATE_CHECK = new LatencyHistogram("Verificar atualização");
+    public static final LatencyHistogram UPDATE_DOWNLOAD = new LatencyHistogram("Baixar atualização");
+    public static final LatencyHistogram AUTO_ADVANCE = new LatencyHistogram("Atraso do avanço automático");
+    public static final LatencyHistogram BROADCAST = new LatencyHistogram("Envio às telas da rede");
+
+    private static final LatencyHistogram[] HISTOGRAMS =
+        {KEY_TO_PAINT, RELEASE_TO_PAINT, RESIZE, PARSE, UPDATE_CHECK, UPDATE_DOWNLOAD, AUTO_ADVANCE, BROADCAST};
+
+    private static final int LOAD_HISTORY = 32;
+
+    // Ring of recent loads, guarded by the class lock
+    private static final File[] loadFiles = new File[LOAD_HISTORY];
+    private static final String[] loadParsers = new String[LOAD_HISTORY];
+    private static final long[] loadBytes = new long[LOAD_HISTORY];
+    private static final int[] loadParagraphs = new int[LOAD_HISTORY];
+    private static final int[] loadLegendas = new int[LOAD_HISTORY];
+    private static final long[] loadNanos = new long[LOAD_HISTORY];
+    private static final long[] loadHeapUsed = new long[LOAD_HISTORY];
+    private static int loadCount;
+
+    // Startup milestones in nanoseconds, -1 until they happen; not cleared by reset()
+    private static volatile long jvmToMainNanos = -1;
+    private static volatile long mainToFirstPaintNanos = -1;
+    private static volatile long firstCaptionNanos = -1;
+    private static volatile long firstLoadNanos = -1;
+
+    private Metrics() {
+    }
+
+    /**
+     * Record a parsed document; heap in use is sampled now, with the legendas still referenced
+     */
+    public static void recordParse(File file, String parser, int paragraphs, int legendas, long nanos) {
+        PARSE.record(nanos);
+        Runtime runtime = Runtime.getRuntime();
+        long heapUsed = runtime.totalMemory() - runtime.freeMemory();
+
+        synchronized (Metrics.class) {
+            int slot = loadCount % LOAD_HISTORY;
+            loadFiles[slot] = file;
+            loadParsers[slot] = parser;
+            loadBytes[slot] = file.length();
+            loadParagraphs[slot] = paragraphs;
+            loadLegendas[slot] = legendas;
+            loadNanos[slot] = nanos;
+            loadHeapUsed[slot] = heapUsed;
+            loadCount++;
+        }
+    }
+
+    /**
+     * @param jvmToMain JVM start to main, or -1 if the OS did not report the start time
+     */
+    public static void recordStartup(long jvmToMain, long mainToFirstPaint) {
+        jvmToMainNanos = jvmToMain;
+        mainToFirstPaintNanos = mainToFirstPaint;
+    }
+
+    /**
+     * Open of the first file to its first caption on screen
+     */
+    public static void recordFirstCaption(long nanos) {
+        firstCaptionNanos = nanos;
+    }
+
+    /**
+     * Open of the first file to the end of its load
+     */
+    public static void recordFirstLoad(long nanos) {
+        firstLoadNanos = nanos;
+    }
+
+    public static synchronized void reset() {
+        for (LatencyHistogram histogram : HISTOGRAMS) {
+            histogram.reset();
+        }
+        loadCount = 0;
+    }
+
+    /**
+     * Human-readable report for the diagnostics dialog
+     */
+    public static String report() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format(Locale.ROOT, "%-30s %7s %9s %9s %9s %9s %9s%n",
+            "Latência (ms)", "n", "p50", "p90", "p99", "máx", "média"));
+        for (LatencyHistogram h : HISTOGRAMS) {
+            text.append(String.format(Locale.ROOT, "%-30s %7d %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                h.name(), h.count(), millis(h.valueAtPercentile(50)), millis(h.valueAtPercentile(90)),
+                millis(h.valueAtPercentile(99)), millis(h.max()), h.mean() / 1e6));
+        }
+
+        text.append(String.format(Locale.ROOT, "%n%-30s %9s%n", "Inicialização", "ms"));
+        for (String[] milestone : startupMilestones()) {
+            text.append(String.format(Locale.ROOT, "%-30s %9s%n", milestone[0],
+                milestone[2].isEmpty() ? "-" : milestone[2]));
+        }
+
+        text.append(String.format(Locale.ROOT, "%n%-30s %6s %9s %9s %11s %8s %9s%n",
+            "Arquivos lidos", "leitor", "legendas", "ms", "parágr./s", "MB/s", "heap MB"));
+        synchronized (Metrics.class) {
+            for (int i = recentStart(); i < loadCount; i++) {
+                int slot = i % LOAD_HISTORY;
+                double seconds = loadNanos[slot] / 1e9;
+                text.append(String.format(Locale.ROOT, "%-30.30s %6s %9d %9.1f %11.0f %8.2f %9.1f%n",
+                    loadFiles[slot].getName(), loadParsers[slot], loadLegendas[slot], loadNanos[slot] / 1e6,
+                    loadParagraphs[slot] / seconds, loadBytes[slot] / 1e6 / seconds, loadHeapUsed[slot] / 1e6));
+            }
+        }
+
+        text.append(String.format(Locale.ROOT, "%n%s%n", systemSummary()));
+        return text.toString();
+    }
+
+    /**
+     * Histograms and loads as CSV, one section each
+     */
+    public static String toCsv() {
+        StringBuilder csv = new StringBuilder();
+        csv.append("metric,count,min_ms,p50_ms,p90_ms,p99_ms,max_ms,mean_ms\n");
+        for (LatencyHistogram h : HISTOGRAMS) {
+            csv.append(String.format(Locale.ROOT, "\"%s\",%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f%n",
+                h.name(), h.count(), millis(h.min()), millis(h.valueAtPercentile(50)),
+                millis(h.valueAtPercentile(90)), millis(h.valueAtPercentile(99)), millis(h.max()), h.mean() / 1e6));
+        }
+
+        csv.append("\nstartup,ms\n");
+        for (String[] milestone : startupMilestones()) {
+            csv.append(milestone[1]).append(',').append(milestone[2]).append('\n');
+        }
+
+        csv.append("\nfile,parser,bytes,paragraphs,legendas,parse_ms,paragraphs_per_s,mb_per_s,heap_used_bytes\n");
+        synchronized (Metrics.class) {
+            for (int i = recentStart(); i < loadCount; i++) {
+                int slot = i % LOAD_HISTORY;
+                double seconds = loadNanos[slot] / 1e9;
+                csv.append(String.format(Locale.ROOT, "\"%s\",%s,%d,%d,%d,%.3f,%.1f,%.3f,%d%n",
+                    loadFiles[slot].getName().replace("\"", "\"\""), loadParsers[slot], loadBytes[slot],
+                    loadParagraphs[slot], loadLegendas[slot], loadNanos[slot] / 1e6,
+                    loadParagraphs[slot] / seconds, loadBytes[slot] / 1e6 / seconds, loadHeapUsed[slot]));
+            }
+        }
+        return csv.toString();
+    }
+
+    public static String toJson() {
+        JsonObject root = new JsonObject();
+        root.add("system", systemJson());
+
+        JsonArray histograms = new JsonArray();
+        for (LatencyHistogram h : HISTOGRAMS) {
+            JsonObject entry = new JsonObject();
+            entry.addProperty("name", h.name());
+            entry.addProperty("count", h.count());
+            entry.addProperty("minMillis", millis(h.min()));
+            entry.addProperty("p50Millis", millis(h.valueAtPercentile(50)));
+            entry.addProperty("p90Millis", millis(h.valueAtPercentile(90)));
+            entry.addProperty("p99Millis", millis(h.valueAtPercentile(99)));
+            entry.addProperty("maxMillis", millis(h.max()));
+            entry.addProperty("meanMillis", h.mean() / 1e6);
+            histograms.add(entry);
+        }
+        root.add("latencies", histograms);
+
+        JsonObject startup = new JsonObject();
+        for (String[] milestone : startupMilestones()) {
+            if (!milestone[2].isEmpty()) {
+                startup.addProperty(milestone[1] + "Millis", Double.parseDouble(milestone[2]));
+            }
+        }
+        root.add("startup", startup);
+
+        JsonArray loads = new JsonArray();
+        synchronized (Metrics.class) {
+            for (int i = recentStart(); i < loadCount; i++) {
+                int slot = i % LOAD_HISTORY;
+                JsonObject load = new JsonObject();
+                load.addProperty("file", loadFiles[slot].getName());
+                load.addProperty("parser", loadParsers[slot]);
+                load.addProperty("bytes", loadBytes[slot]);
+                load.addProperty("paragraphs", loadParagraphs[slot]);
+                load.addProperty("legendas", loadLegendas[slot]);
+                load.addProperty("parseMillis", loadNanos[slot] / 1e6);
+                load.addProperty("heapUsedBytes", loadHeapUsed[slot]);
+                loads.add(load);
+            }
+        }
+        root.add("loads", loads);
+
+        return new GsonBuilder().setPrettyPrinting().create().toJson(root);
+    }
+
+    /**
+     * Label, export key and milliseconds (empty if it has not happened) of each milestone
+     */
+    private static String[][] startupMilestones() {
+        long jvmToMain = jvmToMainNanos;
+        long mainToPaint = mainToFirstPaintNanos;
+        return new String[][]{
+            {"JVM até main", "jvmToMain", startupMillis(jvmToMain)},
+            {"main até primeira pintura", "mainToFirstPaint", startupMillis(mainToPaint)},
+            {"JVM até primeira pintura", "jvmToFirstPaint",
+                jvmToMain < 0 || mainToPaint < 0 ? "" : startupMillis(jvmToMain + mainToPaint)},
+            {"Primeiro arquivo: 1ª legenda", "firstFileFirstCaption", startupMillis(firstCaptionNanos)},
+            {"Primeiro arquivo: carregado", "firstFileLoaded", startupMillis(firstLoadNanos)},
+        };
+    }
+
+    private static String startupMillis(long nanos) {
+        return nanos < 0 ? "" : String.format(Locale.ROOT, "%.1f", nanos / 1e6);
+    }
+
+    private static int recentStart() {
+        return Math.max(0, loadCount - LOAD_HISTORY);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    /**
+     * Machine description, so exports from different computers can be compared
+     */
+    private static String systemSummary() {
+        JsonObject system = systemJson();
+        return "Sistema: " + system.get("os").getAsString() + ", Java " + system.get("java").getAsString()
+            + ", " + system.get("processors").getAsInt() + " processadores, heap máx. "
+            + system.get("maxHeapBytes").getAsLong() / (1024 * 1024) + " MB"
+            + (system.has("screen") ? ", tela " + system.get("screen").getAsString() : "");
+    }
+
+    private static JsonObject systemJson() {
+        JsonObject system = new JsonObject();
+        system.addProperty("os", System.getProperty("os.name") + " " + System.getProperty("os.version")
+            + " " + System.getProperty("os.arch"));
+        system.addProperty("java", System.getProperty("java.version"));
+        system.addProperty("processors", Runtime.getRuntime().availableProcessors());
+        system.addProperty("maxHeapBytes", Runtime.getRuntime().maxMemory());
+        if (!GraphicsEnvironment.isHeadless()) {
+            DisplayMode mode = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                .getDefaultScreenDevice().getDisplayMode();
+            system.addProperty("screen", mode.getWidth() + "x" + mode.getHeight() + "@" + mode.getRefreshRate() + "Hz");
+        }
+        return system;
+    }
+}
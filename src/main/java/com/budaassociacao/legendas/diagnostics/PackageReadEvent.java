@@ -0,0 +1,29 @@
+package com.budaassociacao.legendas.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Opening the DOCX package and locating the main document part
+ */
+@Name("legendas.PackageRead")
+@Label("DOCX Package Read")
+@Category({"LegendasBUDA", "Parsing"})
+@Description("Reading the ZIP package; with Apache POI this includes building the document model")
+public final class PackageReadEvent extends Event {
+
+    @Label("Part")
+    public String part;
+
+    @Label("Compressed Size")
+    @DataAmount
+    public long compressedBytes;
+
+    @Label("Uncompressed Size")
+    @DataAmount
+    public long uncompressedBytes;
+}
@@ -0,0 +1,26 @@
+package com.budaassociacao.legendas.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Walking the body paragraphs and grouping them into legendas
+ */
+@Name("legendas.ParagraphWalk")
+@Label("Paragraph Walk")
+@Category({"LegendasBUDA", "Parsing"})
+@Description("Paragraph text extraction and splitting into legendas")
+public final class ParagraphWalkEvent extends Event {
+
+    @Label("Paragraphs")
+    public int paragraphs;
+
+    @Label("Legendas")
+    public int legendas;
+
+    @Label("Characters")
+    public long chars;
+}
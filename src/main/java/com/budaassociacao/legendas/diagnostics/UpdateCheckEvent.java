@@ -0,0 +1,32 @@
+package com.budaassociacao.legendas.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A request for the latest release
+ */
+@Name("legendas.UpdateCheck")
+@Label("Update Check")
+@Category({"LegendasBUDA", "Update"})
+public final class UpdateCheckEvent extends Event {
+
+    @Label("URL")
+    public String url;
+
+    @Label("Status")
+    public int status;
+
+    @Label("Response Size")
+    @DataAmount
+    public long bytes;
+
+    @Label("Latest Version")
+    public String latestVersion;
+
+    @Label("Update Available")
+    public boolean hasUpdate;
+}
@@ -0,0 +1,30 @@
+package com.budaassociacao.legendas.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Download of an installer
+ */
+@Name("legendas.UpdateDownload")
+@Label("Update Download")
+@Category({"LegendasBUDA", "Update"})
+public final class UpdateDownloadEvent extends Event {
+
+    @Label("URL")
+    public String url;
+
+    @Label("Expected Size")
+    @DataAmount
+    public long expectedBytes;
+
+    @Label("Downloaded")
+    @DataAmount
+    public long bytes;
+
+    @Label("Succeeded")
+    public boolean succeeded;
+}
@@ -0,0 +1,27 @@
+package com.budaassociacao.legendas.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The window was packed to fit the legenda
+ */
+@Name("legendas.WindowResize")
+@Label("Window Resize")
+@Category({"LegendasBUDA", "Navigation"})
+public final class WindowResizeEvent extends Event {
+
+    @Label("Previous Width")
+    public int previousWidth;
+
+    @Label("Previous Height")
+    public int previousHeight;
+
+    @Label("Width")
+    public int width;
+
+    @Label("Height")
+    public int height;
+}
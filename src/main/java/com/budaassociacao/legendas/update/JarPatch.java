@@ -0,0 +1,328 @@
+package com.budaassociacao.legendas.update;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Binary patch between two builds of the standalone jar
+ *
+ * Most of the shaded jar (POI, Gson, SLF4J) is byte-for-byte the same from
+ * one release to the next, only at other offsets. The diff indexes the old
+ * file in 32-byte blocks and slides a rolling hash over the new one; every
+ * match is extended both ways and becomes a COPY from the old file, and
+ * what is left is sent as literal bytes. The header carries the size and
+ * SHA-256 of both files, so a patch is only applied to the exact build it
+ * was made from and the result is checked before it is used.
+ *
+ * Format: "LBPATCH1", old size and SHA-256, new size and SHA-256, then a
+ * deflated stream of operations (COPY offset length, ADD length bytes, END).
+ *
+ * Also a command line tool, run by the "release" Maven profile:
+ * <pre>
+ * JarPatch diff &lt;old.jar&gt; &lt;new.jar&gt; &lt;out.jarpatch&gt;
+ * JarPatch apply &lt;old.jar&gt; &lt;patch.jarpatch&gt; &lt;out.jar&gt;
+ * JarPatch release &lt;version&gt; &lt;new.jar&gt; &lt;previous-dir&gt; &lt;out-dir&gt;
+ * </pre>
+ */
+public final class JarPatch {
+
+    public static final String EXTENSION = ".jarpatch";
+
+    private static final byte[] MAGIC = {'L', 'B', 'P', 'A', 'T', 'C', 'H', '1'};
+    private static final int BLOCK = 32;
+    private static final int HASH_MULTIPLIER = 0x01000193;
+
+    private static final int OP_END = 0;
+    private static final int OP_COPY = 1;
+    private static final int OP_ADD = 2;
+
+    // Archived release jars are named LegendasBUDA-<version>.jar
+    private static final Pattern RELEASE_JAR = Pattern.compile("LegendasBUDA-(\\d+(?:\\.\\d+)*)\\.jar");
+
+    private JarPatch() {
+    }
+
+    /**
+     * Asset name of the patch between two versions
+     */
+    public static String assetName(String fromVersion, String toVersion) {
+        return "LegendasBUDA-" + fromVersion + "-to-" + toVersion + EXTENSION;
+    }
+
+    /**
+     * Write the patch that turns {@code oldBytes} into {@code newBytes}
+     */
+    public static void diff(byte[] oldBytes, byte[] newBytes, OutputStream out) throws IOException {
+        DataOutputStream header = new DataOutputStream(out);
+        header.write(MAGIC);
+        header.writeLong(oldBytes.length);
+        header.write(sha256(oldBytes));
+        header.writeLong(newBytes.length);
+        header.write(sha256(newBytes));
+        header.flush();
+
+        DeflaterOutputStream deflated = new DeflaterOutputStream(out, new Deflater(Deflater.BEST_COMPRESSION), 64 * 1024);
+        DataOutputStream ops = new DataOutputStream(new BufferedOutputStream(deflated, 64 * 1024));
+
+        int[] index = indexBlocks(oldBytes);
+        int mask = index.length - 1;
+        int power = pow(HASH_MULTIPLIER, BLOCK);
+
+        int literalStart = 0;
+        int pos = 0;
+        int hash = newBytes.length >= BLOCK ? hash(newBytes, 0) : 0;
+        while (pos + BLOCK <= newBytes.length) {
+            int candidate = index[(mix(hash)) & mask] - 1;
+            if (candidate >= 0 && equalBlocks(oldBytes, candidate, newBytes, pos)) {
+                // Extend the match backwards into the pending literal, then forwards
+                int oldStart = candidate;
+                int newStart = pos;
+                while (newStart > literalStart && oldStart > 0 && oldBytes[oldStart - 1] == newBytes[newStart - 1]) {
+                    oldStart--;
+                    newStart--;
+                }
+                int end = pos + BLOCK;
+                int oldEnd = candidate + BLOCK;
+                while (end < newBytes.length && oldEnd < oldBytes.length && oldBytes[oldEnd] == newBytes[end]) {
+                    end++;
+                    oldEnd++;
+                }
+
+                writeAdd(ops, newBytes, literalStart, newStart);
+                ops.writeByte(OP_COPY);
+                ops.writeInt(oldStart);
+                ops.writeInt(end - newStart);
+
+                literalStart = end;
+                pos = end;
+                if (pos + BLOCK <= newBytes.length) {
+                    hash = hash(newBytes, pos);
+                }
+                continue;
+            }
+
+            // Roll the hash one byte forward
+            if (pos + BLOCK < newBytes.length) {
+                hash = hash * HASH_MULTIPLIER + (newBytes[pos + BLOCK] & 0xFF) - power * (newBytes[pos] & 0xFF);
+            }
+            pos++;
+        }
+
+        writeAdd(ops, newBytes, literalStart, newBytes.length);
+        ops.writeByte(OP_END);
+        ops.flush();
+        deflated.finish();
+        out.flush();
+    }
+
+    /**
+     * Apply a patch to {@code base}, writing the result to {@code target}
+     *
+     * Nothing is left at {@code target} unless the result has the size and
+     * SHA-256 recorded in the patch.
+     *
+     * @throws IOException if the patch is not for this base file, is corrupt,
+     *                     or the result does not match
+     */
+    public static void apply(Path base, InputStream patch, Path target) throws IOException {
+        DataInputStream header = new DataInputStream(patch);
+        byte[] magic = new byte[MAGIC.length];
+        header.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a LegendasBUDA patch");
+        }
+        long oldSize = header.readLong();
+        byte[] oldHash = new byte[32];
+        header.readFully(oldHash);
+        long newSize = header.readLong();
+        byte[] newHash = new byte[32];
+        header.readFully(newHash);
+
+        byte[] oldBytes = Files.readAllBytes(base);
+        if (oldBytes.length != oldSize || !MessageDigest.isEqual(sha256(oldBytes), oldHash)) {
+            throw new IOException("Patch was made for another build of " + base.getFileName());
+        }
+
+        MessageDigest digest = newDigest();
+        long written = 0;
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (DataInputStream ops = new DataInputStream(new BufferedInputStream(new InflaterInputStream(patch), 64 * 1024));
+             OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024)) {
+            byte[] buffer = new byte[64 * 1024];
+            int op;
+            while ((op = ops.readUnsignedByte()) != OP_END) {
+                if (op == OP_COPY) {
+                    int offset = ops.readInt();
+                    int length = ops.readInt();
+                    if (offset < 0 || length < 0 || offset > oldBytes.length - length) {
+                        throw new IOException("Corrupt patch: copy outside the base file");
+                    }
+                    out.write(oldBytes, offset, length);
+                    digest.update(oldBytes, offset, length);
+                    written += length;
+                } else if (op == OP_ADD) {
+                    int remaining = ops.readInt();
+                    while (remaining > 0) {
+                        int chunk = Math.min(buffer.length, remaining);
+                        ops.readFully(buffer, 0, chunk);
+                        out.write(buffer, 0, chunk);
+                        digest.update(buffer, 0, chunk);
+                        remaining -= chunk;
+                        written += chunk;
+                    }
+                } else {
+                    throw new IOException("Corrupt patch: unknown operation " + op);
+                }
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        if (written != newSize || !MessageDigest.isEqual(digest.digest(), newHash)) {
+            Files.deleteIfExists(temp);
+            throw new IOException("Patched file does not match the release (" + written + " of " + newSize + " bytes)");
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeAdd(DataOutputStream ops, byte[] bytes, int from, int to) throws IOException {
+        if (to > from) {
+            ops.writeByte(OP_ADD);
+            ops.writeInt(to - from);
+            ops.write(bytes, from, to - from);
+        }
+    }
+
+    /**
+     * Open-addressed table from block hash to (offset + 1) of the first block with that hash
+     */
+    private static int[] indexBlocks(byte[] bytes) {
+        int blocks = bytes.length / BLOCK;
+        int size = Integer.highestOneBit(Math.max(16, blocks * 2 - 1)) << 1;
+        int[] table = new int[size];
+        for (int offset = 0; offset + BLOCK <= bytes.length; offset += BLOCK) {
+            int slot = mix(hash(bytes, offset)) & (size - 1);
+            if (table[slot] == 0) {
+                table[slot] = offset + 1;
+            }
+        }
+        return table;
+    }
+
+    private static int hash(byte[] bytes, int offset) {
+        int hash = 0;
+        for (int i = offset; i < offset + BLOCK; i++) {
+            hash = hash * HASH_MULTIPLIER + (bytes[i] & 0xFF);
+        }
+        return hash;
+    }
+
+    // Spread the polynomial hash so the low bits used for the table vary
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        return hash ^ (hash >>> 13);
+    }
+
+    private static int pow(int base, int exponent) {
+        int result = 1;
+        for (int i = 0; i < exponent; i++) {
+            result *= base;
+        }
+        return result;
+    }
+
+    private static boolean equalBlocks(byte[] a, int aOffset, byte[] b, int bOffset) {
+        return Arrays.equals(a, aOffset, aOffset + BLOCK, b, bOffset, bOffset + BLOCK);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] sha256(byte[] bytes) {
+        return newDigest().digest(bytes);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 4 && "diff".equals(args[0])) {
+            Path out = Paths.get(args[3]);
+            writePatch(Paths.get(args[1]), Paths.get(args[2]), out);
+        } else if (args.length == 4 && "apply".equals(args[0])) {
+            try (InputStream patch = new BufferedInputStream(Files.newInputStream(Paths.get(args[2])))) {
+                apply(Paths.get(args[1]), patch, Paths.get(args[3]));
+            }
+            System.out.println("[JarPatch] Wrote " + args[3]);
+        } else if (args.length == 5 && "release".equals(args[0])) {
+            release(args[1], Paths.get(args[2]), Paths.get(args[3]), Paths.get(args[4]));
+        } else {
+            System.err.println("Uso: JarPatch diff <antigo.jar> <novo.jar> <saida.jarpatch>");
+            System.err.println("     JarPatch apply <antigo.jar> <patch.jarpatch> <saida.jar>");
+            System.err.println("     JarPatch release <versao> <novo.jar> <pasta-anteriores> <pasta-saida>");
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Patches from every archived release jar to the new one, plus a copy of
+     * the new jar to archive for the next release
+     */
+    private static void release(String version, Path newJar, Path previousDir, Path outDir) throws IOException {
+        Files.createDirectories(outDir);
+        Files.copy(newJar, outDir.resolve("LegendasBUDA-" + version + ".jar"), StandardCopyOption.REPLACE_EXISTING);
+
+        if (!Files.isDirectory(previousDir)) {
+            System.out.println("[JarPatch] No previous releases in " + previousDir + ", no patches written");
+            return;
+        }
+        try (DirectoryStream<Path> jars = Files.newDirectoryStream(previousDir, "LegendasBUDA-*.jar")) {
+            for (Path oldJar : jars) {
+                Matcher matcher = RELEASE_JAR.matcher(oldJar.getFileName().toString());
+                if (!matcher.matches() || matcher.group(1).equals(version)) {
+                    continue;
+                }
+                writePatch(oldJar, newJar, outDir.resolve(assetName(matcher.group(1), version)));
+            }
+        }
+    }
+
+    private static void writePatch(Path oldJar, Path newJar, Path out) throws IOException {
+        long start = System.nanoTime();
+        byte[] oldBytes = Files.readAllBytes(oldJar);
+        byte[] newBytes = Files.readAllBytes(newJar);
+        try (OutputStream stream = new BufferedOutputStream(Files.newOutputStream(out))) {
+            diff(oldBytes, newBytes, stream);
+        }
+        long patchSize = Files.size(out);
+        System.out.println(String.format(Locale.ROOT, "[JarPatch] %s: %d bytes (%.1f%% of %d) in %d ms",
+            out.getFileName(), patchSize, 100.0 * patchSize / newBytes.length, newBytes.length,
+            (System.nanoTime() - start) / 1_000_000));
+        // Checksum asset, in the same format as the installers'
+        Files.writeString(out.resolveSibling(out.getFileName() + ".sha256"),
+            ResumableDownload.toHex(sha256(Files.readAllBytes(out))) + "  " + out.getFileName() + "\n");
+    }
+}
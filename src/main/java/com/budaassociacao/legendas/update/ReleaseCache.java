@@ -0,0 +1,123 @@
+package com.budaassociacao.legendas.update;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * On-disk cache of the last releases API response
+ *
+ * Keeps the response body with its ETag and Last-Modified headers. Within
+ * the TTL no request is made at all; after it, the validators are sent so
+ * an unchanged release costs a 304 with no body. Stored in
+ * ~/.legendasbuda/update/release.json. The TTL is set in minutes with
+ * -Dlegendas.update.ttlMinutes (default 360).
+ */
+public class ReleaseCache {
+
+    private static final long DEFAULT_TTL_MINUTES = 360;
+
+    private final Path file;
+    private final long ttlMillis;
+
+    public ReleaseCache(Path file, long ttlMillis) {
+        this.file = file;
+        this.ttlMillis = ttlMillis;
+    }
+
+    public static ReleaseCache openDefault() {
+        long ttlMinutes = Long.getLong("legendas.update.ttlMinutes", DEFAULT_TTL_MINUTES);
+        return new ReleaseCache(Paths.get(System.getProperty("user.home"), ".legendasbuda", "update", "release.json"),
+            Math.max(0, ttlMinutes) * 60_000L);
+    }
+
+    /**
+     * Cached response for a URL
+     *
+     * @return the entry, or null if none is stored for this URL or it cannot be read
+     */
+    public Entry load(String url) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            JsonObject json = JsonParser.parseReader(reader).getAsJsonObject();
+            if (!url.equals(json.get("url").getAsString())) {
+                return null;
+            }
+            return new Entry(url, optional(json, "etag"), optional(json, "lastModified"),
+                json.get("fetchedAt").getAsLong(), json.get("body").getAsString());
+        } catch (Exception e) {
+            System.err.println("[ReleaseCache] Ignoring unreadable cache: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Whether an entry is recent enough to skip the request
+     */
+    public boolean isFresh(Entry entry) {
+        long age = System.currentTimeMillis() - entry.fetchedAt;
+        return age >= 0 && age < ttlMillis;
+    }
+
+    public void store(Entry entry) {
+        JsonObject json = new JsonObject();
+        json.addProperty("url", entry.url);
+        json.addProperty("etag", entry.etag);
+        json.addProperty("lastModified", entry.lastModified);
+        json.addProperty("fetchedAt", entry.fetchedAt);
+        json.addProperty("body", entry.body);
+
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                writer.write(json.toString());
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("[ReleaseCache] Could not store release info: " + e.getMessage());
+        }
+    }
+
+    private static String optional(JsonObject json, String name) {
+        JsonElement element = json.get(name);
+        return element == null || element.isJsonNull() ? null : element.getAsString();
+    }
+
+    /**
+     * A cached response body with its validators
+     */
+    public static final class Entry {
+        public final String url;
+        public final String etag;
+        public final String lastModified;
+        public final long fetchedAt;
+        public final String body;
+
+        public Entry(String url, String etag, String lastModified, long fetchedAt, String body) {
+            this.url = url;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.fetchedAt = fetchedAt;
+            this.body = body;
+        }
+
+        /**
+         * The same response, confirmed unchanged now
+         */
+        public Entry revalidated() {
+            return new Entry(url, etag, lastModified, System.currentTimeMillis(), body);
+        }
+    }
+}
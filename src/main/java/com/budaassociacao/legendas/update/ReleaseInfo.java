@@ -0,0 +1,108 @@
+package com.budaassociacao.legendas.update;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The parts of a GitHub release the updater uses
+ *
+ * Read with Gson's streaming reader: only the tag, page, notes and the
+ * name and URL of each asset are kept, and everything else in the
+ * response (uploader profiles, reactions, ...) is skipped without building
+ * a tree.
+ */
+public final class ReleaseInfo {
+    public final String tagName;
+    public final String htmlUrl;
+    public final String body;
+    /** Asset name to download URL, in release order */
+    public final Map<String, String> assets;
+
+    private ReleaseInfo(String tagName, String htmlUrl, String body, Map<String, String> assets) {
+        this.tagName = tagName;
+        this.htmlUrl = htmlUrl;
+        this.body = body;
+        this.assets = Collections.unmodifiableMap(assets);
+    }
+
+    /**
+     * @throws IOException if the JSON is malformed or has no tag_name
+     */
+    public static ReleaseInfo parse(Reader json) throws IOException {
+        String tagName = null;
+        String htmlUrl = null;
+        String body = "";
+        Map<String, String> assets = new LinkedHashMap<>();
+
+        try (JsonReader reader = new JsonReader(json)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "tag_name":
+                        tagName = nextString(reader);
+                        break;
+                    case "html_url":
+                        htmlUrl = nextString(reader);
+                        break;
+                    case "body":
+                        String notes = nextString(reader);
+                        body = notes == null ? "" : notes;
+                        break;
+                    case "assets":
+                        readAssets(reader, assets);
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException e) {
+            throw new IOException("Unexpected release JSON: " + e.getMessage(), e);
+        }
+
+        if (tagName == null) {
+            throw new IOException("Release has no tag_name");
+        }
+        return new ReleaseInfo(tagName, htmlUrl, body, assets);
+    }
+
+    private static void readAssets(JsonReader reader, Map<String, String> assets) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String name = null;
+            String url = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "name":
+                        name = nextString(reader);
+                        break;
+                    case "browser_download_url":
+                        url = nextString(reader);
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+            if (name != null && url != null) {
+                assets.put(name, url);
+            }
+        }
+        reader.endArray();
+    }
+
+    private static String nextString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+}
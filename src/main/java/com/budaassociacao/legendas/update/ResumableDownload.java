@@ -0,0 +1,407 @@
+package com.budaassociacao.legendas.update;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Download of one file that survives dropped connections
+ *
+ * Bytes go to "&lt;target&gt;.part" through a {@link FileChannel}, written
+ * by a body subscriber as they arrive on the {@link UpdateClient} threads.
+ * If the connection drops, the next attempt asks for the rest with Range,
+ * guarded by If-Range with the ETag (or Last-Modified) of the first
+ * response, so a file that changed on the server is fetched again from
+ * the start instead of being spliced. The validator is kept in
+ * "&lt;target&gt;.part.etag", so a partial file also resumes after a
+ * restart of the application. SHA-256 is computed while streaming and
+ * checked before the part file is moved into place. {@link #cancel()}
+ * stops the request in flight and any retry; the part file is kept.
+ */
+public class ResumableDownload {
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long PROGRESS_INTERVAL_NANOS = 100_000_000L;
+
+    /**
+     * Receives progress at most every 100 ms, and once at the end
+     */
+    public interface Progress {
+        /**
+         * @param total the full size, or -1 if the server did not say
+         */
+        void update(long bytes, long total);
+    }
+
+    private final UpdateClient client;
+    private final URI uri;
+    private final Path target;
+    private final Path partFile;
+    private final Path validatorFile;
+
+    private String expectedSha256;
+    private volatile boolean cancelled;
+    private volatile CompletableFuture<?> current;
+
+    private MessageDigest digest;
+    private long total = -1;
+    private long lastProgressNanos;
+
+    public ResumableDownload(UpdateClient client, URI uri, Path target) {
+        this.client = client;
+        this.uri = uri;
+        this.target = target;
+        this.partFile = target.resolveSibling(target.getFileName() + ".part");
+        this.validatorFile = target.resolveSibling(target.getFileName() + ".part.etag");
+    }
+
+    /**
+     * Start the download, retrying dropped connections
+     *
+     * @param expectedSha256 hex digest to check, or null to skip the check
+     * @return completes with the verified file, or exceptionally if every attempt
+     *         failed, the checksum does not match or the download was cancelled
+     */
+    public CompletableFuture<Path> start(String expectedSha256, Progress progress) {
+        this.expectedSha256 = expectedSha256 == null ? null : expectedSha256.toLowerCase();
+        try {
+            Files.createDirectories(target.toAbsolutePath().getParent());
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return attempt(1, progress);
+    }
+
+    private CompletableFuture<Path> attempt(int attempt, Progress progress) {
+        return transfer(progress)
+            .thenApplyAsync(written -> finish(), client.executor())
+            .exceptionallyCompose(error -> {
+                Throwable cause = error;
+                while ((cause instanceof CompletionException || cause instanceof UncheckedIOException)
+                        && cause.getCause() != null) {
+                    cause = cause.getCause();
+                }
+                if (cancelled || client.isClosed()) {
+                    return CompletableFuture.failedFuture(new CancellationException("Download cancelled"));
+                }
+                if (cause instanceof ChecksumException || attempt == MAX_ATTEMPTS) {
+                    return CompletableFuture.failedFuture(cause);
+                }
+                System.err.println("[ResumableDownload] Attempt " + attempt + " failed at "
+                    + partSize() + " bytes: " + cause.getMessage());
+                long delay = Math.min(8000L, 500L << attempt);
+                return CompletableFuture
+                    .runAsync(() -> { }, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, client.executor()))
+                    .thenCompose(ignored -> attempt(attempt + 1, progress));
+            });
+    }
+
+    /**
+     * Stop the download; the future from {@link #start} fails with a {@link CancellationException}
+     */
+    public void cancel() {
+        cancelled = true;
+        CompletableFuture<?> request = current;
+        if (request != null) {
+            request.cancel(true);
+        }
+    }
+
+    /**
+     * Bytes already on disk, e.g. for the event of a failed download
+     */
+    public long partSize() {
+        try {
+            return Files.isRegularFile(partFile) ? Files.size(partFile) : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private CompletableFuture<Long> transfer(Progress progress) {
+        long kept = partSize();
+        String validator = kept > 0 ? readValidator() : null;
+        // Nothing to guard a resume with: start over
+        long offset = validator == null ? 0 : kept;
+
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+            .timeout(Duration.ofSeconds(30))
+            .GET();
+        if (offset > 0) {
+            request.header("Range", "bytes=" + offset + "-");
+            request.header("If-Range", validator);
+        }
+
+        // The response completes only once the body is on disk, so cancelling it stops the transfer
+        CompletableFuture<HttpResponse<Long>> response = client.send(request.build(),
+            info -> subscriberFor(info, offset, progress));
+        current = response;
+        if (cancelled) {
+            response.cancel(true);
+        }
+        return response.thenApply(HttpResponse::body);
+    }
+
+    /**
+     * Decide from the status and headers where the body goes
+     */
+    private HttpResponse.BodySubscriber<Long> subscriberFor(HttpResponse.ResponseInfo info,
+                                                    long offset, Progress progress) {
+        int status = info.statusCode();
+        long length = info.headers().firstValueAsLong("Content-Length").orElse(-1);
+        long start;
+
+        try {
+            if (status == 206 && offset > 0 && rangeStart(info.headers()) == offset) {
+                start = offset;
+                total = length < 0 ? -1 : offset + length;
+                System.out.println("[ResumableDownload] Resuming at " + offset + " bytes");
+            } else if (status == 200) {
+                // First request, or the file changed and If-Range sent all of it
+                start = 0;
+                total = length;
+                writeValidator(info.headers());
+            } else {
+                // e.g. 416 for a stale part file: drop it and let the next attempt start over
+                Files.deleteIfExists(partFile);
+                Files.deleteIfExists(validatorFile);
+                throw new IOException("HTTP " + status);
+            }
+            resetDigest(start);
+            return new PartFileSubscriber(start, progress);
+        } catch (IOException e) {
+            return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.discarding(), ignored -> {
+                throw new UncheckedIOException(e);
+            });
+        }
+    }
+
+    private Path finish() {
+        try {
+            verify();
+            Files.move(partFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.deleteIfExists(validatorFile);
+            return target;
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private void report(Progress progress, long bytes, boolean last) {
+        long now = System.nanoTime();
+        if (last || now - lastProgressNanos >= PROGRESS_INTERVAL_NANOS) {
+            lastProgressNanos = now;
+            progress.update(bytes, total);
+        }
+    }
+
+    /**
+     * Start the digest over, feeding it the bytes kept from earlier attempts
+     */
+    private void resetDigest(long offset) throws IOException {
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        if (offset == 0) {
+            return;
+        }
+
+        try (FileChannel in = FileChannel.open(partFile, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            long remaining = offset;
+            while (remaining > 0) {
+                buffer.limit((int) Math.min(BUFFER_SIZE, remaining));
+                int read = in.read(buffer);
+                if (read < 0) {
+                    throw new IOException("Part file shorter than expected");
+                }
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+                remaining -= read;
+            }
+        }
+    }
+
+    private void verify() throws IOException {
+        if (expectedSha256 == null) {
+            System.out.println("[ResumableDownload] No checksum published, skipping verification");
+            return;
+        }
+        String actual = toHex(digest.digest());
+        if (!actual.equals(expectedSha256)) {
+            // A corrupt part file must not be resumed from
+            Files.deleteIfExists(partFile);
+            Files.deleteIfExists(validatorFile);
+            throw new ChecksumException("SHA-256 não confere: esperado " + expectedSha256 + ", obtido " + actual);
+        }
+        System.out.println("[ResumableDownload] SHA-256 verified");
+    }
+
+    private static long rangeStart(HttpHeaders headers) {
+        // Content-Range: bytes 1000-4999/5000
+        String range = headers.firstValue("Content-Range").orElse(null);
+        if (range == null || !range.startsWith("bytes ")) {
+            return -1;
+        }
+        int dash = range.indexOf('-');
+        try {
+            return dash < 0 ? -1 : Long.parseLong(range.substring(6, dash).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private String readValidator() {
+        try {
+            if (!Files.isRegularFile(validatorFile)) {
+                return null;
+            }
+            String validator = Files.readString(validatorFile, StandardCharsets.UTF_8).trim();
+            return validator.isEmpty() ? null : validator;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void writeValidator(HttpHeaders headers) throws IOException {
+        String validator = headers.firstValue("ETag").orElse(null);
+        if (validator == null || validator.startsWith("W/")) {
+            // Weak ETags are not allowed in If-Range
+            validator = headers.firstValue("Last-Modified").orElse(null);
+        }
+        if (validator == null) {
+            Files.deleteIfExists(validatorFile);
+        } else {
+            Files.writeString(validatorFile, validator, StandardCharsets.UTF_8);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Appends the body to the part file and the digest, one batch of buffers at a time
+     *
+     * The body is the number of bytes on disk, once the last buffer is
+     * written and forced.
+     */
+    private class PartFileSubscriber implements HttpResponse.BodySubscriber<Long> {
+        private final CompletableFuture<Long> written = new CompletableFuture<>();
+        private final long start;
+        private final Progress progress;
+        private FileChannel out;
+        private Flow.Subscription subscription;
+        private long position;
+
+        PartFileSubscriber(long start, Progress progress) {
+            this.start = start;
+            this.progress = progress;
+        }
+
+        @Override
+        public CompletionStage<Long> getBody() {
+            return written;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            try {
+                out = FileChannel.open(partFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                out.truncate(start);
+                out.position(start);
+                position = start;
+                subscription.request(1);
+            } catch (IOException e) {
+                subscription.cancel();
+                fail(e);
+            }
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            try {
+                for (ByteBuffer buffer : buffers) {
+                    digest.update(buffer.duplicate());
+                    while (buffer.hasRemaining()) {
+                        position += out.write(buffer);
+                    }
+                }
+                report(progress, position, false);
+                subscription.request(1);
+            } catch (IOException e) {
+                subscription.cancel();
+                fail(e);
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            fail(error);
+        }
+
+        @Override
+        public void onComplete() {
+            try {
+                out.force(false);
+                out.close();
+                report(progress, position, true);
+                if (total >= 0 && position != total) {
+                    throw new IOException("Incomplete download: " + position + " of " + total + " bytes");
+                }
+                written.complete(position);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        private void fail(Throwable error) {
+            try {
+                if (out != null) {
+                    out.close();
+                }
+            } catch (IOException e) {
+                // Already failing
+            }
+            written.completeExceptionally(error);
+        }
+    }
+
+    /**
+     * The file arrived whole but is not the published one; retrying will not help
+     */
+    public static class ChecksumException extends IOException {
+        public ChecksumException(String message) {
+            super(message);
+        }
+    }
+}
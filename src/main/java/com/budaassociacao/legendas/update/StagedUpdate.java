@@ -0,0 +1,122 @@
+package com.budaassociacao.legendas.update;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URISyntaxException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Jars built by applying a delta patch, and starting the newest one
+ *
+ * The installed jar usually cannot be replaced (it is open, and under
+ * Program Files or /Applications), so a patched jar is kept in
+ * ~/.legendasbuda/update as LegendasBUDA-&lt;version&gt;.jar. On start, if
+ * one is newer than the running version, the application starts it on the
+ * same runtime with the same JVM options and exits. Once a full installer
+ * brings the installed version level with it, the staged jar is deleted.
+ */
+public final class StagedUpdate {
+
+    /** Set on the relaunched process so it never relaunches again */
+    public static final String RELAUNCHED_PROPERTY = "legendas.staged";
+
+    public static final Path DIRECTORY = Paths.get(System.getProperty("user.home"), ".legendasbuda", "update");
+
+    private static final Pattern STAGED_JAR = Pattern.compile("LegendasBUDA-(\\d+(?:\\.\\d+)*)\\.jar");
+
+    private StagedUpdate() {
+    }
+
+    /**
+     * Where the jar for a version is staged
+     */
+    public static Path jarFor(String version) {
+        return DIRECTORY.resolve("LegendasBUDA-" + version + ".jar");
+    }
+
+    /**
+     * The jar this application is running from
+     *
+     * @return the jar, or null when running from classes (IDE, mvn exec:java)
+     */
+    public static Path runningJar() {
+        try {
+            Path location = Paths.get(StagedUpdate.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            return Files.isRegularFile(location) && location.toString().endsWith(".jar") ? location : null;
+        } catch (URISyntaxException | SecurityException | NullPointerException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Start the newest staged jar instead of this one, if there is a newer one
+     *
+     * @return true if it was started and this process should exit
+     */
+    public static boolean relaunchIfNewer(String currentVersion, String mainClass, String[] args) {
+        if (Boolean.getBoolean(RELAUNCHED_PROPERTY) || !Files.isDirectory(DIRECTORY)) {
+            return false;
+        }
+
+        List<Path> staged = new ArrayList<>();
+        Path newest = null;
+        String newestVersion = currentVersion;
+        try (DirectoryStream<Path> jars = Files.newDirectoryStream(DIRECTORY, "LegendasBUDA-*.jar")) {
+            for (Path jar : jars) {
+                Matcher matcher = STAGED_JAR.matcher(jar.getFileName().toString());
+                if (!matcher.matches()) {
+                    continue;
+                }
+                staged.add(jar);
+                if (VersionUtils.isNewerVersion(matcher.group(1), newestVersion)) {
+                    newest = jar;
+                    newestVersion = matcher.group(1);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("[StagedUpdate] Could not read staged updates: " + e.getMessage());
+            return false;
+        }
+
+        // Superseded by a newer staged jar, or the installed version caught up
+        for (Path jar : staged) {
+            if (!jar.equals(newest)) {
+                try {
+                    Files.deleteIfExists(jar);
+                    System.out.println("[StagedUpdate] Removed outdated " + jar.getFileName());
+                } catch (IOException e) {
+                    System.err.println("[StagedUpdate] Could not remove " + jar.getFileName() + ": " + e.getMessage());
+                }
+            }
+        }
+        if (newest == null) {
+            return false;
+        }
+
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-D" + RELAUNCHED_PROPERTY + "=true");
+        command.add("-cp");
+        command.add(newest.toString());
+        command.add(mainClass);
+        command.addAll(Arrays.asList(args));
+
+        try {
+            new ProcessBuilder(command).inheritIO().start();
+            System.out.println("[StagedUpdate] Started " + newest.getFileName());
+            return true;
+        } catch (IOException e) {
+            System.err.println("[StagedUpdate] Could not start " + newest.getFileName() + ": " + e.getMessage());
+            return false;
+        }
+    }
+}
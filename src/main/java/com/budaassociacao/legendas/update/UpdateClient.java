@@ -0,0 +1,84 @@
+package com.budaassociacao.legendas.update;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The one HTTP client used for update traffic
+ *
+ * Connections are reused between the release check, the checksum and the
+ * installer download, over HTTP/2 where the server offers it. Responses
+ * are handled on two daemon threads rather than a thread per request, so
+ * update traffic never holds the EDT or keeps the JVM alive. Every request
+ * in flight is tracked and {@link #shutdown()} cancels them all, e.g. when
+ * the window closes.
+ */
+public final class UpdateClient {
+
+    private static final int THREADS = 2;
+
+    private final ExecutorService executor;
+    private final HttpClient client;
+    private final Set<CompletableFuture<?>> inFlight = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    public UpdateClient() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "update-http-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(Duration.ofSeconds(5))
+            .executor(executor)
+            .build();
+    }
+
+    /**
+     * Send a request; the future completes on one of the client threads
+     */
+    public <T> CompletableFuture<HttpResponse<T>> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new CancellationException("Update client closed"));
+        }
+        CompletableFuture<HttpResponse<T>> response = client.sendAsync(request, handler);
+        inFlight.add(response);
+        response.whenComplete((r, e) -> inFlight.remove(response));
+        return response;
+    }
+
+    /**
+     * Executor for follow-up work, so it stays off the EDT and the common pool
+     */
+    public ExecutorService executor() {
+        return executor;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Cancel everything in flight and stop the client threads
+     */
+    public void shutdown() {
+        closed = true;
+        for (CompletableFuture<?> response : inFlight) {
+            response.cancel(true);
+        }
+        inFlight.clear();
+        executor.shutdownNow();
+    }
+}
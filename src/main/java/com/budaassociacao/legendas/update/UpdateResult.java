@@ -9,13 +9,26 @@ public class UpdateResult {
     public final String downloadUrl;
     public final String releaseUrl;
     public final String releaseNotes;
+    public final String checksumUrl;
+    public final String patchUrl;
 
     public UpdateResult(boolean hasUpdate, String latestVersion, String downloadUrl,
                        String releaseUrl, String releaseNotes) {
+        this(hasUpdate, latestVersion, downloadUrl, releaseUrl, releaseNotes, null, null);
+    }
+
+    /**
+     * @param checksumUrl SHA-256 asset published with the installer, or null if there is none
+     * @param patchUrl delta patch from the running jar to this release, or null if there is none
+     */
+    public UpdateResult(boolean hasUpdate, String latestVersion, String downloadUrl,
+                       String releaseUrl, String releaseNotes, String checksumUrl, String patchUrl) {
         this.hasUpdate = hasUpdate;
         this.latestVersion = latestVersion;
         this.downloadUrl = downloadUrl;
         this.releaseUrl = releaseUrl;
         this.releaseNotes = releaseNotes;
+        this.checksumUrl = checksumUrl;
+        this.patchUrl = patchUrl;
     }
 }
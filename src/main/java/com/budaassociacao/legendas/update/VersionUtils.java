@@ -11,10 +11,22 @@ public class VersionUtils {
 
     private static final String VERSION_PROPERTIES_PATH = "/version.properties";
 
+    private static volatile String currentVersion;
+
     /**
      * Get the current application version from version.properties.
+     * Read once; the window title, the updater and the staged-update check all ask for it.
      */
     public static String getCurrentVersion() {
+        String version = currentVersion;
+        if (version == null) {
+            version = readCurrentVersion();
+            currentVersion = version;
+        }
+        return version;
+    }
+
+    private static String readCurrentVersion() {
         try (InputStream in = VersionUtils.class.getResourceAsStream(VERSION_PROPERTIES_PATH)) {
             if (in == null) {
                 System.err.println("[VersionUtils] version.properties not found");
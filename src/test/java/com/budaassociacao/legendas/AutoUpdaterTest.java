@@ -0,0 +1,158 @@
+package com.budaassociacao.legendas;
+
+import com.budaassociacao.legendas.update.ReleaseCache;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The cached, conditional release check of {@link AutoUpdater}, against a
+ * local stand-in for the releases API
+ *
+ * Runs the background check the way the app does at startup, with an empty
+ * home directory, and looks at what reached the server each time.
+ */
+class AutoUpdaterTest {
+
+    private static final long TTL_MINUTES = 360;
+    private static final long TIMEOUT_SECONDS = 15;
+
+    private static final List<String> requests = new ArrayList<>();
+    private static volatile String etag = "\"release-1\"";
+    private static volatile String tag = "v999.0.0";
+
+    private static HttpServer server;
+    private static String url;
+    private static ReleaseCache cache;
+    private static String userHome;
+
+    @BeforeAll
+    static void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/releases/latest", AutoUpdaterTest::serve);
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/releases/latest";
+
+        Path home = Files.createTempDirectory("legendas-update-check");
+        // Read when AutoUpdater is first loaded and each time it opens the cache
+        userHome = System.getProperty("user.home");
+        System.setProperty("user.home", home.toString());
+        System.setProperty("legendas.update.url", url);
+        System.setProperty("legendas.update.ttlMinutes", String.valueOf(TTL_MINUTES));
+        cache = new ReleaseCache(home.resolve(".legendasbuda").resolve("update").resolve("release.json"),
+            TTL_MINUTES * 60_000L);
+    }
+
+    @AfterAll
+    static void stopServer() {
+        server.stop(0);
+        System.setProperty("user.home", userHome);
+    }
+
+    /**
+     * 200 with an ETag, nothing within the TTL, 304 after it, 200 again once the release changes
+     */
+    @Test
+    void revalidatesOnlyAfterTheTtl() throws Exception {
+        check();
+        assertEquals(List.of("200 " + etag + " no validator"), served(), "first check");
+        ReleaseCache.Entry stored = cache.load(url);
+        assertNotNull(stored, "first check: nothing cached");
+        assertEquals(etag, stored.etag, "first check: ETag not cached");
+
+        check();
+        assertEquals(List.of(), served(), "within the TTL");
+
+        age();
+        check();
+        assertEquals(List.of("304 " + etag), served(), "after the TTL");
+        ReleaseCache.Entry revalidated = cache.load(url);
+        assertTrue(revalidated != null && cache.isFresh(revalidated), "after the TTL: the 304 did not refresh the entry");
+
+        String previous = etag;
+        etag = "\"release-2\"";
+        tag = "v999.0.1";
+        age();
+        check();
+        assertEquals(List.of("200 " + etag + " " + previous), served(), "changed release");
+        ReleaseCache.Entry changed = cache.load(url);
+        assertTrue(changed != null && etag.equals(changed.etag) && changed.body.contains(tag),
+            "changed release: the new release was not cached");
+    }
+
+    /**
+     * Stub releases API: 304 for a matching If-None-Match, the release otherwise
+     */
+    private static void serve(HttpExchange exchange) throws IOException {
+        String sent = exchange.getRequestHeaders().getFirst("If-None-Match");
+        String current = etag;
+        boolean modified = !current.equals(sent);
+        // Logged before answering, so it is seen by the time the check completes
+        synchronized (requests) {
+            requests.add(modified ? "200 " + current + " " + (sent == null ? "no validator" : sent) : "304 " + current);
+        }
+        if (!modified) {
+            exchange.sendResponseHeaders(304, -1);
+        } else {
+            byte[] body = ("{\"tag_name\":\"" + tag + "\",\"html_url\":\"http://127.0.0.1/\","
+                + "\"body\":\"\",\"assets\":[]}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("ETag", current);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+        exchange.close();
+    }
+
+    /**
+     * One background check; the stub always offers a newer version, so the callback marks its end
+     */
+    private static void check() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        AutoUpdater updater = new AutoUpdater(null);
+        updater.checkForUpdatesInBackground(result -> done.countDown());
+        boolean finished = done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        updater.shutdown();
+        assertTrue(finished, "no answer from the update check");
+    }
+
+    /**
+     * Requests that reached the server since the last call
+     */
+    private static List<String> served() {
+        synchronized (requests) {
+            List<String> seen = new ArrayList<>(requests);
+            requests.clear();
+            return seen;
+        }
+    }
+
+    /**
+     * Make the cached entry older than the TTL, as if the app had been closed that long
+     */
+    private static void age() {
+        ReleaseCache.Entry entry = cache.load(url);
+        cache.store(new ReleaseCache.Entry(entry.url, entry.etag, entry.lastModified,
+            entry.fetchedAt - TTL_MINUTES * 60_000L - 60_000L, entry.body));
+    }
+}
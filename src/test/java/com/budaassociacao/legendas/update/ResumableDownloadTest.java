@@ -0,0 +1,224 @@
+package com.budaassociacao.legendas.update;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * {@link ResumableDownload} of an installer-sized file, against a local
+ * stand-in for the release assets
+ *
+ * The stand-in speaks just enough HTTP/1.1 over a plain socket to be able
+ * to cut a response off short of its Content-Length.
+ */
+class ResumableDownloadTest {
+
+    private static final int SIZE = 4 * 1024 * 1024;
+    private static final long TIMEOUT_SECONDS = 30;
+
+    private final List<String> requests = new ArrayList<>();
+    private volatile byte[] content;
+    private volatile String etag;
+    // Bytes sent before the next full response is cut off, or -1
+    private volatile int dropAt = -1;
+
+    private ServerSocket server;
+    private UpdateClient client;
+    private URI uri;
+    private Path target;
+    private Path partFile;
+    private Path validatorFile;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread serving = new Thread(this::accept, "download-stub");
+        serving.setDaemon(true);
+        serving.start();
+        uri = URI.create("http://127.0.0.1:" + server.getLocalPort() + "/LegendasBUDA.exe");
+        client = new UpdateClient();
+
+        Path directory = Files.createTempDirectory("legendas-download");
+        target = directory.resolve("LegendasBUDA.exe");
+        partFile = directory.resolve("LegendasBUDA.exe.part");
+        validatorFile = directory.resolve("LegendasBUDA.exe.part.etag");
+    }
+
+    @AfterEach
+    void stopServer() throws IOException {
+        client.shutdown();
+        server.close();
+    }
+
+    /**
+     * The first connection drops partway; the retry asks for the rest and gets 206
+     */
+    @Test
+    void resumesADroppedConnection() throws Exception {
+        byte[] release = release(1);
+        content = release;
+        etag = "\"asset-1\"";
+        dropAt = SIZE / 3;
+
+        Path downloaded = download(sha256(release));
+        assertEquals(List.of("200 dropped at " + SIZE / 3, "206 from " + SIZE / 3 + " If-Range " + etag), served());
+        assertArrayEquals(release, Files.readAllBytes(downloaded), "the resumed file is not the published one");
+        assertFalse(Files.exists(partFile), "the part file was kept");
+    }
+
+    /**
+     * A part file of an older release is not spliced: If-Range no longer matches and 200 sends it all
+     */
+    @Test
+    void startsOverWhenTheFileChanged() throws Exception {
+        // As if the app had closed during the download of the previous release
+        Files.write(partFile, Arrays.copyOf(release(1), SIZE / 2));
+        Files.writeString(validatorFile, "\"asset-1\"", StandardCharsets.UTF_8);
+        byte[] release = release(2);
+        content = release;
+        etag = "\"asset-2\"";
+
+        Path downloaded = download(sha256(release));
+        assertEquals(List.of("200 Range " + SIZE / 2 + " If-Range \"asset-1\""), served());
+        assertArrayEquals(release, Files.readAllBytes(downloaded), "parts of two releases were spliced together");
+    }
+
+    /**
+     * A file that is not the published one fails at once, without retrying, and is not kept
+     */
+    @Test
+    void rejectsAChecksumMismatch() throws Exception {
+        content = release(1);
+        etag = "\"asset-1\"";
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> download(sha256(release(2))),
+            "the download was accepted");
+        assertInstanceOf(ResumableDownload.ChecksumException.class, failure.getCause(), "wrong failure");
+        assertEquals(List.of("200 no validator"), served());
+        assertFalse(Files.exists(target) || Files.exists(partFile) || Files.exists(validatorFile),
+            "the corrupt file was kept");
+    }
+
+    private void accept() {
+        while (!server.isClosed()) {
+            try (Socket socket = server.accept()) {
+                serve(socket);
+            } catch (IOException e) {
+                if (!server.isClosed()) {
+                    System.err.println("[ResumableDownloadTest] Stub server: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Stub asset server: 206 for a Range whose If-Range still matches, the whole file otherwise
+     */
+    private void serve(Socket socket) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+        String range = null;
+        String ifRange = null;
+        String line = in.readLine();
+        while (line != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            String name = colon < 0 ? "" : line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            if (name.equals("range")) {
+                range = line.substring(colon + 1).trim();
+            } else if (name.equals("if-range")) {
+                ifRange = line.substring(colon + 1).trim();
+            }
+            line = in.readLine();
+        }
+
+        byte[] body = content;
+        int from = range != null && range.startsWith("bytes=") && etag.equals(ifRange)
+            ? Integer.parseInt(range.substring(6, range.indexOf('-'))) : 0;
+        int drop = from == 0 ? dropAt : -1;
+        dropAt = -1;
+
+        String outcome;
+        if (from > 0) {
+            outcome = "206 from " + from + " If-Range " + ifRange;
+        } else if (drop > 0) {
+            outcome = "200 dropped at " + drop;
+        } else if (range != null) {
+            outcome = "200 Range " + range.substring(6, range.indexOf('-')) + " If-Range " + ifRange;
+        } else {
+            outcome = "200 no validator";
+        }
+        // Logged before answering, so it is seen by the time the download completes
+        synchronized (requests) {
+            requests.add(outcome);
+        }
+
+        StringBuilder headers = new StringBuilder();
+        if (from > 0) {
+            headers.append("HTTP/1.1 206 Partial Content\r\n")
+                .append("Content-Range: bytes ").append(from).append('-').append(body.length - 1)
+                .append('/').append(body.length).append("\r\n");
+        } else {
+            headers.append("HTTP/1.1 200 OK\r\n");
+        }
+        headers.append("ETag: ").append(etag).append("\r\n")
+            .append("Content-Length: ").append(body.length - from).append("\r\n")
+            .append("Connection: close\r\n\r\n");
+        OutputStream out = socket.getOutputStream();
+        out.write(headers.toString().getBytes(StandardCharsets.US_ASCII));
+        // A drop sends part of the body and closes the socket short of Content-Length
+        out.write(body, from, drop > 0 ? drop : body.length - from);
+        out.flush();
+    }
+
+    private Path download(String sha256) throws Exception {
+        return new ResumableDownload(client, uri, target)
+            .start(sha256, (bytes, total) -> { })
+            .get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Requests that reached the server since the last call
+     */
+    private List<String> served() {
+        synchronized (requests) {
+            List<String> seen = new ArrayList<>(requests);
+            requests.clear();
+            return seen;
+        }
+    }
+
+    private static byte[] release(int seed) {
+        byte[] bytes = new byte[SIZE];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static String sha256(byte[] bytes) throws Exception {
+        return ResumableDownload.toHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+    }
+}